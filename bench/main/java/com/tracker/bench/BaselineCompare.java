@@ -0,0 +1,115 @@
+package main.java.com.tracker.bench;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+Compares two JMH runs saved with "-rf csv -rff <file>" and reports regressions.
+
+A benchmark is identified by its method name plus its parameters (e.g.
+"findAll size=1m storage=text resident=false"); its score is JMH's average
+time per operation. A benchmark slower than the baseline by more than the
+threshold is reported as a regression; benchmarks missing from the baseline
+are listed as new.
+
+Usage: BaselineCompare <baseline.csv> <current.csv> [thresholdPercent]
+The exit code is 1 if anything regressed, so a build script can fail on it.
+*/
+public class BaselineCompare {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BaselineCompare <baseline.csv> <current.csv> [thresholdPercent]");
+            return;
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        List<String> regressions = compare(load(new File(args[0])), load(new File(args[1])), threshold);
+        if (!regressions.isEmpty()) {
+            System.out.println(regressions.size() + " regression(s) over " + threshold + "%: " + regressions);
+            System.exit(1);
+        }
+    }
+
+    // name -> score, in file order
+    public static Map<String, Double> load(File file) throws IOException {
+        Map<String, Double> out = new LinkedHashMap<String, Double>();
+        BufferedReader r = null;
+        try {
+            r = new BufferedReader(new FileReader(file));
+            String line = r.readLine();
+            if (line == null) return out;
+            List<String> header = split(line);
+            int bench = header.indexOf("Benchmark");
+            int score = header.indexOf("Score");
+            if (bench < 0 || score < 0) throw new IOException("not a JMH csv result file: " + file);
+            while ((line = r.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                List<String> f = split(line);
+                if (f.size() != header.size()) continue;
+                String name = f.get(bench);
+                StringBuilder sb = new StringBuilder(name.substring(name.lastIndexOf('.') + 1));
+                for (int i = 0; i < header.size(); i++) {
+                    if (header.get(i).startsWith("Param: ")) {
+                        sb.append(' ').append(header.get(i).substring(7)).append('=').append(f.get(i));
+                    }
+                }
+                out.put(sb.toString(), Double.parseDouble(f.get(score)));
+            }
+        } finally {
+            try { if (r != null) r.close(); } catch (IOException ignored) {}
+        }
+        return out;
+    }
+
+    // One CSV line; fields may be quoted ("" inside quotes is a quote)
+    static List<String> split(String line) {
+        List<String> out = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') sb.append(c);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"') sb.append(line.charAt(++i));
+                else quoted = false;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        out.add(sb.toString());
+        return out;
+    }
+
+    // Print the change against the baseline; returns the names that regressed beyond thresholdPercent
+    public static List<String> compare(Map<String, Double> baseline, Map<String, Double> now, double thresholdPercent) {
+        List<String> regressions = new ArrayList<String>();
+        System.out.println(String.format(Locale.ROOT, "%-56s %14s %14s %9s", "benchmark", "baseline", "now", "change"));
+        for (Map.Entry<String, Double> en : now.entrySet()) {
+            Double base = baseline.get(en.getKey());
+            if (base == null) {
+                System.out.println(String.format(Locale.ROOT, "%-56s %14s %14s %9s",
+                        en.getKey(), "-", format(en.getValue()), "new"));
+                continue;
+            }
+            double change = (en.getValue() - base) * 100.0 / base;
+            boolean regressed = change > thresholdPercent;
+            if (regressed) regressions.add(en.getKey());
+            System.out.println(String.format(Locale.ROOT, "%-56s %14s %14s %+8.1f%%%s",
+                    en.getKey(), format(base), format(en.getValue()), change, regressed ? "  REGRESSION" : ""));
+        }
+        return regressions;
+    }
+
+    private static String format(double score) {
+        return String.format(Locale.ROOT, "%,.1f", score);
+    }
+}
@@ -0,0 +1,177 @@
+package main.java.com.tracker.bench;
+
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import main.java.com.tracker.repository.ColumnarLedgerStore;
+import main.java.com.tracker.repository.CsvExpenseWriter;
+import main.java.com.tracker.repository.ExpenseRepository;
+import main.java.com.tracker.repository.ExpenseVisitor;
+import main.java.com.tracker.repository.LedgerStore;
+import main.java.com.tracker.repository.LogLedgerStore;
+import main.java.com.tracker.repository.PartitionedLedgerStore;
+import main.java.com.tracker.repository.ResidentLedgerStore;
+import main.java.com.tracker.repository.SnapshotLedgerStore;
+import main.java.com.tracker.repository.SummaryEngine;
+import main.java.com.tracker.repository.TextLedgerStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+JMH benchmarks for the repository and summary hot paths at realistic ledger sizes.
+
+For each trial a synthetic ledger is generated (LedgerGenerator) in a scratch
+directory and opened with the chosen storage mode; then:
+- parse           Expense.deserialize of one ledger line
+- findAll         load the whole ledger
+- findById        point lookup of a random id
+- findByMonthYear one random month
+- totalForMonth   sum of one random month
+- summary         whole-ledger totals (SummaryEngine, as `summary` without aggregates)
+- export          stream the ledger to CSV (as `export`)
+- insert          add one expense (the ledger grows during the trial)
+
+Parameters: size (10k, 1m, 10m), storage (text, snapshot, log, partitioned,
+columnar) and resident. Results are average ns/op; see BaselineCompare for
+comparing a run against a saved one.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpenseBenchmarks {
+    private static final int YEARS = 8;
+
+    @Param({"10k"})
+    public String size;
+
+    @Param({"text"})
+    public String storage;
+
+    @Param({"false"})
+    public boolean resident;
+
+    private File dir;
+    private long rows;
+    private ExpenseRepository repo;
+    private SummaryEngine engine;
+    private String[] lines;
+    private int nextLine;
+    private File csv;
+    private final Random rnd = new Random(7);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        rows = LedgerGenerator.parseCount(size);
+        dir = Files.createTempDirectory("expense-bench").toFile();
+        File text = new File(dir, "expenses.txt");
+        LedgerGenerator.generate(text, rows, YEARS, 42L);
+        LedgerStore store = openStore(dir, text, storage);
+        if (resident) store = new ResidentLedgerStore(store);
+        repo = new ExpenseRepository(store);
+        engine = new SummaryEngine(Runtime.getRuntime().availableProcessors());
+        lines = sampleLines(text, 10000);
+        csv = new File(dir, "export.csv");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+        deleteTree(dir);
+    }
+
+    @Benchmark
+    public long parse() {
+        Expense e = Expense.deserialize(lines[nextLine]);
+        nextLine = (nextLine + 1) % lines.length;
+        return e.getAmountCents();
+    }
+
+    @Benchmark
+    public int findAll() {
+        return repo.findAll().size();
+    }
+
+    @Benchmark
+    public Expense findById() {
+        return repo.findById(1 + (long) (rnd.nextDouble() * rows));
+    }
+
+    @Benchmark
+    public int findByMonthYear() {
+        return repo.findByMonthYear(LedgerGenerator.FIRST_YEAR + rnd.nextInt(YEARS), 1 + rnd.nextInt(12)).size();
+    }
+
+    @Benchmark
+    public long totalForMonth() {
+        return repo.totalForMonth(LedgerGenerator.FIRST_YEAR + rnd.nextInt(YEARS), 1 + rnd.nextInt(12));
+    }
+
+    @Benchmark
+    public long summary() {
+        return repo.summarize(engine).getTotal();
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        final CsvExpenseWriter out = new CsvExpenseWriter(csv, false);
+        try {
+            repo.forEach(new ExpenseVisitor() {
+                public void expense(Expense e) {
+                    try {
+                        out.write(e);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            });
+        } finally {
+            out.close();
+        }
+        return out.getCount();
+    }
+
+    @Benchmark
+    public long insert() {
+        int day = Dates.epochDay(LedgerGenerator.FIRST_YEAR + rnd.nextInt(YEARS), 1 + rnd.nextInt(12), 1);
+        return repo.add(new Expense(0L, Dates.format(day), 1234, "bench insert", "food"));
+    }
+
+    private static LedgerStore openStore(File dir, File text, String storage) {
+        if ("log".equalsIgnoreCase(storage)) return new LogLedgerStore(text);
+        if ("partitioned".equalsIgnoreCase(storage)) return new PartitionedLedgerStore(new File(dir, "expenses.d"), text);
+        if ("columnar".equalsIgnoreCase(storage)) return new ColumnarLedgerStore(new File(dir, "expenses.col"), text);
+        if ("snapshot".equalsIgnoreCase(storage)) return new SnapshotLedgerStore(new TextLedgerStore(text));
+        return new TextLedgerStore(text);
+    }
+
+    // Up to n lines from the start of the file, for the parse benchmark
+    private static String[] sampleLines(File text, int n) throws IOException {
+        List<String> out = new ArrayList<String>(n);
+        BufferedReader r = null;
+        try {
+            r = new BufferedReader(new FileReader(text), 1 << 16);
+            String line;
+            while (out.size() < n && (line = r.readLine()) != null) out.add(line);
+        } finally {
+            try { if (r != null) r.close(); } catch (IOException ignored) {}
+        }
+        return out.toArray(new String[out.size()]);
+    }
+
+    private static void deleteTree(File f) {
+        if (!f.exists()) return;
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) deleteTree(c);
+        }
+        f.delete();
+    }
+}
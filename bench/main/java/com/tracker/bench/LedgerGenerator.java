@@ -0,0 +1,91 @@
+package main.java.com.tracker.bench;
+
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Money;
+import java.io.*;
+import java.util.Random;
+
+/*
+Synthetic ledger for benchmarks, written in the expenses.txt format.
+
+- ids 1..rows in order
+- dates spread over several years (FIRST_YEAR .. FIRST_YEAR + years - 1)
+- categories skewed like real spending: category i is picked with weight
+  1 / (i + 1) (Zipf), so "food" dominates and the tail is long; a few rows
+  have no category at all
+- amounts mostly small, with an occasional large one (rent-sized)
+The same seed always produces the same file.
+
+Usage: LedgerGenerator <rows> <file> [years] [seed]  (bench/, on the test classpath)
+       rows accepts suffixes: 10k, 1m, 10m
+*/
+public class LedgerGenerator {
+    static final int FIRST_YEAR = 2018;
+    static final String[] CATEGORIES = {
+        "food", "transport", "groceries", "rent", "utilities", "fun", "health", "travel",
+        "clothes", "gifts", "books", "education", "pets", "insurance", "taxes", "misc"
+    };
+    private static final String[] WORDS = {
+        "lunch", "coffee", "bus", "train", "market", "cinema", "pharmacy", "hotel",
+        "shoes", "present", "course", "vet", "premium", "fee", "snack", "dinner"
+    };
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: LedgerGenerator <rows> <file> [years] [seed]");
+            return;
+        }
+        long rows = parseCount(args[0]);
+        int years = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42L;
+        long start = System.nanoTime();
+        long bytes = generate(new File(args[1]), rows, years, seed);
+        System.out.println("Wrote " + rows + " rows (" + bytes + " bytes) to " + args[1]
+                + " in " + ((System.nanoTime() - start) / 1000000L) + " ms");
+    }
+
+    // "10k" -> 10000, "1m" -> 1000000
+    static long parseCount(String s) {
+        String t = s.trim().toLowerCase();
+        long mult = 1;
+        if (t.endsWith("k")) mult = 1000L;
+        else if (t.endsWith("m")) mult = 1000000L;
+        if (mult != 1) t = t.substring(0, t.length() - 1);
+        return Long.parseLong(t) * mult;
+    }
+
+    // Write the ledger; returns its size in bytes
+    public static long generate(File file, long rows, int years, long seed) throws IOException {
+        Random rnd = new Random(seed);
+        double[] cumulative = new double[CATEGORIES.length];
+        double sum = 0;
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        int firstDay = Dates.epochDay(FIRST_YEAR, 1, 1);
+        int days = Dates.epochDay(FIRST_YEAR + years, 1, 1) - firstDay;
+
+        StringBuilder sb = new StringBuilder(128);
+        Writer out = null;
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, false), "UTF-8"), 1 << 18);
+            for (long id = 1; id <= rows; id++) {
+                double pick = rnd.nextDouble() * sum;
+                int cat = 0;
+                while (cumulative[cat] < pick) cat++;
+                long cents = rnd.nextInt(100) < 2 ? 50000 + rnd.nextInt(150000) : 100 + rnd.nextInt(9900);
+                sb.setLength(0);
+                sb.append(id).append('|').append(Dates.format(firstDay + rnd.nextInt(days))).append('|');
+                Money.appendTo(sb, cents);
+                sb.append('|').append(WORDS[rnd.nextInt(WORDS.length)]).append(' ').append(id % 97).append('|');
+                if (rnd.nextInt(50) != 0) sb.append(CATEGORIES[cat]);
+                sb.append('\n');
+                out.append(sb);
+            }
+        } finally {
+            try { if (out != null) out.close(); } catch (IOException ignored) {}
+        }
+        return file.length();
+    }
+}
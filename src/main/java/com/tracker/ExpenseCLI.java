@@ -1,14 +1,49 @@
 package main.java.com.tracker;
 
+import main.java.com.tracker.metrics.Metrics;
 import main.java.com.tracker.model.Budget;
+import main.java.com.tracker.model.CategoryFilter;
+import main.java.com.tracker.model.Dates;
 import main.java.com.tracker.model.Expense;
+import main.java.com.tracker.model.Money;
+import main.java.com.tracker.model.RecurringRule;
+import main.java.com.tracker.repository.AggregateStore;
 import main.java.com.tracker.repository.BudgetRepository;
+import main.java.com.tracker.repository.ColumnarLedgerStore;
+import main.java.com.tracker.repository.CsvExpenseReader;
+import main.java.com.tracker.repository.CsvExpenseWriter;
+import main.java.com.tracker.repository.ExpenseCursor;
+import main.java.com.tracker.repository.ExpenseQuery;
 import main.java.com.tracker.repository.ExpenseRepository;
+import main.java.com.tracker.repository.ExpenseVisitor;
+import main.java.com.tracker.repository.LedgerRecovery;
+import main.java.com.tracker.repository.LedgerStore;
+import main.java.com.tracker.repository.LogLedgerStore;
+import main.java.com.tracker.repository.PartitionedLedgerStore;
+import main.java.com.tracker.repository.PostingList;
+import main.java.com.tracker.repository.RecurringRepository;
+import main.java.com.tracker.repository.ResidentLedgerStore;
+import main.java.com.tracker.repository.SearchIndex;
+import main.java.com.tracker.repository.SecondaryIndex;
+import main.java.com.tracker.repository.SnapshotLedgerStore;
+import main.java.com.tracker.repository.SummaryEngine;
+import main.java.com.tracker.repository.SummaryResult;
+import main.java.com.tracker.repository.TextLedgerStore;
+import main.java.com.tracker.repository.TrendReport;
 import main.java.com.tracker.view.ConsoleView;
+import main.java.com.tracker.view.ReportView;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /*
@@ -21,50 +56,200 @@ Commands:
 - add --description "text" --amount 12.50 [--date YYYY-MM-DD] [--category cat]
 - update <id> [--description ...] [--amount ...] [--date ...] [--category ...]
 - delete <id>
-- list [--category cat] [--month M]   # month 1-12 (current year)
+- list [--category cat] [--month M] [--limit N] [--offset N | --after ID] [--sort id|date]   # month 1-12 (current year)
+- search <terms> [--category cat] [--month M] [--year YYYY] [--limit N]   # "a b" = AND, "a OR b", "pre*"
 - summary
 - month-summary <month>
+- report [--from YYYY-MM] [--to YYYY-MM | --months N | --year YYYY] [--window N] [--category cat]
+         [--format text|csv|json] [--file path]   # month x category totals, budgets, trends
 - set-budget --month M --amount 500 [--year YYYY]
-- export --file filename.csv [--month M] [--category cat]
+- add-rule --every daily|weekly|monthly[/N] | --cron "DOM MON DOW"  --description "text" --amount 12.50
+           [--category cat] [--start YYYY-MM-DD] [--end YYYY-MM-DD]   # recurring expense, kept in recurring.txt
+- rules
+- delete-rule <id>
+- materialize [--until YYYY-MM-DD]   # book every rule occurrence up to that day (default today)
+- export --file filename.csv[.gz] [--month M] [--category cat] [--gzip]
+- import --file filename.csv
+- convert --to columnar|text
+- verify [--repair]   # check every record's checksum; --repair moves bad records to <file>.rejected
+- serve [--port N]    # keep running and answer the commands below from memory
+- stop-daemon
 - help
+
+Storage mode is picked with -Dtracker.storage=text|log|partitioned|columnar (default text).
+In log mode -Dtracker.log.compactBytes=N sets when the write-ahead log is compacted.
+In text mode the parsed ledger is kept in expenses.txt.snap (binary columns plus id and month indexes),
+so a start only parses lines appended since; -Dtracker.snapshot=false turns it off.
+-Dtracker.resident=true keeps the ledger in memory with an id index (useful for long-lived processes).
+Monthly and per-category totals are kept in aggregates.txt; -Dtracker.aggregates=false turns that off.
+list filters use the category and date indexes in expenses.idx; -Dtracker.index=false turns them off.
+search uses the inverted index in expenses.fts (built on first search); -Dtracker.search=false turns it off.
+Without aggregates, summary runs on a fork-join pool; -Dtracker.threads=N sets its size (default: all cores).
+While "serve" runs, commands started in the same directory are forwarded to it over a loopback
+socket (tracker.daemon holds port and token); -Dtracker.daemon=false always works on the files directly.
+import and materialize write rows in batches of -Dtracker.import.batch=N (default 100000), one store
+write per batch.
+Writes are forced to disk before they are renamed into place; -Dtracker.fsync=false skips that.
+Ledger lines end in a CRC-32 checksum. At startup a record torn by a crash is cut off the end of
+the ledger (kept in <file>.rejected), and "verify" checks the whole ledger.
+Any command accepts --stats: afterwards it prints per-operation latencies and row/byte counters
+(cumulative for the daemon's lifetime when forwarded). The same numbers are exposed over JMX as
+tracker:type=Metrics by "serve", or by any run with -Dtracker.jmx=true.
 */
 public class ExpenseCLI {
     private static final String EXPENSES_FILE = "expenses.txt";
     private static final String BUDGETS_FILE  = "budgets.txt";
+    private static final String RECURRING_FILE = "recurring.txt";
+    private static final String PARTITION_DIR = "expenses.d";
+    private static final String COLUMNAR_FILE = "expenses.col";
+    private static final String AGGREGATES_FILE = "aggregates.txt";
+    private static final String INDEX_FILE = "expenses.idx";
+    private static final String SEARCH_FILE = "expenses.fts";
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int DEFAULT_REPORT_MONTHS = 12;
+    private static final int DEFAULT_REPORT_WINDOW = 3;
+    private static final int DEFAULT_IMPORT_BATCH = 100000;
 
     private ExpenseRepository expenseRepo;
     private BudgetRepository budgetRepo;
+    private RecurringRepository recurringRepo;
+    private AggregateStore aggregates; // null when disabled
+    private SecondaryIndex index;      // null when disabled
+    private SearchIndex search;        // null when disabled
 
     public ExpenseCLI() {
-        expenseRepo = new ExpenseRepository(EXPENSES_FILE);
+        expenseRepo = new ExpenseRepository(createStore());
+        expenseRepo.recover();
         budgetRepo  = new BudgetRepository(BUDGETS_FILE);
+        recurringRepo = new RecurringRepository(RECURRING_FILE);
+        if (!"false".equalsIgnoreCase(System.getProperty("tracker.aggregates", "true"))) {
+            aggregates = new AggregateStore(AGGREGATES_FILE, expenseRepo);
+        }
+        if (!"false".equalsIgnoreCase(System.getProperty("tracker.index", "true"))) {
+            index = new SecondaryIndex(INDEX_FILE, expenseRepo);
+        }
+        if (!"false".equalsIgnoreCase(System.getProperty("tracker.search", "true"))) {
+            search = new SearchIndex(SEARCH_FILE, expenseRepo);
+        }
+    }
+
+    private static LedgerStore createStore() {
+        String mode = System.getProperty("tracker.storage", "text");
+        File file = new File(EXPENSES_FILE);
+        LedgerStore store;
+        if ("log".equalsIgnoreCase(mode)) {
+            long threshold = Long.getLong("tracker.log.compactBytes", LogLedgerStore.DEFAULT_COMPACT_THRESHOLD);
+            store = new LogLedgerStore(file, threshold);
+        } else if ("partitioned".equalsIgnoreCase(mode)) {
+            store = new PartitionedLedgerStore(new File(PARTITION_DIR), file);
+        } else if ("columnar".equalsIgnoreCase(mode)) {
+            store = new ColumnarLedgerStore(new File(COLUMNAR_FILE), file);
+        } else if (!"false".equalsIgnoreCase(System.getProperty("tracker.snapshot", "true"))) {
+            store = new SnapshotLedgerStore(new TextLedgerStore(file));
+        } else {
+            store = new TextLedgerStore(file);
+        }
+        if (Boolean.getBoolean("tracker.resident")) {
+            store = new ResidentLedgerStore(store);
+        }
+        return store;
     }
 
     public static void main(String[] args) {
-        ExpenseCLI app = new ExpenseCLI();
         if (args.length == 0) {
             printHelp();
             return;
         }
+        if (Boolean.getBoolean("tracker.jmx")) Metrics.register();
+        if ("serve".equalsIgnoreCase(args[0])) {
+            serve(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // a daemon serving this directory answers faster than a cold start
+        if (!"false".equalsIgnoreCase(System.getProperty("tracker.daemon")) && ExpenseDaemon.forward(args)) {
+            return;
+        }
+        if ("stop-daemon".equalsIgnoreCase(args[0])) {
+            ConsoleView.showMessage("No daemon running in this directory");
+            return;
+        }
+        ExpenseCLI app = new ExpenseCLI();
         app.run(args);
     }
 
-    private void run(String[] args) {
-        String cmd = args[0].toLowerCase();
-        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+    // Keep the repositories warm and answer other CLI invocations until "stop-daemon"
+    private static void serve(String[] args) {
+        String portS = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if ("--port".equals(args[i])) portS = args[i + 1];
+        }
+        int port = portS == null ? Integer.getInteger("tracker.daemon.port", 0) : Integer.parseInt(portS);
+        if (System.getProperty("tracker.resident") == null) {
+            System.setProperty("tracker.resident", "true");
+        }
+        try {
+            Metrics.register();
+            ExpenseCLI app = new ExpenseCLI();
+            app.warmUp();
+            new ExpenseDaemon(app).serve(port);
+        } catch (IOException e) {
+            System.err.println("Error starting daemon: " + e.getMessage());
+        }
+    }
+
+    // Load the resident ledger, aggregates and indexes now rather than on the first request
+    private void warmUp() {
+        expenseRepo.findById(0L);
+        if (aggregates != null) aggregates.count();
+        if (index != null) index.byCategory("");
+        if (search != null) search.search("", null, Dates.INVALID, Dates.INVALID, 0);
+    }
+
+    void run(String[] args) {
+        List<String> plain = new ArrayList<String>();
+        boolean stats = false;
+        for (String a : args) {
+            if ("--stats".equals(a)) stats = true;
+            else plain.add(a);
+        }
+        if (plain.isEmpty()) {
+            printHelp();
+            return;
+        }
+        String cmd = plain.get(0).toLowerCase();
+        String[] rest = plain.subList(1, plain.size()).toArray(new String[plain.size() - 1]);
+        long t = Metrics.start();
         try {
             if ("add".equals(cmd)) doAdd(rest);
             else if ("update".equals(cmd)) doUpdate(rest);
             else if ("delete".equals(cmd)) doDelete(rest);
             else if ("list".equals(cmd)) doList(rest);
+            else if ("search".equals(cmd)) doSearch(rest);
             else if ("summary".equals(cmd)) doSummary();
             else if ("month-summary".equals(cmd)) doMonthSummary(rest);
+            else if ("report".equals(cmd)) doReport(rest);
             else if ("set-budget".equals(cmd)) doSetBudget(rest);
+            else if ("add-rule".equals(cmd)) doAddRule(rest);
+            else if ("rules".equals(cmd)) ConsoleView.showRules(recurringRepo.findAll());
+            else if ("delete-rule".equals(cmd)) doDeleteRule(rest);
+            else if ("materialize".equals(cmd)) doMaterialize(rest);
             else if ("export".equals(cmd)) doExport(rest);
-            else printHelp();
+            else if ("import".equals(cmd)) doImport(rest);
+            else if ("convert".equals(cmd)) doConvert(rest);
+            else if ("verify".equals(cmd)) doVerify(rest);
+            else if ("help".equals(cmd)) printHelp();
+            else {
+                printHelp();
+                cmd = "unknown"; // one histogram for all mistyped names, not one per name
+            }
         } catch (Exception e) {
             System.err.println("Error: " + e.getMessage());
         }
+        Metrics.record("cli." + cmd, t);
+        if (stats) {
+            System.out.println();
+            System.out.println(Metrics.get().getReport());
+        }
     }
 
     // ========== Basic flag parser (keeps position order) ==========
@@ -115,22 +300,16 @@ public class ExpenseCLI {
             return;
         }
         String date = first(flags, "date");
-        if (date == null) {
-            // default to today's date in simple YYYY-MM-DD format
-            Calendar c = Calendar.getInstance();
-            int y = c.get(Calendar.YEAR);
-            int m = c.get(Calendar.MONTH) + 1;
-            int d = c.get(Calendar.DAY_OF_MONTH);
-            date = y + "-" + (m < 10 ? "0" + m : m) + "-" + (d < 10 ? "0" + d : d);
-        }
         String category = first(flags, "category", "c");
-        double amount = Double.parseDouble(amtS);
+        long amount = Money.parse(amtS);
         Expense e = new Expense(0L, date, amount, desc, category);
+        // default to today's date
+        if (date == null) e.setEpochDay(Dates.today());
         long id = expenseRepo.add(e);
         ConsoleView.showMessage("Added expense id=" + id);
 
         // budget check
-        checkBudgetForDate(date);
+        checkBudgetForDay(e.getEpochDay());
     }
 
     private void doUpdate(String[] args) {
@@ -145,12 +324,12 @@ public class ExpenseCLI {
             ConsoleView.showMessage("Expense not found: " + id);
             return;
         }
-        String oldDate = e.getDate();
+        int oldDay = e.getEpochDay();
         if (flags.containsKey("description") || flags.containsKey("d")) {
             e.setDescription(first(flags, "description", "d"));
         }
         if (flags.containsKey("amount") || flags.containsKey("a")) {
-            e.setAmount(Double.parseDouble(first(flags, "amount", "a")));
+            e.setAmountCents(Money.parse(first(flags, "amount", "a")));
         }
         if (flags.containsKey("date")) {
             e.setDate(first(flags, "date"));
@@ -163,8 +342,8 @@ public class ExpenseCLI {
         else ConsoleView.showMessage("Failed to update expense id=" + id);
 
         // check budgets for both months if changed
-        checkBudgetForDate(oldDate);
-        checkBudgetForDate(e.getDate());
+        checkBudgetForDay(oldDay);
+        checkBudgetForDay(e.getEpochDay());
     }
 
     private void doDelete(String[] args) {
@@ -181,7 +360,7 @@ public class ExpenseCLI {
         boolean ok = expenseRepo.delete(id);
         if (ok) {
             ConsoleView.showMessage("Deleted expense id=" + id);
-            checkBudgetForDate(e.getDate());
+            checkBudgetForDay(e.getEpochDay());
         } else {
             ConsoleView.showMessage("Failed to delete id=" + id);
         }
@@ -192,41 +371,135 @@ public class ExpenseCLI {
         String category = first(flags, "category", "c");
         String monthS = first(flags, "month", "m");
         Integer month = (monthS == null) ? null : Integer.parseInt(monthS);
-        Calendar cal = Calendar.getInstance();
-        int year = cal.get(Calendar.YEAR);
-
-        List<Expense> results;
-        if (category != null) {
-            results = expenseRepo.findByCategory(category);
-            if (month != null) {
-                List<Expense> filtered = new ArrayList<Expense>();
-                for (Expense ex : results) {
-                    if (matchesYearMonth(ex.getDate(), year, month)) filtered.add(ex);
+        int year = Dates.year(Dates.today());
+
+        int limit = parseCount(first(flags, "limit", "n"), "limit");
+        int offset = parseCount(first(flags, "offset"), "offset");
+        String afterS = first(flags, "after");
+        String sort = first(flags, "sort");
+        ExpenseQuery q = new ExpenseQuery().offset(offset);
+        if (sort == null || "id".equalsIgnoreCase(sort)) q.sort(ExpenseQuery.BY_ID);
+        else if ("date".equalsIgnoreCase(sort)) q.sort(ExpenseQuery.BY_DATE);
+        else {
+            ConsoleView.showMessage("--sort must be id or date");
+            return;
+        }
+        if (afterS != null) q.after(Long.parseLong(afterS));
+        // one extra row tells whether there is a next page
+        if (limit > 0) q.limit(limit + 1);
+
+        int from = Dates.INVALID;
+        int to = Dates.INVALID;
+        if (month != null) {
+            // an impossible month is an empty range and matches nothing
+            boolean validMonth = month >= 1 && month <= 12;
+            from = validMonth ? Dates.epochDay(year, month, 1) : 0;
+            to = validMonth ? from + Dates.daysInMonth(year, month) : 0;
+        }
+        if (index != null && (category != null || month != null)) {
+            q.ids(index.query(category, from, to));
+        } else {
+            q.category(category).between(from, to);
+        }
+
+        final ExpenseCursor cursor = expenseRepo.query(q);
+        final long[] lastId = new long[1];
+        try {
+            // remember the last row shown, it is the --after key of the next page
+            int shown = ConsoleView.showExpenses(new ExpenseCursor() {
+                public Expense next() {
+                    Expense e = cursor.next();
+                    if (e != null) lastId[0] = e.getId();
+                    return e;
+                }
+                public void close() {
+                    cursor.close();
                 }
-                results = filtered;
+            }, limit);
+            if (limit > 0 && shown == limit && cursor.next() != null) {
+                ConsoleView.showMessage("-- more: --offset " + (offset + shown) + " or --after " + lastId[0]);
             }
-        } else if (month != null) {
-            results = expenseRepo.findByMonthYear(year, month);
-        } else {
-            results = expenseRepo.findAll();
+        } finally {
+            cursor.close();
         }
-        ConsoleView.showExpenses(results);
+    }
+
+    // Non-negative count flag, 0 when absent
+    private static int parseCount(String s, String name) {
+        if (s == null) return 0;
+        int n = Integer.parseInt(s);
+        if (n < 0) throw new IllegalArgumentException("--" + name + " must not be negative");
+        return n;
+    }
+
+    private void doSearch(String[] args) {
+        if (search == null) {
+            ConsoleView.showMessage("search is disabled (-Dtracker.search=false)");
+            return;
+        }
+        Map<String,String> flags = parseFlags(args);
+        StringBuilder terms = new StringBuilder();
+        for (Map.Entry<String,String> en : flags.entrySet()) {
+            if (en.getKey().startsWith("__pos")) terms.append(en.getValue()).append(' ');
+        }
+        if (terms.length() == 0) {
+            ConsoleView.showMessage("search requires at least one term");
+            return;
+        }
+        String category = first(flags, "category", "c");
+        String monthS = first(flags, "month", "m");
+        String yearS = first(flags, "year", "y");
+        int limit = flags.containsKey("limit") ? parseCount(flags.get("limit"), "limit") : DEFAULT_SEARCH_LIMIT;
+        int from = Dates.INVALID;
+        int to = Dates.INVALID;
+        int year = yearS == null ? Dates.year(Dates.today()) : Integer.parseInt(yearS);
+        if (monthS != null) {
+            // an impossible month is an empty range and matches nothing
+            int month = Integer.parseInt(monthS);
+            boolean validMonth = month >= 1 && month <= 12;
+            from = validMonth ? Dates.epochDay(year, month, 1) : 0;
+            to = validMonth ? from + Dates.daysInMonth(year, month) : 0;
+        } else if (yearS != null) {
+            from = Dates.epochDay(year, 1, 1);
+            to = Dates.epochDay(year + 1, 1, 1);
+        }
+
+        SearchIndex.Result hits = search.search(terms.toString(), category, from, to, limit);
+        // rows come back in store order; show them newest first as ranked
+        Map<Long, Expense> byId = new HashMap<Long, Expense>();
+        for (Expense e : expenseRepo.findByIds(PostingList.of(sortedCopy(hits.ids), hits.ids.length))) {
+            byId.put(e.getId(), e);
+        }
+        List<Expense> rows = new ArrayList<Expense>(hits.ids.length);
+        for (long id : hits.ids) {
+            Expense e = byId.get(id);
+            if (e != null) rows.add(e);
+        }
+        ConsoleView.showExpenses(rows);
+        if (hits.total > rows.size()) {
+            ConsoleView.showMessage(hits.total + " matches, showing the newest " + rows.size() + " (--limit N for more)");
+        }
+    }
+
+    private static long[] sortedCopy(long[] ids) {
+        long[] copy = Arrays.copyOf(ids, ids.length);
+        Arrays.sort(copy);
+        return copy;
     }
 
     private void doSummary() {
-        List<Expense> all = expenseRepo.findAll();
-        double total = 0.0;
-        Map<String, Double> byCat = new LinkedHashMap<String, Double>();
-        for (Expense e : all) {
-            total += e.getAmount();
-            String cat = e.getCategory();
-            if (cat == null || cat.isEmpty()) cat = "(uncategorized)";
-            Double prev = byCat.get(cat);
-            if (prev == null) prev = 0.0;
-            prev = prev + e.getAmount();
-            byCat.put(cat, prev);
-        }
-        ConsoleView.showSummary(total, all.size(), byCat);
+        if (aggregates != null) {
+            ConsoleView.showSummary(aggregates.total(), (int) aggregates.count(), aggregates.categoryTotals());
+            return;
+        }
+        SummaryEngine engine = new SummaryEngine(Integer.getInteger("tracker.threads",
+                Runtime.getRuntime().availableProcessors()));
+        try {
+            SummaryResult r = expenseRepo.summarize(engine);
+            ConsoleView.showSummary(r.getTotal(), (int) r.getCount(), r.byCategory());
+        } finally {
+            engine.shutdown();
+        }
     }
 
     private void doMonthSummary(String[] args) {
@@ -235,26 +508,91 @@ public class ExpenseCLI {
             return;
         }
         int month = Integer.parseInt(args[0]);
-        Calendar cal = Calendar.getInstance();
-        int year = cal.get(Calendar.YEAR);
+        int year = Dates.year(Dates.today());
         List<Expense> list = expenseRepo.findByMonthYear(year, month);
         ConsoleView.showExpenses(list);
-        double total = 0.0;
-        for (Expense e : list) total += e.getAmount();
-        ConsoleView.showMessage("Month total: " + String.format("%.2f", total));
+        long total = 0;
+        for (Expense e : list) total += e.getAmountCents();
+        ConsoleView.showMessage("Month total: " + Money.format(total));
         Budget b = budgetRepo.find(year, month);
         if (b != null) {
-            ConsoleView.showMessage("Budget: " + String.format("%.2f", b.getAmount()));
-            if (total > b.getAmount()) {
-                ConsoleView.showWarning("You have exceeded the budget by " + String.format("%.2f", (total - b.getAmount())));
+            ConsoleView.showMessage("Budget: " + Money.format(b.getAmountCents()));
+            if (total > b.getAmountCents()) {
+                ConsoleView.showWarning("You have exceeded the budget by " + Money.format(total - b.getAmountCents()));
             } else {
-                ConsoleView.showMessage("Remaining: " + String.format("%.2f", (b.getAmount() - total)));
+                ConsoleView.showMessage("Remaining: " + Money.format(b.getAmountCents() - total));
             }
         } else {
             ConsoleView.showMessage("No budget set for this month.");
         }
     }
 
+    // Month x category totals for a range of months in one pass over the ledger, joined with budgets
+    private void doReport(String[] args) {
+        Map<String,String> flags = parseFlags(args);
+        String fromS = first(flags, "from");
+        String toS = first(flags, "to");
+        String yearS = first(flags, "year", "y");
+        String format = flags.containsKey("format") ? flags.get("format").toLowerCase(Locale.ROOT) : ReportView.TEXT;
+        if (!ReportView.isFormat(format)) {
+            ConsoleView.showMessage("report --format must be text, csv or json");
+            return;
+        }
+        int window = flags.containsKey("window") ? parseCount(flags.get("window"), "window") : DEFAULT_REPORT_WINDOW;
+        int months = flags.containsKey("months") ? parseCount(flags.get("months"), "months") : DEFAULT_REPORT_MONTHS;
+        if (window < 1 || months < 1) {
+            ConsoleView.showMessage("report --window and --months must be at least 1");
+            return;
+        }
+        if (window > TrendReport.MAX_MONTHS || months > TrendReport.MAX_MONTHS) {
+            ConsoleView.showMessage("report --window and --months must be at most " + TrendReport.MAX_MONTHS);
+            return;
+        }
+        // [first, last] as month indexes (year * 12 + month - 1)
+        int first;
+        int last;
+        if (yearS != null) {
+            first = Integer.parseInt(yearS) * 12;
+            last = first + 11;
+        } else {
+            last = toS != null ? parseMonth(toS) : Dates.monthIndex(Dates.today());
+            first = fromS != null ? parseMonth(fromS) : last - months + 1;
+            if (fromS != null && toS == null && flags.containsKey("months")) last = first + months - 1;
+        }
+        if (first < 0 || last < first) {
+            ConsoleView.showMessage("report needs --from/--to as YYYY-MM with from <= to");
+            return;
+        }
+        if (last - first + 1 > TrendReport.MAX_MONTHS) {
+            ConsoleView.showMessage("report covers at most " + TrendReport.MAX_MONTHS + " months from --from to --to");
+            return;
+        }
+        String category = first(flags, "category", "c");
+        TrendReport r = expenseRepo.scanner().trend(first, last - first + 1, Math.max(12, window - 1), category);
+        // budgets cover a whole month's spending, so they are not compared with a single category
+        if (category == null) r.setBudgets(budgetRepo.amounts(first, last - first + 1));
+
+        String file = first(flags, "file", "f");
+        Writer out = null;
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(
+                    file == null ? System.out : new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+            ReportView.write(out, r, window, format);
+            if (file != null) ConsoleView.showMessage("Wrote report to " + file);
+        } catch (IOException ex) {
+            System.err.println("Error writing report: " + ex.getMessage());
+        } finally {
+            // leave System.out open
+            try { if (out != null && file != null) out.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // "YYYY-MM" as a month index, -1 if malformed
+    private static int parseMonth(String s) {
+        int day = Dates.toEpochDay(s + "-01");
+        return day == Dates.INVALID ? -1 : Dates.monthIndex(day);
+    }
+
     private void doSetBudget(String[] args) {
         Map<String,String> flags = parseFlags(args);
         String monthS = first(flags, "month", "m");
@@ -267,22 +605,88 @@ public class ExpenseCLI {
         int month = Integer.parseInt(monthS);
         int year;
         if (yearS == null) {
-            Calendar cal = Calendar.getInstance();
-            year = cal.get(Calendar.YEAR);
+            year = Dates.year(Dates.today());
         } else {
             year = Integer.parseInt(yearS);
         }
-        double amount = Double.parseDouble(amountS);
+        if (!BudgetRepository.valid(year, month)) {
+            ConsoleView.showMessage("set-budget needs --month 1-12 and --year " + BudgetRepository.MIN_YEAR + "-" + BudgetRepository.MAX_YEAR);
+            return;
+        }
+        long amount = Money.parse(amountS);
         Budget b = new Budget(year, month, amount);
         budgetRepo.upsert(b);
-        ConsoleView.showMessage("Budget set for " + month + "/" + year + " : " + String.format("%.2f", amount));
+        ConsoleView.showMessage("Budget set for " + month + "/" + year + " : " + Money.format(amount));
         // check immediately
-        double total = expenseRepo.totalForMonth(year, month);
+        long total = monthTotal(year, month);
         if (total > amount) {
-            ConsoleView.showWarning("You have already exceeded this budget by " + String.format("%.2f", (total - amount)));
+            ConsoleView.showWarning("You have already exceeded this budget by " + Money.format(total - amount));
+        }
+    }
+
+    // Store a new recurring rule; nothing is booked until materialize runs
+    private void doAddRule(String[] args) {
+        Map<String,String> flags = parseFlags(args);
+        String every = first(flags, "every", "e");
+        String cron = first(flags, "cron");
+        String desc = first(flags, "description", "d");
+        String amtS = first(flags, "amount", "a");
+        if ((every == null) == (cron == null) || desc == null || amtS == null) {
+            ConsoleView.showMessage("add-rule requires --every or --cron, --description and --amount");
+            return;
+        }
+        String startS = first(flags, "start");
+        String endS = first(flags, "end");
+        int start = startS == null ? Dates.today() : Dates.toEpochDay(startS);
+        int end = endS == null ? Dates.INVALID : Dates.toEpochDay(endS);
+        if (start == Dates.INVALID || (endS != null && (end == Dates.INVALID || end < start))) {
+            ConsoleView.showMessage("add-rule needs dates as YYYY-MM-DD, with --end not before --start");
+            return;
+        }
+        RecurringRule r;
+        try {
+            r = new RecurringRule(0L, every != null ? every : "cron:" + cron, start, Money.parse(amtS), desc,
+                    first(flags, "category", "c"));
+        } catch (IllegalArgumentException e) {
+            ConsoleView.showMessage("Invalid schedule: " + e.getMessage());
+            return;
+        }
+        r.setEnd(end);
+        long id = recurringRepo.add(r);
+        ConsoleView.showMessage("Added rule id=" + id + " (" + r.toSpec() + "), run materialize to book it");
+    }
+
+    private void doDeleteRule(String[] args) {
+        if (args.length == 0) {
+            ConsoleView.showMessage("delete-rule requires an id");
+            return;
+        }
+        long id = Long.parseLong(args[0]);
+        if (recurringRepo.delete(id)) ConsoleView.showMessage("Deleted rule id=" + id);
+        else ConsoleView.showMessage("Rule not found: " + id);
+    }
+
+    // Book all due occurrences in batched writes, then check the budget of each month they fall in once
+    private void doMaterialize(String[] args) {
+        Map<String,String> flags = parseFlags(args);
+        String untilS = first(flags, "until", "u");
+        int until = untilS == null ? Dates.today() : Dates.toEpochDay(untilS);
+        if (until == Dates.INVALID) {
+            ConsoleView.showMessage("materialize needs --until YYYY-MM-DD");
+            return;
+        }
+        int batchSize = Math.max(1, Integer.getInteger("tracker.import.batch", DEFAULT_IMPORT_BATCH));
+        long start = System.nanoTime();
+        RecurringRepository.Result res = recurringRepo.materialize(expenseRepo, until, batchSize);
+        long nanos = Math.max(1L, System.nanoTime() - start);
+        ConsoleView.showMessage("Materialized " + res.expenses + " expenses from " + res.rules + " rules through "
+                + Dates.format(until) + " in " + (nanos / 1000000L) + " ms (" + res.batches + " writes)");
+        for (int key : res.months) {
+            checkBudget(key / 100, key % 100);
         }
     }
 
+    // Streams matching rows straight from the store into the CSV writer (constant memory)
     private void doExport(String[] args) {
         Map<String,String> flags = parseFlags(args);
         String file = first(flags, "file", "f");
@@ -291,80 +695,156 @@ public class ExpenseCLI {
             return;
         }
         String monthS = first(flags, "month", "m");
-        Integer month = (monthS == null) ? null : Integer.parseInt(monthS);
-        String category = first(flags, "category", "c");
-        Calendar cal = Calendar.getInstance();
-        int year = cal.get(Calendar.YEAR);
-
-        List<Expense> out;
-        if (category != null) {
-            out = expenseRepo.findByCategory(category);
-            if (month != null) {
-                List<Expense> filtered = new ArrayList<Expense>();
-                for (Expense e : out) {
-                    if (matchesYearMonth(e.getDate(), year, month)) filtered.add(e);
+        final Integer month = (monthS == null) ? null : Integer.parseInt(monthS);
+        final String category = first(flags, "category", "c");
+        final CategoryFilter categoryFilter = new CategoryFilter(category);
+        // the month as an epoch-day range; an impossible month matches nothing
+        final int year = Dates.year(Dates.today());
+        boolean validMonth = month != null && month >= 1 && month <= 12;
+        final int from = validMonth ? Dates.epochDay(year, month, 1) : 0;
+        final int to = validMonth ? from + Dates.daysInMonth(year, month) - 1 : -1;
+        boolean gzip = flags.containsKey("gzip") || file.endsWith(".gz");
+
+        CsvExpenseWriter csv = null;
+        try {
+            csv = new CsvExpenseWriter(new File(file), gzip);
+            final CsvExpenseWriter out = csv;
+            expenseRepo.forEach(new ExpenseVisitor() {
+                public void expense(Expense e) {
+                    if (category != null && !e.inCategory(categoryFilter)) return;
+                    if (month != null && (e.getEpochDay() < from || e.getEpochDay() > to)) return;
+                    try {
+                        out.write(e);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
                 }
-                out = filtered;
-            }
-        } else if (month != null) {
-            out = expenseRepo.findByMonthYear(year, month);
-        } else {
-            out = expenseRepo.findAll();
+            });
+            ConsoleView.showMessage("Exported " + csv.getCount() + " expenses to " + file);
+        } catch (IOException ex) {
+            System.err.println("Error exporting CSV: " + ex.getMessage());
+        } catch (UncheckedIOException ex) {
+            System.err.println("Error exporting CSV: " + ex.getCause().getMessage());
+        } finally {
+            try { if (csv != null) csv.close(); } catch (IOException ignored) {}
         }
+    }
 
-        BufferedWriter writer = null;
+    // Bulk load from CSV: rows are streamed, written in large batches, budgets checked once per month
+    private void doImport(String[] args) {
+        Map<String,String> flags = parseFlags(args);
+        String file = first(flags, "file", "f");
+        if (file == null) {
+            ConsoleView.showMessage("import requires --file");
+            return;
+        }
+        int batchSize = Math.max(1, Integer.getInteger("tracker.import.batch", DEFAULT_IMPORT_BATCH));
+        long start = System.nanoTime();
+        long imported = 0;
+        Set<Integer> months = new TreeSet<Integer>(); // year * 100 + month
+        CsvExpenseReader csv = null;
+        BufferedReader reader = null;
         try {
-            writer = new BufferedWriter(new FileWriter(file, false));
-            writer.write("id,date,amount,category,description");
-            writer.newLine();
-            for (Expense e : out) {
-                writer.write(csvEscape(String.valueOf(e.getId())) + "," +
-                        csvEscape(e.getDate()) + "," +
-                        csvEscape(String.format("%.2f", e.getAmount())) + "," +
-                        csvEscape(e.getCategory()) + "," +
-                        csvEscape(e.getDescription()));
-                writer.newLine();
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16);
+            csv = new CsvExpenseReader(reader);
+            List<Expense> batch = new ArrayList<Expense>();
+            Expense e;
+            while ((e = csv.next()) != null) {
+                batch.add(e);
+                int day = e.getEpochDay();
+                if (day != Dates.INVALID) months.add(Dates.year(day) * 100 + Dates.month(day));
+                if (batch.size() >= batchSize) {
+                    expenseRepo.addAll(batch);
+                    imported += batch.size();
+                    batch = new ArrayList<Expense>();
+                }
             }
-            ConsoleView.showMessage("Exported " + out.size() + " expenses to " + file);
+            expenseRepo.addAll(batch);
+            imported += batch.size();
         } catch (IOException ex) {
-            System.err.println("Error exporting CSV: " + ex.getMessage());
+            System.err.println("Error importing CSV: " + ex.getMessage());
         } finally {
-            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+        long nanos = Math.max(1L, System.nanoTime() - start);
+        long rejected = csv == null ? 0 : csv.getRejected();
+        ConsoleView.showMessage("Imported " + imported + " expenses from " + file + " in " + (nanos / 1000000L)
+                + " ms (" + (imported * 1000000000L / nanos) + " rows/s), rejected " + rejected);
+        if (csv != null) {
+            for (String p : csv.getProblems()) ConsoleView.showMessage("  rejected " + p);
+            if (rejected > csv.getProblems().size()) {
+                ConsoleView.showMessage("  ... and " + (rejected - csv.getProblems().size()) + " more");
+            }
+        }
+        for (int key : months) {
+            checkBudget(key / 100, key % 100);
         }
     }
 
-    // ========== Helpers ==========
-    private void checkBudgetForDate(String date) {
-        // date assumed "YYYY-MM-DD"
-        if (date == null || date.length() < 7) return;
-        int year = Integer.parseInt(date.substring(0,4));
-        int month = Integer.parseInt(date.substring(5,7));
-        double total = expenseRepo.totalForMonth(year, month);
-        Budget b = budgetRepo.find(year, month);
-        if (b != null && total > b.getAmount()) {
-            ConsoleView.showWarning("For " + month + "/" + year + " you have spent " + String.format("%.2f", total)
-                    + " which exceeds budget " + String.format("%.2f", b.getAmount()) + " by " + String.format("%.2f", (total - b.getAmount())));
+    // Checksum pass over the ledger files; --repair rewrites them without bad records
+    private void doVerify(String[] args) {
+        Map<String,String> flags = parseFlags(args);
+        boolean repair = flags.containsKey("repair");
+        List<LedgerRecovery.Report> reports = expenseRepo.verify(repair);
+        if (reports.isEmpty()) {
+            if ("columnar".equalsIgnoreCase(System.getProperty("tracker.storage", "text"))) {
+                ConsoleView.showMessage("Nothing to verify: " + COLUMNAR_FILE + " has no per-record checksums (it is only ever replaced whole).");
+            } else {
+                ConsoleView.showMessage("Nothing to verify: the ledger has no files yet.");
+            }
+            return;
         }
+        long bad = 0;
+        for (LedgerRecovery.Report r : reports) {
+            ConsoleView.showMessage(r.toString());
+            if (!r.repaired) bad += r.bad;
+        }
+        if (bad == 0) ConsoleView.showMessage("OK");
+        else ConsoleView.showWarning(bad + " bad records; run \"verify --repair\" to move them aside");
     }
 
-    private boolean matchesYearMonth(String date, int year, int month) {
-        if (date == null || date.length() < 7) return false;
-        try {
-            int y = Integer.parseInt(date.substring(0,4));
-            int m = Integer.parseInt(date.substring(5,7));
-            return y == year && m == month;
-        } catch (NumberFormatException ex) {
-            return false;
+    // Lossless conversion between expenses.txt and the binary columnar file
+    private void doConvert(String[] args) {
+        Map<String,String> flags = parseFlags(args);
+        String to = first(flags, "to");
+        File text = new File(EXPENSES_FILE);
+        File columnar = new File(COLUMNAR_FILE);
+        if ("columnar".equalsIgnoreCase(to)) {
+            int n = ColumnarLedgerStore.convertFromText(text, columnar);
+            ConsoleView.showMessage("Converted " + n + " expenses to " + COLUMNAR_FILE);
+        } else if ("text".equalsIgnoreCase(to)) {
+            if (!columnar.exists()) {
+                ConsoleView.showMessage("Nothing to convert: " + COLUMNAR_FILE + " not found");
+                return;
+            }
+            int n = ColumnarLedgerStore.convertToText(columnar, text);
+            ConsoleView.showMessage("Converted " + n + " expenses to " + EXPENSES_FILE);
+        } else {
+            ConsoleView.showMessage("convert requires --to columnar|text");
         }
     }
 
-    private String csvEscape(String s) {
-        if (s == null) s = "";
-        if (s.contains(",") || s.contains("\"") || s.contains("\n") || s.contains("\r")) {
-            s = s.replace("\"", "\"\"");
-            return "\"" + s + "\"";
+    // ========== Helpers ==========
+    private void checkBudgetForDay(int epochDay) {
+        if (epochDay == Dates.INVALID) return;
+        checkBudget(Dates.year(epochDay), Dates.month(epochDay));
+    }
+
+    private void checkBudget(int year, int month) {
+        long t = Metrics.start();
+        long total = monthTotal(year, month);
+        Budget b = budgetRepo.find(year, month);
+        if (b != null && total > b.getAmountCents()) {
+            ConsoleView.showWarning("For " + month + "/" + year + " you have spent " + Money.format(total)
+                    + " which exceeds budget " + Money.format(b.getAmountCents()) + " by " + Money.format(total - b.getAmountCents()));
         }
-        return s;
+        Metrics.record("cli.budgetCheck", t);
+    }
+
+    // Month total from the aggregate store when available, otherwise from the ledger
+    private long monthTotal(int year, int month) {
+        if (aggregates != null) return aggregates.totalForMonth(year, month);
+        return expenseRepo.totalForMonth(year, month);
     }
 
     private static void printHelp() {
@@ -374,11 +854,25 @@ public class ExpenseCLI {
         System.out.println("  add --description \"text\" --amount 12.50 [--date YYYY-MM-DD] [--category cat]");
         System.out.println("  update <id> [--description ...] [--amount ...] [--date ...] [--category ...]");
         System.out.println("  delete <id>");
-        System.out.println("  list [--category cat] [--month M]");
+        System.out.println("  list [--category cat] [--month M] [--limit N] [--offset N | --after ID] [--sort id|date]");
+        System.out.println("  search <terms> [--category cat] [--month M] [--year YYYY] [--limit N]");
         System.out.println("  summary");
         System.out.println("  month-summary <month>");
+        System.out.println("  report [--from YYYY-MM] [--to YYYY-MM | --months N | --year YYYY] [--window N]");
+        System.out.println("         [--category cat] [--format text|csv|json] [--file path]");
         System.out.println("  set-budget --month M --amount 500 [--year YYYY]");
-        System.out.println("  export --file filename.csv [--month M] [--category cat]");
+        System.out.println("  add-rule --every daily|weekly|monthly[/N] | --cron \"DOM MON DOW\"");
+        System.out.println("           --description \"text\" --amount 12.50 [--category cat] [--start YYYY-MM-DD] [--end YYYY-MM-DD]");
+        System.out.println("  rules");
+        System.out.println("  delete-rule <id>");
+        System.out.println("  materialize [--until YYYY-MM-DD]");
+        System.out.println("  export --file filename.csv[.gz] [--month M] [--category cat] [--gzip]");
+        System.out.println("  import --file filename.csv");
+        System.out.println("  convert --to columnar|text");
+        System.out.println("  verify [--repair]");
+        System.out.println("  serve [--port N]");
+        System.out.println("  stop-daemon");
         System.out.println("  help");
+        System.out.println("Any command also accepts --stats to print timings and I/O counters.");
     }
 }
\ No newline at end of file
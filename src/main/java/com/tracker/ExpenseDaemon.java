@@ -0,0 +1,285 @@
+package main.java.com.tracker;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclEntryPermission;
+import java.nio.file.attribute.AclEntryType;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/*
+Long-running server mode ("serve") and the thin client used by every other command.
+
+The daemon keeps one ExpenseCLI (resident ledger, aggregates, indexes) warm and
+listens on a loopback port. It writes "port|token" to tracker.daemon in the
+working directory; a CLI started in the same directory reads that file, sends
+its arguments and prints what comes back. Without the file, or when the daemon
+does not answer or runs with different tracker.* settings, the CLI works on
+the files directly as before.
+
+Protocol (DataInput/DataOutput):
+- request:  int MAGIC, UTF token, UTF settings, int argc, argc x UTF
+- response: frames of byte type + int length + bytes, type 'O' stdout, 'E' stderr;
+            'X' ends the command, 'R' (first frame only) refuses it so the client falls back
+Requests are served one at a time, so commands never interleave.
+*/
+public class ExpenseDaemon {
+    static final String INFO_FILE = "tracker.daemon";
+    private static final int MAGIC = 0x45584431; // "EXD1"
+    private static final int CONNECT_TIMEOUT_MS = 500;
+    private static final int REQUEST_TIMEOUT_MS = 30000;
+
+    private static final byte OUT = 'O';
+    private static final byte ERR = 'E';
+    private static final byte END = 'X';
+    private static final byte REFUSED = 'R';
+
+    private final ExpenseCLI app;
+    private final String token;
+    private final String settings;
+    private volatile boolean running = true;
+
+    ExpenseDaemon(ExpenseCLI app) {
+        this.app = app;
+        byte[] raw = new byte[16];
+        new SecureRandom().nextBytes(raw);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : raw) sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+        this.token = sb.toString();
+        this.settings = settings();
+    }
+
+    // ========== Server ==========
+    // Accept loop; returns after "stop-daemon"
+    void serve(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        final File info = new File(INFO_FILE);
+        try {
+            writeInfo(info, server.getLocalPort());
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                info.delete();
+            }
+        }));
+        System.out.println("Expense daemon listening on 127.0.0.1:" + server.getLocalPort());
+        try {
+            while (running) {
+                Socket s = server.accept();
+                try {
+                    handle(s);
+                } catch (IOException e) {
+                    System.err.println("Error serving request: " + e.getMessage());
+                } finally {
+                    try { s.close(); } catch (IOException ignored) {}
+                }
+            }
+        } finally {
+            try { server.close(); } catch (IOException ignored) {}
+            info.delete();
+        }
+    }
+
+    private void handle(Socket s) throws IOException {
+        s.setSoTimeout(REQUEST_TIMEOUT_MS);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16));
+        if (in.readInt() != MAGIC || !token.equals(in.readUTF())) return;
+        String clientSettings = in.readUTF();
+        int argc = in.readInt();
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i++) args[i] = in.readUTF();
+        if (!settings.equals(clientSettings) || argc == 0 || "serve".equalsIgnoreCase(args[0])) {
+            out.writeByte(REFUSED);
+            out.flush();
+            return;
+        }
+
+        PrintStream savedOut = System.out;
+        PrintStream savedErr = System.err;
+        PrintStream cmdOut = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, OUT), 8192), false);
+        PrintStream cmdErr = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, ERR), 8192), false);
+        System.setOut(cmdOut);
+        System.setErr(cmdErr);
+        try {
+            if ("stop-daemon".equalsIgnoreCase(args[0])) {
+                running = false;
+                System.out.println("Daemon stopped");
+            } else {
+                app.run(args);
+            }
+        } finally {
+            cmdOut.flush();
+            cmdErr.flush();
+            System.setOut(savedOut);
+            System.setErr(savedErr);
+        }
+        out.writeByte(END);
+        out.flush();
+    }
+
+    // The token is what lets a client in, so the file is private to the owner from the moment it exists:
+    // created rw------- where POSIX modes exist, else restricted by ACL before the token is written.
+    // IOException (and no daemon) if that cannot be done.
+    private void writeInfo(File info, int port) throws IOException {
+        Path path = info.toPath();
+        Files.deleteIfExists(path); // left by a daemon that died, maybe with other permissions
+        Set<String> views = FileSystems.getDefault().supportedFileAttributeViews();
+        if (views.contains("posix")) {
+            Set<PosixFilePermission> owner = EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(owner));
+            if (!Files.getPosixFilePermissions(path).equals(owner)) {
+                Files.delete(path);
+                throw new IOException("cannot make " + info + " readable by the owner only");
+            }
+        } else if (views.contains("acl")) {
+            Files.createFile(path);
+            try {
+                AclFileAttributeView acl = Files.getFileAttributeView(path, AclFileAttributeView.class);
+                AclEntry entry = AclEntry.newBuilder().setType(AclEntryType.ALLOW).setPrincipal(acl.getOwner())
+                        .setPermissions(EnumSet.allOf(AclEntryPermission.class)).build();
+                acl.setAcl(Collections.singletonList(entry));
+            } catch (IOException e) {
+                Files.delete(path);
+                throw new IOException("cannot make " + info + " readable by the owner only: " + e.getMessage());
+            }
+        } else {
+            throw new IOException("cannot make " + info + " readable by the owner only on this file system");
+        }
+        Writer w = null;
+        try {
+            w = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            w.write(port + "|" + token);
+        } finally {
+            try { if (w != null) w.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // ========== Client ==========
+    // Run the command on the daemon for this directory; false means "no daemon, do it locally"
+    static boolean forward(String[] args) {
+        File info = new File(INFO_FILE);
+        if (!info.exists()) return false;
+        int port;
+        String token;
+        BufferedReader r = null;
+        try {
+            r = new BufferedReader(new FileReader(info));
+            String line = r.readLine();
+            int bar = line == null ? -1 : line.indexOf('|');
+            if (bar < 0) return false;
+            port = Integer.parseInt(line.substring(0, bar).trim());
+            token = line.substring(bar + 1).trim();
+        } catch (IOException e) {
+            return false;
+        } catch (NumberFormatException e) {
+            return false;
+        } finally {
+            try { if (r != null) r.close(); } catch (IOException ignored) {}
+        }
+
+        Socket s = new Socket();
+        try {
+            s.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MS);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            out.writeInt(MAGIC);
+            out.writeUTF(token);
+            out.writeUTF(settings());
+            out.writeInt(args.length);
+            for (String a : args) out.writeUTF(a);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+            int type = in.read();
+            if (type < 0 || type == REFUSED) return false;
+            // from here on the command has run remotely: never fall back and run it twice
+            byte[] buf = new byte[8192];
+            try {
+                while (type != END) {
+                    if (type < 0) {
+                        System.err.println("Error: daemon closed the connection");
+                        break;
+                    }
+                    int len = in.readInt();
+                    PrintStream target = type == ERR ? System.err : System.out;
+                    while (len > 0) {
+                        int n = in.read(buf, 0, Math.min(len, buf.length));
+                        if (n < 0) throw new EOFException();
+                        target.write(buf, 0, n);
+                        len -= n;
+                    }
+                    type = in.read();
+                }
+            } catch (IOException e) {
+                System.err.println("Error talking to daemon: " + e.getMessage());
+            }
+            System.out.flush();
+            return true;
+        } catch (IOException e) {
+            // stale tracker.daemon file or daemon busy starting: work locally
+            return false;
+        } finally {
+            try { s.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // tracker.* settings that change what a command does (daemon-only ones excluded)
+    static String settings() {
+        Properties p = System.getProperties();
+        List<String> keys = new ArrayList<String>();
+        for (String k : p.stringPropertyNames()) {
+            if (!k.startsWith("tracker.")) continue;
+            if (k.startsWith("tracker.daemon") || k.equals("tracker.resident")) continue;
+            keys.add(k);
+        }
+        Collections.sort(keys);
+        StringBuilder sb = new StringBuilder();
+        for (String k : keys) sb.append(k).append('=').append(p.getProperty(k)).append('\n');
+        return sb.toString();
+    }
+
+    // Chunks everything written to it into typed frames on the shared connection
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+    }
+}
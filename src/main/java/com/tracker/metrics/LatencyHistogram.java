@@ -0,0 +1,72 @@
+package main.java.com.tracker.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+Lock-free latency histogram in nanoseconds.
+
+Buckets are log-linear: every power of two is split into 8 equal sub-buckets,
+so any reported percentile is within 12.5% of the true value, and the whole
+range of a long fits in under 500 buckets. Recording is a few atomic adds;
+nothing is allocated.
+*/
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(index(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) {
+            m = max.get();
+        }
+    }
+
+    public long count() { return count.get(); }
+    public long totalNanos() { return sum.get(); }
+    public long maxNanos() { return max.get(); }
+
+    public double meanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / (double) n;
+    }
+
+    // Upper bound of the bucket holding the given percentile (0-100)
+    public long percentileNanos(double percentile) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(n * percentile / 100.0);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB) return index;
+        int exp = index / SUB + SUB_BITS - 1;
+        long sub = index % SUB;
+        long width = 1L << (exp - SUB_BITS);
+        return ((SUB + sub) << (exp - SUB_BITS)) + width - 1;
+    }
+}
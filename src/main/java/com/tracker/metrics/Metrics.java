@@ -0,0 +1,134 @@
+package main.java.com.tracker.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+Process-wide operational metrics for the repositories.
+
+- per-operation latency histograms ("expense.add", "budget.find", "cli.budgetCheck", ...)
+- rows read/written, bytes read/written, parse errors
+
+Usage at a call site:
+    long t = Metrics.start();
+    try { ... } finally { Metrics.record("expense.findAll", t); }
+
+Recording costs two System.nanoTime() calls and a few atomic adds, so it is
+always on. The numbers are printed by the CLI's --stats flag and exposed over
+JMX by register() (done by the daemon, or with -Dtracker.jmx=true).
+*/
+public class Metrics implements MetricsMBean {
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final ConcurrentHashMap<String, LatencyHistogram> ops = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong parseErrors = new AtomicLong();
+    private boolean registered = false;
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    // ========== Recording ==========
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    public static void record(String operation, long startNanos) {
+        INSTANCE.histogram(operation).record(System.nanoTime() - startNanos);
+    }
+
+    public static void rowsRead(long n) { INSTANCE.rowsRead.addAndGet(n); }
+    public static void rowsWritten(long n) { INSTANCE.rowsWritten.addAndGet(n); }
+    public static void bytesRead(long n) { INSTANCE.bytesRead.addAndGet(n); }
+    public static void bytesWritten(long n) { INSTANCE.bytesWritten.addAndGet(n); }
+    public static void parseError() { INSTANCE.parseErrors.incrementAndGet(); }
+
+    public LatencyHistogram histogram(String operation) {
+        LatencyHistogram h = ops.get(operation);
+        if (h == null) {
+            LatencyHistogram fresh = new LatencyHistogram();
+            h = ops.putIfAbsent(operation, fresh);
+            if (h == null) h = fresh;
+        }
+        return h;
+    }
+
+    // ========== JMX ==========
+    // Register the MBean once; failures are reported and otherwise ignored
+    public static synchronized void register() {
+        if (INSTANCE.registered) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(INSTANCE, new ObjectName("tracker:type=Metrics"));
+            INSTANCE.registered = true;
+        } catch (Exception e) {
+            System.err.println("Warning: cannot register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public long getRowsRead() { return rowsRead.get(); }
+    public long getRowsWritten() { return rowsWritten.get(); }
+    public long getBytesRead() { return bytesRead.get(); }
+    public long getBytesWritten() { return bytesWritten.get(); }
+    public long getParseErrors() { return parseErrors.get(); }
+
+    public String[] getOperations() {
+        List<String> names = new ArrayList<String>(ops.keySet());
+        Collections.sort(names);
+        return names.toArray(new String[names.size()]);
+    }
+
+    public long operationCount(String operation) {
+        LatencyHistogram h = ops.get(operation);
+        return h == null ? 0 : h.count();
+    }
+
+    public double operationMeanMicros(String operation) {
+        LatencyHistogram h = ops.get(operation);
+        return h == null ? 0 : h.meanNanos() / 1000.0;
+    }
+
+    public double operationP99Micros(String operation) {
+        LatencyHistogram h = ops.get(operation);
+        return h == null ? 0 : h.percentileNanos(99) / 1000.0;
+    }
+
+    public void reset() {
+        ops.clear();
+        rowsRead.set(0);
+        rowsWritten.set(0);
+        bytesRead.set(0);
+        bytesWritten.set(0);
+        parseErrors.set(0);
+    }
+
+    // Table of every operation plus the counters
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-24s %8s %11s %10s %10s %10s %10s%n",
+                "operation", "count", "total ms", "mean us", "p50 us", "p99 us", "max us"));
+        for (String name : getOperations()) {
+            LatencyHistogram h = ops.get(name);
+            sb.append(String.format(Locale.ROOT, "%-24s %8d %11.2f %10.1f %10.1f %10.1f %10.1f%n",
+                    name, h.count(), h.totalNanos() / 1e6, h.meanNanos() / 1e3,
+                    h.percentileNanos(50) / 1e3, h.percentileNanos(99) / 1e3, h.maxNanos() / 1e3));
+        }
+        sb.append("rows read ").append(rowsRead.get())
+          .append(", rows written ").append(rowsWritten.get())
+          .append(", bytes read ").append(bytesRead.get())
+          .append(", bytes written ").append(bytesWritten.get())
+          .append(", parse errors ").append(parseErrors.get());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,20 @@
+package main.java.com.tracker.metrics;
+
+/*
+JMX view of Metrics (registered as "tracker:type=Metrics").
+Latencies are in microseconds; operation names are listed by getOperations().
+*/
+public interface MetricsMBean {
+    long getRowsRead();
+    long getRowsWritten();
+    long getBytesRead();
+    long getBytesWritten();
+    long getParseErrors();
+    String[] getOperations();
+    String getReport();
+
+    long operationCount(String operation);
+    double operationMeanMicros(String operation);
+    double operationP99Micros(String operation);
+    void reset();
+}
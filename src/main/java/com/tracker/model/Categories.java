@@ -0,0 +1,139 @@
+package main.java.com.tracker.model;
+
+import java.util.Locale;
+
+/*
+Process-wide dictionary of category names.
+
+Every distinct name gets a small int code the first time it is seen, and an
+Expense keeps only that code, so a ledger with millions of rows holds each
+category String once instead of once per row. Codes are only valid inside
+one process; files keep the names.
+
+Each code also knows the code of its lower-cased name (folded()), so a
+case-insensitive category filter is a single int comparison per row.
+
+Lookups do not lock: they probe the current table and only fall back to the
+synchronized path for names not seen before (or a slot still being filled).
+*/
+public class Categories {
+    private static final Object LOCK = new Object();
+
+    // Immutable once published except for filling new slots under LOCK
+    private static class Table {
+        final String[] names;
+        final int[] folded;  // folded code + 1, 0 = not yet known
+        final int[] slots;   // code + 1 by hash, 0 = empty
+        Table(int capacity, int slotCount) {
+            names = new String[capacity];
+            folded = new int[capacity];
+            slots = new int[slotCount];
+        }
+    }
+
+    private static volatile Table table = new Table(64, 256);
+    private static int size = 0;
+
+    // Code for a name (null counts as ""), interning it if new
+    public static int code(String name) {
+        if (name == null) name = "";
+        return code(name, 0, name.length());
+    }
+
+    // Code for the characters s[from, to) without building a String when the name is known
+    public static int code(CharSequence s, int from, int to) {
+        Table t = table;
+        int h = hash(s, from, to);
+        int mask = t.slots.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int slot = t.slots[i];
+            if (slot == 0) break;
+            String n = t.names[slot - 1];
+            if (n == null) break;
+            if (same(n, s, from, to)) return slot - 1;
+        }
+        return intern(s.subSequence(from, to).toString());
+    }
+
+    public static String name(int code) {
+        String n = table.names[code];
+        if (n != null) return n;
+        synchronized (LOCK) {
+            return table.names[code];
+        }
+    }
+
+    // Code of the lower-cased name; two codes are equal ignoring case iff their folded codes are equal
+    public static int folded(int code) {
+        int f = table.folded[code];
+        if (f != 0) return f - 1;
+        synchronized (LOCK) {
+            return table.folded[code] - 1;
+        }
+    }
+
+    public static int size() {
+        synchronized (LOCK) {
+            return size;
+        }
+    }
+
+    private static int intern(String name) {
+        synchronized (LOCK) {
+            int h = hash(name, 0, name.length());
+            int code = find(table, name, h);
+            if (code >= 0) return code;
+            if (size == table.names.length || (size + 1) * 2 > table.slots.length) grow();
+            Table t = table;
+            code = size++;
+            t.names[code] = name;
+            int mask = t.slots.length - 1;
+            int i = h & mask;
+            while (t.slots[i] != 0) i = (i + 1) & mask;
+            t.slots[i] = code + 1;
+            String lower = name.toLowerCase(Locale.ROOT);
+            int f = lower.equals(name) ? code : intern(lower);
+            table.folded[code] = f + 1;
+            return code;
+        }
+    }
+
+    private static int find(Table t, String name, int h) {
+        int mask = t.slots.length - 1;
+        for (int i = h & mask; t.slots[i] != 0; i = (i + 1) & mask) {
+            int code = t.slots[i] - 1;
+            if (name.equals(t.names[code])) return code;
+        }
+        return -1;
+    }
+
+    // Called with LOCK held; readers keep probing the old table until the new one is published
+    private static void grow() {
+        Table old = table;
+        Table t = new Table(old.names.length * 2, old.slots.length * 2);
+        System.arraycopy(old.names, 0, t.names, 0, size);
+        System.arraycopy(old.folded, 0, t.folded, 0, size);
+        int mask = t.slots.length - 1;
+        for (int code = 0; code < size; code++) {
+            String n = old.names[code];
+            int i = hash(n, 0, n.length()) & mask;
+            while (t.slots[i] != 0) i = (i + 1) & mask;
+            t.slots[i] = code + 1;
+        }
+        table = t;
+    }
+
+    private static int hash(CharSequence s, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) h = 31 * h + s.charAt(i);
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean same(String name, CharSequence s, int from, int to) {
+        if (name.length() != to - from) return false;
+        for (int k = 0; k < name.length(); k++) {
+            if (name.charAt(k) != s.charAt(from + k)) return false;
+        }
+        return true;
+    }
+}
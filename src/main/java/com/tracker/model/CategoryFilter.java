@@ -0,0 +1,29 @@
+package main.java.com.tracker.model;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+Case-insensitive category filter (list, search and export --category).
+
+The filter text is not interned into Categories: a long-running daemon would
+otherwise keep every name a user ever typed. Instead the lower-cased text is
+compared with the folded name of each distinct category code once, and the
+answer is cached per code, so matching a row is an array lookup. A name that
+no row uses simply matches nothing. Not shared between threads.
+*/
+public class CategoryFilter {
+    private final String folded;
+    private byte[] seen = new byte[16]; // per Categories code: 0 = not checked yet, 1 = in, 2 = out
+
+    // null counts as "" (uncategorized rows)
+    public CategoryFilter(String name) {
+        this.folded = name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    public boolean matches(int code) {
+        if (code >= seen.length) seen = Arrays.copyOf(seen, Math.max(code + 1, seen.length * 2));
+        if (seen[code] == 0) seen[code] = Categories.name(Categories.folded(code)).equals(folded) ? (byte) 1 : (byte) 2;
+        return seen[code] == 1;
+    }
+}
@@ -0,0 +1,119 @@
+package main.java.com.tracker.model;
+
+import java.util.TimeZone;
+
+/*
+Small date helpers for "YYYY-MM-DD" strings.
+
+Dates are converted to an epoch day (days since 1970-01-01) so they can be
+stored in int columns and compared as numbers. The conversion is done by hand
+(no java.time, no substring/parseInt) because it runs once per row.
+Expense keeps its date as an epoch day as well; text is only produced when a
+row is written or shown (appendTo avoids even that String).
+*/
+public class Dates {
+    public static final int INVALID = Integer.MIN_VALUE;
+
+    // Epoch day for a strict "YYYY-MM-DD" string, or INVALID if it is anything else
+    public static int toEpochDay(String s) {
+        if (s == null) return INVALID;
+        return toEpochDay(s, 0, s.length());
+    }
+
+    // Same for the characters s[from, to), without a substring
+    public static int toEpochDay(CharSequence s, int from, int to) {
+        if (to - from != 10 || s.charAt(from + 4) != '-' || s.charAt(from + 7) != '-') return INVALID;
+        int y = digits(s, from, 4);
+        int m = digits(s, from + 5, 2);
+        int d = digits(s, from + 8, 2);
+        if (y < 0 || m < 1 || m > 12 || d < 1 || d > daysInMonth(y, m)) return INVALID;
+        return epochDay(y, m, d);
+    }
+
+    // Today in the default time zone
+    public static int today() {
+        long now = System.currentTimeMillis();
+        long local = now + TimeZone.getDefault().getOffset(now);
+        return (int) Math.floorDiv(local, 86400000L);
+    }
+
+    public static int year(int epochDay) {
+        return toYmd(epochDay) / 10000;
+    }
+
+    public static int month(int epochDay) {
+        return toYmd(epochDay) / 100 % 100;
+    }
+
+    // year * 12 + (month - 1), a dense month number for keys and ranges
+    public static int monthIndex(int epochDay) {
+        int ymd = toYmd(epochDay);
+        return ymd / 10000 * 12 + ymd / 100 % 100 - 1;
+    }
+
+    public static int epochDay(int year, int month, int day) {
+        // days-from-civil (proleptic Gregorian), years start in March
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int mp = (month + 9) % 12;
+        int doy = (153 * mp + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    // Packed year*10000 + month*100 + day for an epoch day
+    public static int toYmd(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int d = doy - (153 * mp + 2) / 5 + 1;
+        int m = mp < 10 ? mp + 3 : mp - 9;
+        int y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+        return y * 10000 + m * 100 + d;
+    }
+
+    // "YYYY-MM-DD" for an epoch day
+    public static String format(int epochDay) {
+        StringBuilder sb = new StringBuilder(10);
+        appendTo(sb, epochDay);
+        return sb.toString();
+    }
+
+    // Append "YYYY-MM-DD" without building an intermediate String
+    public static void appendTo(StringBuilder sb, int epochDay) {
+        int ymd = toYmd(epochDay);
+        int y = ymd / 10000;
+        sb.append((char) ('0' + y / 1000 % 10)).append((char) ('0' + y / 100 % 10))
+          .append((char) ('0' + y / 10 % 10)).append((char) ('0' + y % 10)).append('-');
+        int m = ymd / 100 % 100;
+        sb.append((char) ('0' + m / 10)).append((char) ('0' + m % 10)).append('-');
+        int d = ymd % 100;
+        sb.append((char) ('0' + d / 10)).append((char) ('0' + d % 10));
+    }
+
+    public static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static int digits(CharSequence s, int from, int len) {
+        int v = 0;
+        for (int i = from; i < from + len; i++) {
+            char ch = s.charAt(i);
+            if (ch < '0' || ch > '9') return -1;
+            v = v * 10 + (ch - '0');
+        }
+        return v;
+    }
+}
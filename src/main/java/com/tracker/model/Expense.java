@@ -4,61 +4,123 @@ Simple Expense model.
 
 Fields:
 - id: unique numeric id
-- date: "YYYY-MM-DD" string
-- amount: double
+- date: epoch day (see Dates); text that is not a valid YYYY-MM-DD is kept as is
+- amount: long number of cents (see Money)
 - description: plain text
-- category: plain text (can be empty)
+- category: plain text (can be empty), held as a code into Categories
 
-Note: For simplicity this class stores date as a String and
-parsing of month/year is done in repository/CLI using substring.
+Month and range checks compare epoch days; getDate() formats on demand.
 */
 public class Expense {
     private long id;
-    private String date;       // format: YYYY-MM-DD
-    private double amount;
+    private int day;           // epoch day, Dates.INVALID if the text was not YYYY-MM-DD
+    private String rawDate;    // original text when day is INVALID, else null
+    private long amount;       // cents
     private String description;
-    private String category;
+    private int category;      // Categories code
 
-    public Expense(long id, String date, double amount, String description, String category) {
+    public Expense(long id, String date, long amount, String description, String category) {
+        this(id, Dates.INVALID, amount, description, Categories.code(category));
+        setDate(date);
+    }
+
+    public Expense(long id, int epochDay, long amount, String description, int categoryCode) {
         this.id = id;
-        this.date = date;
+        this.day = epochDay;
         this.amount = amount;
         this.description = description == null ? "" : description;
-        this.category = category == null ? "" : category;
+        this.category = categoryCode;
+    }
+
+    public Expense copy() {
+        Expense e = new Expense(id, day, amount, description, category);
+        e.rawDate = rawDate;
+        return e;
     }
 
     // getters and setters
     public long getId() { return id; }
     public void setId(long id) { this.id = id; }
-    public String getDate() { return date; }
-    public void setDate(String date) { this.date = date; }
-    public double getAmount() { return amount; }
-    public void setAmount(double amount) { this.amount = amount; }
+    public String getDate() { return day != Dates.INVALID ? Dates.format(day) : rawDate; }
+    public int getEpochDay() { return day; }
+    public void setEpochDay(int epochDay) { this.day = epochDay; this.rawDate = null; }
+
+    public void setDate(String date) {
+        this.day = Dates.toEpochDay(date);
+        this.rawDate = day == Dates.INVALID ? date : null;
+    }
+
+    // Append the date text (as getDate()) without building a String
+    public void appendDate(StringBuilder sb) {
+        if (day != Dates.INVALID) Dates.appendTo(sb, day);
+        else sb.append(rawDate);
+    }
+    public long getAmountCents() { return amount; }
+    public void setAmountCents(long amount) { this.amount = amount; }
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
-    public String getCategory() { return category; }
-    public void setCategory(String category) { this.category = category; }
+    public String getCategory() { return Categories.name(category); }
+    public void setCategory(String category) { this.category = Categories.code(category); }
+    public int getCategoryCode() { return category; }
+
+    // Same category ignoring case (see CategoryFilter)
+    public boolean inCategory(CategoryFilter filter) {
+        return filter.matches(category);
+    }
 
-    // Serialize to a single line: id|date|amount|description|category
+    // Serialize to a single line: id|date|amount|description|category|#crc (see LineChecksum)
     public String serialize() {
         // For simplicity we do not escape '|' in fields. Avoid using '|' in descriptions/categories.
-        return id + "|" + date + "|" + amount + "|" + description + "|" + category;
+        StringBuilder sb = new StringBuilder(64 + description.length());
+        sb.append(id).append('|');
+        appendDate(sb);
+        sb.append('|');
+        Money.appendTo(sb, amount);
+        sb.append('|').append(description).append('|').append(getCategory());
+        LineChecksum.append(sb, 0);
+        return sb.toString();
     }
 
-    // Create an Expense from a serialized line (assumes correct format)
+    // Create an Expense from a serialized line (assumes correct format).
+    // Amounts written as doubles by older versions are rounded to cents.
+    // The category is interned straight from the line, so known names allocate nothing.
+    // A trailing checksum field is ignored here; LedgerRecovery and log replay check it.
     public static Expense deserialize(String line) {
-        String[] parts = line.split("\\|", -1); // -1 to keep trailing empty fields
-        long id = Long.parseLong(parts[0]);
-        String date = parts[1];
-        double amount = Double.parseDouble(parts[2]);
-        String description = parts.length > 3 ? parts[3] : "";
-        String category = parts.length > 4 ? parts[4] : "";
-        return new Expense(id, date, amount, description, category);
+        int a = line.indexOf('|');
+        int b = a < 0 ? -1 : line.indexOf('|', a + 1);
+        if (b < 0) throw new IllegalArgumentException("bad expense line: " + line);
+        int c = line.indexOf('|', b + 1);
+        int d = c < 0 ? -1 : line.indexOf('|', c + 1);
+        long id = parseId(line, a);
+        int day = Dates.toEpochDay(line, a + 1, b);
+        long amount = Money.parse(line.substring(b + 1, c < 0 ? line.length() : c));
+        String description = c < 0 ? "" : line.substring(c + 1, d < 0 ? line.length() : d);
+        // like split("\\|"), a stray '|' in the category cuts it short
+        int e = d < 0 ? -1 : line.indexOf('|', d + 1);
+        int category = d < 0 ? Categories.code("") : Categories.code(line, d + 1, e < 0 ? line.length() : e);
+        Expense exp = new Expense(id, day, amount, description, category);
+        if (day == Dates.INVALID) exp.rawDate = line.substring(a + 1, b);
+        return exp;
+    }
+
+    // Long.parseLong(line.substring(0, end)) without the substring
+    private static long parseId(String line, int end) {
+        int i = 0;
+        boolean neg = end > 0 && line.charAt(0) == '-';
+        if (neg) i++;
+        if (i >= end) throw new NumberFormatException("bad id in: " + line);
+        long v = 0;
+        for (; i < end; i++) {
+            char ch = line.charAt(i);
+            if (ch < '0' || ch > '9' || v > (Long.MAX_VALUE - 9) / 10) throw new NumberFormatException("bad id in: " + line);
+            v = v * 10 + (ch - '0');
+        }
+        return neg ? -v : v;
     }
 
     @Override
     public String toString() {
-        return "Expense{id=" + id + ", date=" + date + ", amount=" + amount +
-                ", category=" + category + ", description=" + description + "}";
+        return "Expense{id=" + id + ", date=" + getDate() + ", amount=" + Money.format(amount) +
+                ", category=" + getCategory() + ", description=" + description + "}";
     }
 }
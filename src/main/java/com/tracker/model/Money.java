@@ -0,0 +1,78 @@
+package main.java.com.tracker.model;
+/*
+Fixed-point money helpers. Amounts are kept as a long number of cents.
+
+parse() reads what users type ("12.5", "-3", "12.50") exactly, and still accepts
+the double spellings older files contain ("50.0", "1.0E7", "0.30000000000000004")
+by rounding them to the nearest cent.
+*/
+public class Money {
+
+    // "12.50" -> 1250
+    public static long parse(String s) {
+        if (s == null) throw new NumberFormatException("null amount");
+        String t = s.trim();
+        int i = 0;
+        int n = t.length();
+        boolean neg = false;
+        if (i < n && (t.charAt(i) == '-' || t.charAt(i) == '+')) {
+            neg = t.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        while (i < n && t.charAt(i) >= '0' && t.charAt(i) <= '9') {
+            if (units > (Long.MAX_VALUE / 100 - 9) / 10) return parseDouble(t);
+            units = units * 10 + (t.charAt(i) - '0');
+            digits++;
+            i++;
+        }
+        long cents = 0;
+        if (i < n && t.charAt(i) == '.') {
+            i++;
+            int frac = 0;
+            while (i < n && t.charAt(i) >= '0' && t.charAt(i) <= '9' && frac < 2) {
+                cents = cents * 10 + (t.charAt(i) - '0');
+                frac++;
+                digits++;
+                i++;
+            }
+            if (frac == 1) cents *= 10;
+            while (i < n && t.charAt(i) == '0') i++;
+        }
+        // more than two decimals, exponents, garbage: let Double decide (and complain)
+        if (i != n || digits == 0) return parseDouble(t);
+        long v = units * 100 + cents;
+        return neg ? -v : v;
+    }
+
+    public static long fromDouble(double amount) {
+        return Math.round(amount * 100.0);
+    }
+
+    // 1250 -> "12.50"
+    public static String format(long cents) {
+        StringBuilder sb = new StringBuilder(24);
+        appendTo(sb, cents);
+        return sb.toString();
+    }
+
+    public static void appendTo(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+            if (cents == Long.MIN_VALUE) {
+                // cannot be negated; spell it out digit by digit
+                sb.append("92233720368547758.08");
+                return;
+            }
+            cents = -cents;
+        }
+        sb.append(cents / 100).append('.');
+        long c = cents % 100;
+        sb.append((char) ('0' + c / 10)).append((char) ('0' + c % 10));
+    }
+
+    private static long parseDouble(String t) {
+        return fromDouble(Double.parseDouble(t));
+    }
+}
@@ -0,0 +1,242 @@
+package main.java.com.tracker.model;
+
+import java.util.Locale;
+
+/*
+A recurring expense: the same amount, description and category booked on every
+day its schedule matches, from start to end (inclusive, end may be open).
+
+Schedules (see toSpec / setSchedule):
+- "daily", "weekly", "monthly", optionally "/N" for every N days/weeks/months,
+  counted from the start date. A monthly rule books on the start's day of month,
+  or on the last day of shorter months (a rule started on the 31st books Feb 28).
+- "cron:DOM MON DOW", the day fields of a crontab line: *, n, a-b, steps (a-b/s, or * with /s) and
+  comma lists; MON also takes JAN-DEC, DOW 0-7 (0 and 7 = Sunday) or SUN-SAT.
+  As in cron, a day matches when DOM or DOW matches if both are restricted.
+  A full five-field line is accepted; its minute and hour fields are ignored.
+
+Each schedule books at most one expense per day, and daily/weekly/monthly ones
+at most one per period. through is the last day already materialized (INVALID if
+none), so an occurrence is identified by rule and day and is booked once.
+
+Serialize: id|schedule|start|end|through|amount|description|category
+(end and through empty when unset; like Expense, fields are not escaped).
+*/
+public class RecurringRule {
+    public static final int DAILY = 0;
+    public static final int WEEKLY = 1;
+    public static final int MONTHLY = 2;
+    public static final int CRON = 3;
+
+    private static final String[] MONTHS = { "JAN", "FEB", "MAR", "APR", "MAY", "JUN",
+            "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+    private static final String[] WEEKDAYS = { "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT" };
+
+    private long id;
+    private int kind;
+    private int interval = 1;
+    private long domMask;   // cron: bit d for day of month d (1-31)
+    private int monthMask;  // cron: bit m for month m (1-12)
+    private int dowMask;    // cron: bit w for weekday w (0 = Sunday)
+    private boolean domAny;
+    private boolean dowAny;
+    private int start;
+    private int end = Dates.INVALID;
+    private int through = Dates.INVALID;
+    private long amount; // cents
+    private String description;
+    private int category;
+
+    public RecurringRule(long id, String schedule, int start, long amount, String description, String category) {
+        this.id = id;
+        this.start = start;
+        this.amount = amount;
+        this.description = description;
+        this.category = Categories.code(category);
+        setSchedule(schedule);
+    }
+
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+    public int getStart() { return start; }
+    public int getEnd() { return end; }
+    public void setEnd(int end) { this.end = end; }
+    public int getThrough() { return through; }
+    public void setThrough(int through) { this.through = through; }
+    public long getAmountCents() { return amount; }
+    public String getDescription() { return description; }
+    public String getCategory() { return Categories.name(category); }
+
+    // The booking for one occurrence (id assigned when it is added)
+    public Expense occurrence(int epochDay) {
+        return new Expense(0L, epochDay, amount, description, category);
+    }
+
+    // ========== Schedule ==========
+    // Parse "daily", "weekly/2", "monthly", "cron:1,15 * *", ...; IllegalArgumentException if malformed
+    public void setSchedule(String spec) {
+        String s = spec == null ? "" : spec.trim().toLowerCase(Locale.ROOT);
+        if (s.startsWith("cron:")) {
+            String[] f = s.substring(5).trim().split("\\s+");
+            if (f.length != 3 && f.length != 5) {
+                throw new IllegalArgumentException("cron schedule needs DOM MON DOW fields: " + spec);
+            }
+            int o = f.length - 3;
+            domAny = f[o].equals("*") || f[o].equals("?");
+            dowAny = f[o + 2].equals("*") || f[o + 2].equals("?");
+            domMask = field(f[o], 1, 31, null);
+            monthMask = (int) field(f[o + 1], 1, 12, MONTHS);
+            long dow = field(f[o + 2], 0, 7, WEEKDAYS);
+            dowMask = (int) ((dow | (dow >>> 7)) & 0x7F); // 7 is Sunday too
+            kind = CRON;
+            interval = 1;
+            return;
+        }
+        int slash = s.indexOf('/');
+        String unit = slash < 0 ? s : s.substring(0, slash);
+        if ("daily".equals(unit)) kind = DAILY;
+        else if ("weekly".equals(unit)) kind = WEEKLY;
+        else if ("monthly".equals(unit)) kind = MONTHLY;
+        else throw new IllegalArgumentException("unknown schedule (daily, weekly, monthly or cron:...): " + spec);
+        interval = slash < 0 ? 1 : Integer.parseInt(s.substring(slash + 1).trim());
+        if (interval < 1) throw new IllegalArgumentException("schedule interval must be at least 1: " + spec);
+    }
+
+    public String toSpec() {
+        if (kind == CRON) {
+            return "cron:" + (domAny ? "*" : mask(domMask, 1, 31, false)) + " " + mask(monthMask, 1, 12, true) + " "
+                    + (dowAny ? "*" : mask(dowMask, 0, 6, false));
+        }
+        String unit = kind == DAILY ? "daily" : kind == WEEKLY ? "weekly" : "monthly";
+        return interval == 1 ? unit : unit + "/" + interval;
+    }
+
+    // First occurrence on or after day `from` and no later than `limit`, or Dates.INVALID
+    public int next(int from, int limit) {
+        if (from < start) from = start;
+        if (end != Dates.INVALID && end < limit) limit = end;
+        if (from > limit) return Dates.INVALID;
+        int day;
+        if (kind == DAILY || kind == WEEKLY) {
+            int step = kind == WEEKLY ? interval * 7 : interval;
+            day = start + (int) ((from - start + (long) step - 1) / step * step);
+        } else if (kind == MONTHLY) {
+            int first = Dates.monthIndex(start);
+            int dom = Dates.toYmd(start) % 100;
+            int m = first + (Dates.monthIndex(from) - first + interval - 1) / interval * interval;
+            day = dayIn(m, dom);
+            if (day < from) day = dayIn(m + interval, dom);
+        } else {
+            for (day = from; day <= limit && !matches(day); day++) { }
+        }
+        return day <= limit ? day : Dates.INVALID;
+    }
+
+    private static int dayIn(int monthIndex, int dom) {
+        int y = Math.floorDiv(monthIndex, 12);
+        int m = Math.floorMod(monthIndex, 12) + 1;
+        return Dates.epochDay(y, m, Math.min(dom, Dates.daysInMonth(y, m)));
+    }
+
+    private boolean matches(int day) {
+        int ymd = Dates.toYmd(day);
+        if ((monthMask & (1 << (ymd / 100 % 100))) == 0) return false;
+        boolean dom = (domMask & (1L << (ymd % 100))) != 0;
+        boolean dow = (dowMask & (1 << Math.floorMod(day + 4, 7))) != 0; // 1970-01-01 was a Thursday
+        if (domAny) return dow;
+        if (dowAny) return dom;
+        return dom || dow;
+    }
+
+    // Bit mask of the values a cron field allows
+    private static long field(String f, int min, int max, String[] names) {
+        long mask = 0;
+        for (String part : f.split(",")) {
+            int slash = part.indexOf('/');
+            String range = slash < 0 ? part : part.substring(0, slash);
+            int step = slash < 0 ? 1 : Integer.parseInt(part.substring(slash + 1));
+            int lo;
+            int hi;
+            if (range.equals("*") || range.equals("?")) {
+                lo = min;
+                hi = max;
+            } else {
+                int dash = range.indexOf('-');
+                lo = value(dash < 0 ? range : range.substring(0, dash), min, names);
+                hi = dash >= 0 ? value(range.substring(dash + 1), min, names) : slash >= 0 ? max : lo;
+            }
+            if (lo < min || hi > max || lo > hi || step < 1) {
+                throw new IllegalArgumentException("bad cron field: " + f);
+            }
+            for (int v = lo; v <= hi; v += step) mask |= 1L << v;
+        }
+        return mask;
+    }
+
+    private static int value(String s, int min, String[] names) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(s)) return min + i;
+            }
+        }
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad cron value: " + s);
+        }
+    }
+
+    // Set bits as a cron list, runs of three or more as ranges (e.g. "1,15", "1-5");
+    // "*" when star and all of min..max are set
+    private static String mask(long mask, int min, int max, boolean star) {
+        StringBuilder sb = new StringBuilder();
+        boolean all = true;
+        for (int v = min; v <= max; v++) {
+            if ((mask & (1L << v)) == 0) {
+                all = false;
+                continue;
+            }
+            int hi = v;
+            while (hi < max && (mask & (1L << (hi + 1))) != 0) hi++;
+            if (sb.length() > 0) sb.append(',');
+            sb.append(v);
+            if (hi - v >= 2) {
+                sb.append('-').append(hi);
+                v = hi;
+            }
+        }
+        return all && star ? "*" : sb.toString();
+    }
+
+    // ========== Serialization ==========
+    public String serialize() {
+        StringBuilder sb = new StringBuilder(64 + description.length());
+        sb.append(id).append('|').append(toSpec()).append('|');
+        Dates.appendTo(sb, start);
+        sb.append('|');
+        if (end != Dates.INVALID) Dates.appendTo(sb, end);
+        sb.append('|');
+        if (through != Dates.INVALID) Dates.appendTo(sb, through);
+        sb.append('|');
+        Money.appendTo(sb, amount);
+        sb.append('|').append(description).append('|').append(getCategory());
+        return sb.toString();
+    }
+
+    public static RecurringRule deserialize(String line) {
+        String[] p = line.split("\\|", -1);
+        if (p.length < 8) throw new IllegalArgumentException("bad recurring rule line: " + line);
+        int start = Dates.toEpochDay(p[2]);
+        if (start == Dates.INVALID) throw new IllegalArgumentException("bad recurring rule start: " + line);
+        RecurringRule r = new RecurringRule(Long.parseLong(p[0]), p[1], start, Money.parse(p[5]), p[6], p[7]);
+        r.end = p[3].isEmpty() ? Dates.INVALID : Dates.toEpochDay(p[3]);
+        r.through = p[4].isEmpty() ? Dates.INVALID : Dates.toEpochDay(p[4]);
+        return r;
+    }
+
+    @Override
+    public String toString() {
+        return "RecurringRule{id=" + id + ", schedule=" + toSpec() + ", amount=" + Money.format(amount)
+                + ", description=" + description + "}";
+    }
+}
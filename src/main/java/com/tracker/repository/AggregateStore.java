@@ -0,0 +1,241 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Categories;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+Materialized totals per (year, month) and per category.
+
+Kept up to date by deltas from ExpenseRepository (it registers itself as a
+LedgerListener) and persisted in a small file next to budgets.txt:
+- S|<ledger stamp>
+- M|year|month|count|totalCents
+- C|count|totalCents|category
+
+The saved stamp says which version of the ledger the totals describe. If the
+ledger was changed by something else (another storage mode, a manual edit) the
+totals are rebuilt with one full scan, otherwise reads cost no ledger I/O.
+
+Categories are listed in order of first appearance in the ledger, as a full
+scan would list them. A category whose last row goes away keeps its place
+(saved as a zero bucket, hidden from categoryTotals), so a later update does
+not move it to the end; a rebuild starts the order afresh.
+*/
+public class AggregateStore implements LedgerListener {
+    public static final String UNCATEGORIZED = "(uncategorized)";
+    private static final int EMPTY = Categories.code("");
+    private static final int UNCATEGORIZED_CODE = Categories.code(UNCATEGORIZED);
+
+    private final File file;
+    private final ExpenseRepository repo;
+    private final TreeMap<Integer, Totals> byMonth = new TreeMap<Integer, Totals>();
+    private final Map<Integer, Totals> byCategory = new LinkedHashMap<Integer, Totals>(); // by Categories code
+    private long ledgerStamp;
+    private boolean loaded = false;
+
+    // Running count and sum for one bucket
+    private static class Totals {
+        long count;
+        long total; // cents
+    }
+
+    public AggregateStore(String filename, ExpenseRepository repo) {
+        this.file = new File(filename);
+        this.repo = repo;
+        repo.addListener(this);
+    }
+
+    // Sum of amounts (cents) for a given month/year
+    public synchronized long totalForMonth(int year, int month) {
+        ensureFresh();
+        Totals t = byMonth.get(monthKey(year, month));
+        return t == null ? 0 : t.total;
+    }
+
+    public synchronized long countForMonth(int year, int month) {
+        ensureFresh();
+        Totals t = byMonth.get(monthKey(year, month));
+        return t == null ? 0 : t.count;
+    }
+
+    public synchronized long total() {
+        ensureFresh();
+        long sum = 0;
+        for (Totals t : byCategory.values()) sum += t.total;
+        return sum;
+    }
+
+    public synchronized long count() {
+        ensureFresh();
+        long n = 0;
+        for (Totals t : byCategory.values()) n += t.count;
+        return n;
+    }
+
+    // Category -> total cents, empty categories reported as "(uncategorized)"
+    public synchronized Map<String, Long> categoryTotals() {
+        ensureFresh();
+        Map<String, Long> out = new LinkedHashMap<String, Long>();
+        for (Map.Entry<Integer, Totals> en : byCategory.entrySet()) {
+            if (en.getValue().count <= 0) continue;
+            out.put(Categories.name(en.getKey()), en.getValue().total);
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized void onChange(Expense before, Expense after, long stampBefore, long stampAfter) {
+        if (!loaded) load();
+        if (ledgerStamp != stampBefore) {
+            // we missed changes made outside the repository: start over
+            rebuild();
+            return;
+        }
+        if (before != null) apply(before, -1);
+        if (after != null) apply(after, +1);
+        ledgerStamp = stampAfter;
+        save();
+    }
+
+    @Override
+    public synchronized void onAddAll(List<Expense> added, long stampBefore, long stampAfter) {
+        if (!loaded) load();
+        if (ledgerStamp != stampBefore) {
+            rebuild();
+            return;
+        }
+        for (Expense e : added) apply(e, +1);
+        ledgerStamp = stampAfter;
+        save();
+    }
+
+    // Recompute everything from the ledger with one scan
+    public synchronized void rebuild() {
+        byMonth.clear();
+        byCategory.clear();
+        long stamp = repo.stamp();
+        for (Expense e : repo.findAll()) {
+            apply(e, +1);
+        }
+        ledgerStamp = stamp;
+        loaded = true;
+        save();
+    }
+
+    private void ensureFresh() {
+        if (!loaded) load();
+        if (ledgerStamp != repo.stamp()) rebuild();
+    }
+
+    private void apply(Expense e, int sign) {
+        int key = monthKeyFor(e.getEpochDay());
+        if (key >= 0) {
+            add(byMonth, key, e.getAmountCents(), sign);
+        }
+        int cat = e.getCategoryCode();
+        if (cat == EMPTY) cat = UNCATEGORIZED_CODE;
+        add(byCategory, cat, e.getAmountCents(), sign, true);
+    }
+
+    private static <K> void add(Map<K, Totals> map, K key, long amount, int sign) {
+        add(map, key, amount, sign, false);
+    }
+
+    // keepEmpty leaves a bucket that drops to zero in place, holding its position in the map
+    private static <K> void add(Map<K, Totals> map, K key, long amount, int sign, boolean keepEmpty) {
+        Totals t = map.get(key);
+        if (t == null) {
+            t = new Totals();
+            map.put(key, t);
+        }
+        t.count += sign;
+        t.total += sign * amount;
+        if (t.count <= 0 && !keepEmpty) map.remove(key);
+    }
+
+    private static int monthKey(int year, int month) {
+        return year * 100 + month;
+    }
+
+    // -1 when the row has no valid date
+    private static int monthKeyFor(int epochDay) {
+        if (epochDay == Dates.INVALID) return -1;
+        int ymd = Dates.toYmd(epochDay);
+        return monthKey(ymd / 10000, ymd / 100 % 100);
+    }
+
+    // ========== Persistence ==========
+    private void load() {
+        loaded = true;
+        ledgerStamp = Long.MIN_VALUE;
+        byMonth.clear();
+        byCategory.clear();
+        if (!file.exists()) return;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] p = line.split("\\|", -1);
+                if ("S".equals(p[0])) {
+                    ledgerStamp = Long.parseLong(p[1]);
+                } else if ("M".equals(p[0])) {
+                    Totals t = new Totals();
+                    t.count = Long.parseLong(p[3]);
+                    t.total = Long.parseLong(p[4]);
+                    byMonth.put(monthKey(Integer.parseInt(p[1]), Integer.parseInt(p[2])), t);
+                } else if ("C".equals(p[0])) {
+                    Totals t = new Totals();
+                    t.count = Long.parseLong(p[1]);
+                    t.total = Long.parseLong(p[2]);
+                    byCategory.put(Categories.code(p[3]), t);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading aggregates: " + e.getMessage());
+            ledgerStamp = Long.MIN_VALUE;
+        } catch (RuntimeException e) {
+            // damaged file: the stamp mismatch forces a rebuild
+            ledgerStamp = Long.MIN_VALUE;
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void save() {
+        File tmp = AtomicFile.temp(file);
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(tmp, false));
+            writer.write("S|" + ledgerStamp);
+            writer.newLine();
+            for (Map.Entry<Integer, Totals> en : byMonth.entrySet()) {
+                int key = en.getKey();
+                writer.write("M|" + (key / 100) + "|" + (key % 100) + "|" + en.getValue().count + "|" + en.getValue().total);
+                writer.newLine();
+            }
+            for (Map.Entry<Integer, Totals> en : byCategory.entrySet()) {
+                writer.write("C|" + en.getValue().count + "|" + en.getValue().total + "|" + Categories.name(en.getKey()));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing aggregates: " + e.getMessage());
+            tmp.delete();
+            return;
+        } finally {
+            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+        }
+        try {
+            AtomicFile.replace(tmp, file);
+        } catch (IOException e) {
+            System.err.println("Error writing aggregates: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package main.java.com.tracker.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/*
+Whole-file replacement through a temp file and a rename.
+
+The new content is written to a uniquely named temp file next to the target and
+then moved over it, atomically where the file system supports it. A reader
+therefore sees either the old or the new file, never a half-written one, and
+two processes writing at once cannot trample each other's temp file.
+
+The temp file is forced to disk (FileChannel.force) before the rename and the
+directory after it, so after a crash the target holds either the old or the
+new content in full. Appenders call sync() once a batch is written.
+-Dtracker.fsync=false skips the forcing (faster, but a crash can lose the
+latest writes).
+*/
+public class AtomicFile {
+    private static final Random RANDOM = new Random();
+    static final boolean FSYNC = !"false".equalsIgnoreCase(System.getProperty("tracker.fsync"));
+
+    // Fresh temp file in the target's directory (not created yet)
+    public static File temp(File target) {
+        long n;
+        synchronized (RANDOM) {
+            n = RANDOM.nextLong() & Long.MAX_VALUE;
+        }
+        File dir = target.getAbsoluteFile().getParentFile();
+        return new File(dir, target.getName() + "." + Long.toString(n, 36) + ".tmp");
+    }
+
+    // Move tmp over target; tmp is removed if the move fails
+    public static void replace(File tmp, File target) throws IOException {
+        try {
+            sync(tmp);
+            try {
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (tmp.exists()) tmp.delete();
+        }
+        syncDirectory(target);
+    }
+
+    // Force the file's written bytes to disk
+    public static void sync(File f) throws IOException {
+        if (!FSYNC || !f.exists()) return;
+        FileChannel ch = null;
+        try {
+            ch = FileChannel.open(f.toPath(), StandardOpenOption.WRITE);
+            ch.force(true);
+        } finally {
+            try { if (ch != null) ch.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // Force the directory entry of f (the rename itself); not possible on every platform, so failures are ignored
+    static void syncDirectory(File f) {
+        if (!FSYNC) return;
+        File dir = f.getAbsoluteFile().getParentFile();
+        if (dir == null) return;
+        FileChannel ch = null;
+        try {
+            ch = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+            ch.force(true);
+        } catch (IOException ignored) {
+            // e.g. Windows cannot open a directory
+        } finally {
+            try { if (ch != null) ch.close(); } catch (IOException ignored) {}
+        }
+    }
+}
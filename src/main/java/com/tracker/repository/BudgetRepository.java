@@ -1,24 +1,153 @@
 package main.java.com.tracker.repository;
 
+import main.java.com.tracker.metrics.Metrics;
 import main.java.com.tracker.model.Budget;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /*
 Simple file-based repository for Budget.
 File format: each line = Budget.serialize()
+
+Budgets are held in memory as two parallel arrays sorted by month key
+(year*12 + (month-1)) and cents, searched with a binary search, so the table
+only grows with the number of budgets, however far apart their years are. The
+table is loaded once and reloaded only when the file's size/mtime changes, so
+find() on the write path costs one stat and no read or parse.
+Only years MIN_YEAR..MAX_YEAR and months 1-12 are accepted; lines outside that
+(or that do not parse) are kept in the file as they are and otherwise ignored.
+upsert() holds a LedgerLock on "<file>.lock", updates the table and writes it
+through AtomicFile, so concurrent upserts from several processes do not lose
+each other's budgets. The file is written in month order.
 */
 public class BudgetRepository {
+    // Marks a month without a budget
+    public static final long NONE = Long.MIN_VALUE;
+    public static final int MIN_YEAR = 0;
+    public static final int MAX_YEAR = 9999;
+
     private final File file;
+    private final LedgerLock lock;
+    private int[] keys = new int[0];      // sorted month keys, size entries in use
+    private long[] amounts = new long[0]; // cents for keys[i]
+    private int size = 0;
+    private final List<String> kept = new ArrayList<String>(); // lines that are not a valid budget
+    private long stamp = -1;    // file stamp the table was loaded from / written as
 
     public BudgetRepository(String filename) {
         this.file = new File(filename);
+        this.lock = LedgerLock.forFile(new File(filename + ".lock"));
     }
 
-    public List<Budget> findAll() {
+    public synchronized List<Budget> findAll() {
+        ensureFresh();
         List<Budget> out = new ArrayList<Budget>();
-        if (!file.exists()) return out;
+        for (int i = 0; i < size; i++) out.add(toBudget(keys[i], amounts[i]));
+        return out;
+    }
+
+    // Find single budget by year and month
+    public synchronized Budget find(int year, int month) {
+        long t = Metrics.start();
+        try {
+            ensureFresh();
+            if (!valid(year, month)) return null;
+            long cents = get(key(year, month));
+            return cents == NONE ? null : new Budget(year, month, cents);
+        } finally {
+            Metrics.record("budget.find", t);
+        }
+    }
+
+    // Budgets (cents) for count months starting at year * 12 + (month - 1), NONE where unset
+    public synchronized long[] amounts(int firstMonthIndex, int count) {
+        ensureFresh();
+        long[] out = new long[count];
+        for (int i = 0; i < count; i++) out[i] = get(firstMonthIndex + i);
+        return out;
+    }
+
+    // Insert or update a budget; IllegalArgumentException for a month outside 1-12 or a year outside MIN_YEAR..MAX_YEAR
+    public void upsert(Budget b) {
+        if (!valid(b.getYear(), b.getMonth())) {
+            throw new IllegalArgumentException("budget needs a month 1-12 and a year " + MIN_YEAR + "-" + MAX_YEAR
+                    + ": " + b.getYear() + "-" + b.getMonth());
+        }
+        long t = Metrics.start();
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureFresh();
+                put(key(b.getYear(), b.getMonth()), b.getAmountCents());
+                writeAll();
+            }
+        } finally {
+            lock.unlock();
+            Metrics.record("budget.upsert", t);
+        }
+    }
+
+    // ========== Table ==========
+    private static int key(int year, int month) {
+        return year * 12 + (month - 1);
+    }
+
+    private static Budget toBudget(int key, long cents) {
+        return new Budget(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1, cents);
+    }
+
+    public static boolean valid(int year, int month) {
+        return month >= 1 && month <= 12 && year >= MIN_YEAR && year <= MAX_YEAR;
+    }
+
+    private long get(int key) {
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        return i < 0 ? NONE : amounts[i];
+    }
+
+    // Store cents under key, inserting it in key order if new
+    private void put(int key, long cents) {
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        if (i >= 0) {
+            amounts[i] = cents;
+            return;
+        }
+        i = -i - 1;
+        if (size == keys.length) {
+            int n = Math.max(8, size * 2);
+            keys = Arrays.copyOf(keys, n);
+            amounts = Arrays.copyOf(amounts, n);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(amounts, i, amounts, i + 1, size - i);
+        keys[i] = key;
+        amounts[i] = cents;
+        size++;
+    }
+
+    private static long stampOf(File f) {
+        return f.exists() ? f.lastModified() * 31L + f.length() : 0;
+    }
+
+    // ========== File ==========
+    // Reload the table if the file changed since it was loaded or written
+    private void ensureFresh() {
+        long now = stampOf(file);
+        if (now == stamp) return;
+        load();
+        stamp = now;
+    }
+
+    private void load() {
+        keys = new int[0];
+        amounts = new long[0];
+        size = 0;
+        kept.clear();
+        if (!file.exists()) return;
+        long t = Metrics.start();
+        int rows = 0;
         BufferedReader reader = null;
         try {
             reader = new BufferedReader(new FileReader(file));
@@ -26,53 +155,62 @@ public class BudgetRepository {
             while ((line = reader.readLine()) != null) {
                 line = line.trim();
                 if (line.isEmpty()) continue;
-                out.add(Budget.deserialize(line));
+                Budget b = null;
+                try {
+                    b = Budget.deserialize(line);
+                } catch (RuntimeException e) {
+                    // unparsable line: kept below
+                }
+                if (b == null || !valid(b.getYear(), b.getMonth())) {
+                    System.err.println("Ignoring budget line (kept in " + file + "): " + line);
+                    kept.add(line);
+                    continue;
+                }
+                put(key(b.getYear(), b.getMonth()), b.getAmountCents());
+                rows++;
             }
         } catch (IOException e) {
             System.err.println("Error reading budgets: " + e.getMessage());
         } finally {
             try { if (reader != null) reader.close(); } catch (IOException ignored) {}
         }
-        return out;
+        Metrics.rowsRead(rows);
+        Metrics.bytesRead(file.length());
+        Metrics.record("budget.load", t);
     }
 
-    // Find single budget by year and month
-    public Budget find(int year, int month) {
-        List<Budget> all = findAll();
-        for (Budget b : all) {
-            if (b.getYear() == year && b.getMonth() == month) return b;
-        }
-        return null;
-    }
-
-    // Insert or update a budget
-    public void upsert(Budget b) {
-        List<Budget> all = findAll();
-        boolean found = false;
-        for (int i = 0; i < all.size(); i++) {
-            Budget cur = all.get(i);
-            if (cur.getYear() == b.getYear() && cur.getMonth() == b.getMonth()) {
-                all.set(i, b);
-                found = true;
-                break;
-            }
-        }
-        if (!found) all.add(b);
-        writeAll(all);
-    }
-
-    private void writeAll(List<Budget> list) {
+    private void writeAll() {
+        File tmp = AtomicFile.temp(file);
         BufferedWriter writer = null;
+        int rows = 0;
         try {
-            writer = new BufferedWriter(new FileWriter(file, false));
-            for (Budget b : list) {
-                writer.write(b.serialize());
+            writer = new BufferedWriter(new FileWriter(tmp, false));
+            for (int i = 0; i < size; i++) {
+                writer.write(toBudget(keys[i], amounts[i]).serialize());
+                writer.newLine();
+                rows++;
+            }
+            for (String line : kept) {
+                writer.write(line);
                 writer.newLine();
             }
         } catch (IOException e) {
             System.err.println("Error writing budgets: " + e.getMessage());
+            tmp.delete();
+            stamp = -1;
+            return;
         } finally {
             try { if (writer != null) writer.close(); } catch (IOException ignored) {}
         }
+        try {
+            AtomicFile.replace(tmp, file);
+        } catch (IOException e) {
+            System.err.println("Error writing budgets: " + e.getMessage());
+            stamp = -1;
+            return;
+        }
+        stamp = stampOf(file);
+        Metrics.rowsWritten(rows);
+        Metrics.bytesWritten(file.length());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,77 @@
+package main.java.com.tracker.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Assigns small int codes to category names during a scan.
+
+Lookups by raw UTF-8 bytes (straight from a mapped file) do not allocate
+unless the category has not been seen before. Codes are handed out in order
+of first appearance, so code order matches the order of the ledger.
+*/
+public class CategoryTable {
+    private final List<String> names = new ArrayList<String>();
+    private byte[][] keys = new byte[64][];
+    private int[] slots = new int[64]; // code + 1, 0 = empty
+
+    public int size() { return names.size(); }
+
+    public String name(int code) { return names.get(code); }
+
+    public int code(String name) {
+        byte[] b = name.getBytes(StandardCharsets.UTF_8);
+        return code(ByteBuffer.wrap(b), 0, b.length);
+    }
+
+    // Code for the bytes buf[from, to)
+    public int code(ByteBuffer buf, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) h = 31 * h + buf.get(i);
+        int mask = slots.length - 1;
+        int i = mix(h) & mask;
+        while (slots[i] != 0) {
+            if (sameBytes(keys[i], buf, from, to)) return slots[i] - 1;
+            i = (i + 1) & mask;
+        }
+        byte[] key = new byte[to - from];
+        for (int k = 0; k < key.length; k++) key[k] = buf.get(from + k);
+        int code = names.size();
+        names.add(new String(key, StandardCharsets.UTF_8));
+        keys[i] = key;
+        slots[i] = code + 1;
+        if (names.size() * 2 > slots.length) rehash();
+        return code;
+    }
+
+    private static boolean sameBytes(byte[] key, ByteBuffer buf, int from, int to) {
+        if (key.length != to - from) return false;
+        for (int k = 0; k < key.length; k++) {
+            if (key[k] != buf.get(from + k)) return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        byte[][] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new byte[oldKeys.length * 2][];
+        slots = new int[oldSlots.length * 2];
+        int mask = slots.length - 1;
+        for (int j = 0; j < oldSlots.length; j++) {
+            if (oldSlots[j] == 0) continue;
+            int h = Arrays.hashCode(oldKeys[j]);
+            int i = mix(h) & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            slots[i] = oldSlots[j];
+        }
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+}
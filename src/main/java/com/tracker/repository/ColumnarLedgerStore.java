@@ -0,0 +1,305 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.metrics.Metrics;
+import main.java.com.tracker.model.Expense;
+import main.java.com.tracker.model.Money;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/*
+Binary columnar store (e.g. "expenses.col"), an alternative to the pipe-delimited text file.
+
+Layout (big-endian):
+- magic "EXPC", int version, int rowCount
+- int dictionarySize, then per entry: int byteLength + UTF-8 bytes
+- long[rowCount] ids
+- int[rowCount] dates (epoch day, Dates.INVALID if not YYYY-MM-DD)
+- long[rowCount] amounts in cents (version 1 files stored double amounts; they are still read)
+- int[rowCount] description codes, int[rowCount] category codes
+- int rawDateCount, then pairs (int row, int dictionary code) for dates kept as text
+
+Loading is a bulk copy of each column; there is no per-line String splitting or
+number parsing. Every mutation rewrites the file (through a temp file); insertAll
+rewrites it once for the whole batch.
+*/
+public class ColumnarLedgerStore extends LedgerStore {
+    private static final int MAGIC = 0x45585043; // "EXPC"
+    private static final int VERSION = 2;
+
+    private final File file;
+
+    public ColumnarLedgerStore(File file) {
+        this.file = file;
+    }
+
+    // Open the columnar file, converting an existing text ledger into it the first time
+    public ColumnarLedgerStore(File file, File legacyFile) {
+        this(file);
+        if (!file.exists() && legacyFile.exists()) {
+            write(LedgerColumns.from(new TextLedgerStore(legacyFile).loadAll()));
+        }
+    }
+
+    public File getFile() { return file; }
+
+    @Override
+    public synchronized List<Expense> loadAll() {
+        return readColumns().toList();
+    }
+
+    // Rows are materialized one at a time from the columns
+    @Override
+    public synchronized long forEach(ExpenseVisitor visitor) {
+        LedgerColumns c = readColumns();
+        for (int i = 0; i < c.size; i++) visitor.expense(c.get(i));
+        return c.size;
+    }
+
+    // One read of the file; rows are materialized as the cursor reaches them
+    @Override
+    public synchronized ExpenseCursor open() {
+        final LedgerColumns c = readColumns();
+        return new ExpenseCursor() {
+            int next = 0;
+            public Expense next() {
+                return next < c.size ? c.get(next++) : null;
+            }
+            public void close() {
+                next = c.size;
+            }
+        };
+    }
+
+    // Columns are appended in id order and rewritten in place
+    @Override
+    public boolean idOrdered() {
+        return true;
+    }
+
+    @Override
+    public synchronized List<Expense> loadMonth(int year, int month) {
+        return readColumns().month(year, month);
+    }
+
+    @Override
+    public synchronized long totalForMonth(int year, int month) {
+        return readColumns().totalForMonth(year, month);
+    }
+
+    @Override
+    public synchronized long maxId() {
+        return readColumns().maxId();
+    }
+
+    @Override
+    public synchronized Expense find(long id) {
+        LedgerColumns c = readColumns();
+        int row = c.indexOf(id);
+        return row < 0 ? null : c.get(row);
+    }
+
+    @Override
+    public synchronized void insert(Expense exp) {
+        LedgerColumns c = readColumns();
+        c.add(exp);
+        write(c);
+    }
+
+    @Override
+    public synchronized void insertAll(List<Expense> list) {
+        if (list.isEmpty()) return;
+        LedgerColumns c = readColumns();
+        for (Expense e : list) c.add(e);
+        write(c);
+    }
+
+    @Override
+    public synchronized Expense update(Expense exp) {
+        LedgerColumns c = readColumns();
+        int row = c.indexOf(exp.getId());
+        if (row < 0) return null;
+        Expense prev = c.get(row);
+        c.set(row, exp);
+        write(c);
+        return prev;
+    }
+
+    @Override
+    public synchronized Expense delete(long id) {
+        LedgerColumns c = readColumns();
+        int row = c.indexOf(id);
+        if (row < 0) return null;
+        Expense prev = c.get(row);
+        c.remove(row);
+        write(c);
+        return prev;
+    }
+
+    @Override
+    public synchronized long scan(CategoryTable categories, ScanVisitor visitor) {
+        LedgerColumns c = readColumns();
+        int[] toScan = new int[c.dictionary.size()];
+        for (int i = 0; i < toScan.length; i++) toScan[i] = -1;
+        for (int i = 0; i < c.size; i++) {
+            int code = c.categories[i];
+            if (toScan[code] < 0) toScan[code] = categories.code(c.word(code));
+            visitor.row(c.dates[i], c.amounts[i], toScan[code]);
+        }
+        return c.size;
+    }
+
+    @Override
+    public long stamp() {
+        return fileStamp(file);
+    }
+
+    @Override
+    protected File sidecar(String ext) {
+        return new File(file.getPath() + ext);
+    }
+
+    // Column view of the whole ledger, for callers that aggregate without Expense objects
+    public synchronized LedgerColumns readColumns() {
+        if (!file.exists()) return new LedgerColumns(16);
+        long t = Metrics.start();
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel ch = in.getChannel();
+            ByteBuffer buf = ByteBuffer.allocate((int) ch.size());
+            while (buf.hasRemaining() && ch.read(buf) >= 0) { }
+            buf.flip();
+            LedgerColumns c = decode(buf);
+            Metrics.rowsRead(c.size);
+            Metrics.bytesRead(buf.limit());
+            return c;
+        } catch (IOException e) {
+            System.err.println("Error reading expenses: " + e.getMessage());
+            return new LedgerColumns(16);
+        } finally {
+            try { if (in != null) in.close(); } catch (IOException ignored) {}
+            Metrics.record("columnar.read", t);
+        }
+    }
+
+    static LedgerColumns decode(ByteBuffer buf) throws IOException {
+        if (buf.getInt() != MAGIC) throw new IOException("not a columnar expense file");
+        int version = buf.getInt();
+        if (version != 1 && version != VERSION) throw new IOException("unsupported columnar version " + version);
+        int rows = buf.getInt();
+        LedgerColumns c = new LedgerColumns(rows);
+        int words = buf.getInt();
+        for (int i = 0; i < words; i++) {
+            byte[] b = new byte[buf.getInt()];
+            buf.get(b);
+            c.addWord(new String(b, StandardCharsets.UTF_8));
+        }
+        buf.asLongBuffer().get(c.ids, 0, rows);
+        buf.position(buf.position() + rows * 8);
+        buf.asIntBuffer().get(c.dates, 0, rows);
+        buf.position(buf.position() + rows * 4);
+        if (version == 1) {
+            for (int i = 0; i < rows; i++) c.amounts[i] = Money.fromDouble(buf.getDouble(buf.position() + i * 8));
+        } else {
+            buf.asLongBuffer().get(c.amounts, 0, rows);
+        }
+        buf.position(buf.position() + rows * 8);
+        buf.asIntBuffer().get(c.descriptions, 0, rows);
+        buf.position(buf.position() + rows * 4);
+        buf.asIntBuffer().get(c.categories, 0, rows);
+        buf.position(buf.position() + rows * 4);
+        for (int i = 0; i < rows; i++) c.rawDates[i] = -1;
+        int raw = buf.getInt();
+        for (int i = 0; i < raw; i++) {
+            int row = buf.getInt();
+            c.rawDates[row] = buf.getInt();
+        }
+        c.size = rows;
+        return c;
+    }
+
+    // Write through a temp file; only dictionary entries still referenced are kept
+    public synchronized void write(LedgerColumns c) {
+        long t = Metrics.start();
+        int n = c.size;
+        int[] remap = new int[c.dictionary.size()];
+        for (int i = 0; i < remap.length; i++) remap[i] = -1;
+        LedgerColumns used = new LedgerColumns(0);
+        int rawCount = 0;
+        for (int i = 0; i < n; i++) {
+            mark(c, used, remap, c.descriptions[i]);
+            mark(c, used, remap, c.categories[i]);
+            if (c.rawDates[i] >= 0) {
+                mark(c, used, remap, c.rawDates[i]);
+                rawCount++;
+            }
+        }
+        byte[][] words = new byte[used.dictionary.size()][];
+        int size = 16;
+        for (int i = 0; i < words.length; i++) {
+            words[i] = used.dictionary.get(i).getBytes(StandardCharsets.UTF_8);
+            size += 4 + words[i].length;
+        }
+        size += n * (8 + 4 + 8 + 4 + 4) + 4 + rawCount * 8;
+
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(words.length);
+        for (byte[] w : words) {
+            buf.putInt(w.length).put(w);
+        }
+        for (int i = 0; i < n; i++) buf.putLong(c.ids[i]);
+        for (int i = 0; i < n; i++) buf.putInt(c.dates[i]);
+        for (int i = 0; i < n; i++) buf.putLong(c.amounts[i]);
+        for (int i = 0; i < n; i++) buf.putInt(remap[c.descriptions[i]]);
+        for (int i = 0; i < n; i++) buf.putInt(remap[c.categories[i]]);
+        buf.putInt(rawCount);
+        for (int i = 0; i < n; i++) {
+            if (c.rawDates[i] >= 0) buf.putInt(i).putInt(remap[c.rawDates[i]]);
+        }
+        buf.flip();
+
+        File tmp = AtomicFile.temp(file);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp, false);
+            FileChannel ch = out.getChannel();
+            while (buf.hasRemaining()) ch.write(buf);
+        } catch (IOException e) {
+            System.err.println("Error writing expenses: " + e.getMessage());
+            tmp.delete();
+            return;
+        } finally {
+            try { if (out != null) out.close(); } catch (IOException ignored) {}
+        }
+        try {
+            AtomicFile.replace(tmp, file);
+        } catch (IOException e) {
+            System.err.println("Error writing expenses: " + e.getMessage());
+        }
+        Metrics.rowsWritten(n);
+        Metrics.bytesWritten(size);
+        Metrics.record("columnar.write", t);
+    }
+
+    private static void mark(LedgerColumns c, LedgerColumns used, int[] remap, int code) {
+        if (remap[code] < 0) remap[code] = used.code(c.word(code));
+    }
+
+    // ========== Conversion ==========
+    // Text ledger -> columnar file
+    public static int convertFromText(File textFile, File columnarFile) {
+        List<Expense> all = new TextLedgerStore(textFile).loadAll();
+        new ColumnarLedgerStore(columnarFile).write(LedgerColumns.from(all));
+        return all.size();
+    }
+
+    // Columnar file -> text ledger (same lines Expense.serialize() would write)
+    public static int convertToText(File columnarFile, File textFile) {
+        List<Expense> all = new ColumnarLedgerStore(columnarFile).loadAll();
+        new TextLedgerStore(textFile).writeAll(all);
+        return all.size();
+    }
+}
@@ -0,0 +1,202 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.metrics.Metrics;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import main.java.com.tracker.model.Money;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+Streaming reader for expense CSV files (e.g. bank statements or our own export).
+
+Rows are read one at a time, so the file is never held in memory. Quoted fields
+may contain commas, doubled quotes and line breaks (RFC 4180).
+
+Columns are taken from a header row when the first row names an "amount"
+column (date, amount, description/desc/memo, category/cat; anything else,
+including id, is ignored). Without a header the export layout is assumed:
+id,date,amount,category,description.
+
+Rows without a valid YYYY-MM-DD date or a readable amount are skipped and
+counted as rejected; the first few reasons are kept for the report.
+*/
+public class CsvExpenseReader {
+    private static final int MAX_PROBLEMS = 10;
+
+    private final Reader in;
+    private final char[] buf = new char[1 << 16];
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    private int dateCol = 1;
+    private int amountCol = 2;
+    private int categoryCol = 3;
+    private int descriptionCol = 4;
+
+    private long line = 0;
+    private long accepted = 0;
+    private long rejected = 0;
+    private final List<String> problems = new ArrayList<String>();
+    private List<String> pending; // first row when it turned out not to be a header
+
+    public CsvExpenseReader(Reader in) throws IOException {
+        this.in = in;
+        List<String> first = readRow();
+        if (first != null && first.get(0).startsWith("\uFEFF")) {
+            first.set(0, first.get(0).substring(1));
+        }
+        if (first != null && isHeader(first)) {
+            mapHeader(first);
+        } else {
+            pending = first;
+        }
+    }
+
+    // Next valid expense (id 0), or null at end of input
+    public Expense next() throws IOException {
+        while (true) {
+            List<String> row;
+            if (pending != null) {
+                row = pending;
+                pending = null;
+            } else {
+                row = readRow();
+            }
+            if (row == null) return null;
+            if (row.size() == 1 && row.get(0).trim().isEmpty()) continue;
+            Expense e = toExpense(row);
+            if (e != null) {
+                accepted++;
+                return e;
+            }
+        }
+    }
+
+    public long getAccepted() { return accepted; }
+    public long getRejected() { return rejected; }
+
+    // "line N: reason" for the first rejected rows
+    public List<String> getProblems() { return problems; }
+
+    private Expense toExpense(List<String> row) {
+        String date = field(row, dateCol).trim();
+        String amount = field(row, amountCol).trim();
+        if (date.isEmpty() || amount.isEmpty()) {
+            reject("missing date or amount");
+            return null;
+        }
+        if (Dates.toEpochDay(date) == Dates.INVALID) {
+            reject("bad date '" + date + "'");
+            return null;
+        }
+        long cents;
+        try {
+            cents = Money.parse(amount);
+        } catch (NumberFormatException ex) {
+            reject("bad amount '" + amount + "'");
+            return null;
+        }
+        // '|' is the ledger's field separator
+        String desc = field(row, descriptionCol).replace('|', '/').replace('\n', ' ').replace('\r', ' ');
+        String cat = field(row, categoryCol).replace('|', '/').replace('\n', ' ').replace('\r', ' ').trim();
+        return new Expense(0L, date, cents, desc, cat);
+    }
+
+    private void reject(String reason) {
+        Metrics.parseError();
+        rejected++;
+        if (problems.size() < MAX_PROBLEMS) problems.add("line " + line + ": " + reason);
+    }
+
+    private static String field(List<String> row, int col) {
+        return col >= 0 && col < row.size() ? row.get(col) : "";
+    }
+
+    private static boolean isHeader(List<String> row) {
+        for (String f : row) {
+            if ("amount".equalsIgnoreCase(f.trim())) return true;
+        }
+        return false;
+    }
+
+    private void mapHeader(List<String> row) {
+        dateCol = -1;
+        amountCol = -1;
+        categoryCol = -1;
+        descriptionCol = -1;
+        for (int i = 0; i < row.size(); i++) {
+            String h = row.get(i).trim().toLowerCase(Locale.ROOT);
+            if (h.equals("date")) dateCol = i;
+            else if (h.equals("amount")) amountCol = i;
+            else if (h.equals("category") || h.equals("cat")) categoryCol = i;
+            else if (h.equals("description") || h.equals("desc") || h.equals("memo")) descriptionCol = i;
+        }
+    }
+
+    // ========== Tokenizer ==========
+    // One record as a list of fields, or null at end of input
+    private List<String> readRow() throws IOException {
+        int c = read();
+        if (c < 0) return null;
+        line++;
+        List<String> row = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    row.add(field.toString());
+                    return row;
+                }
+                if (c == '"') {
+                    int n = read();
+                    if (n == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = n;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') line++;
+                    field.append((char) c);
+                }
+            } else {
+                if (c < 0 || c == '\n') {
+                    row.add(field.toString());
+                    return row;
+                }
+                if (c == '\r') {
+                    // tolerate CRLF; a bare CR inside a field is dropped
+                } else if (c == ',') {
+                    row.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else {
+                    field.append((char) c);
+                }
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            if (eof) return -1;
+            limit = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                eof = true;
+                return -1;
+            }
+        }
+        return buf[pos++];
+    }
+}
@@ -0,0 +1,82 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import main.java.com.tracker.model.Money;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/*
+Streaming CSV writer for expenses, the counterpart of CsvExpenseReader.
+
+Layout: id,date,amount,category,description (the header is written first).
+Each row is assembled in one reused StringBuilder: ids and cents are appended
+as numbers (no String.format), and every field is escaped in a single pass.
+Output goes through a 256KB buffer, optionally gzip-compressed, so memory use
+does not depend on how many rows are written.
+*/
+public class CsvExpenseWriter {
+    private static final int BUFFER = 1 << 18;
+
+    private final Writer out;
+    private final StringBuilder row = new StringBuilder(256);
+    private long count = 0;
+
+    public CsvExpenseWriter(File file, boolean gzip) throws IOException {
+        OutputStream os = new FileOutputStream(file, false);
+        try {
+            if (gzip) os = new GZIPOutputStream(os, BUFFER);
+            else os = new BufferedOutputStream(os, BUFFER);
+        } catch (IOException e) {
+            os.close();
+            throw e;
+        }
+        this.out = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), BUFFER);
+        out.write("id,date,amount,category,description");
+        out.write('\n');
+    }
+
+    public void write(Expense e) throws IOException {
+        row.setLength(0);
+        row.append(e.getId()).append(',');
+        if (e.getEpochDay() != Dates.INVALID) e.appendDate(row);
+        else appendField(row, e.getDate());
+        row.append(',');
+        Money.appendTo(row, e.getAmountCents());
+        row.append(',');
+        appendField(row, e.getCategory());
+        row.append(',');
+        appendField(row, e.getDescription());
+        row.append('\n');
+        out.append(row);
+        count++;
+    }
+
+    public long getCount() { return count; }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    // Quote only when needed; the field is scanned once and copied as it goes
+    public static void appendField(StringBuilder sb, String s) {
+        if (s == null) return;
+        int start = sb.length();
+        boolean quote = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                quote = true;
+                sb.append('"');
+            } else if (c == ',' || c == '\n' || c == '\r') {
+                quote = true;
+            }
+            sb.append(c);
+        }
+        if (quote) {
+            sb.insert(start, '"');
+            sb.append('"');
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Expense;
+
+/*
+Pull-style iteration over expenses (see LedgerStore.open and ExpenseRepository.query).
+
+Rows are produced on demand, so a caller that stops after the first page never
+reads the rest of the ledger. Always close() the cursor, it may hold a file open.
+*/
+public interface ExpenseCursor {
+    // Next expense, or null when there are no more
+    Expense next();
+
+    // Release the underlying file; safe to call more than once
+    void close();
+}
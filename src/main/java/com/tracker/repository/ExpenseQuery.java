@@ -0,0 +1,59 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.CategoryFilter;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+
+/*
+Filters, order and page for ExpenseRepository.query().
+
+- category      case-insensitive match (null: any)
+- date range    epoch days [fromDay, toDay) (Dates.INVALID: unbounded)
+- ids           candidate ids already filtered elsewhere, e.g. SecondaryIndex.query (null: all)
+- sort          BY_ID or BY_DATE (date, then id)
+- after         keyset pagination: only rows that sort after the expense with this id (0: none)
+- offset/limit  rows to skip, then the most rows to return (limit 0: no limit)
+*/
+public class ExpenseQuery {
+    public static final int BY_ID = 0;
+    public static final int BY_DATE = 1;
+
+    String category;
+    CategoryFilter categoryFilter; // null: any
+    int fromDay = Dates.INVALID;
+    int toDay = Dates.INVALID;
+    PostingList ids;
+    int sort = BY_ID;
+    long after = 0;
+    int offset = 0;
+    int limit = 0;
+
+    public ExpenseQuery category(String category) {
+        this.category = category;
+        this.categoryFilter = category == null ? null : new CategoryFilter(category);
+        return this;
+    }
+    public ExpenseQuery ids(PostingList ids) { this.ids = ids; return this; }
+    public ExpenseQuery sort(int sort) { this.sort = sort; return this; }
+    public ExpenseQuery after(long id) { this.after = id; return this; }
+    public ExpenseQuery offset(int offset) { this.offset = offset; return this; }
+    public ExpenseQuery limit(int limit) { this.limit = limit; return this; }
+
+    public ExpenseQuery between(int fromDay, int toDay) {
+        this.fromDay = fromDay;
+        this.toDay = toDay;
+        return this;
+    }
+
+    // Category and date filters (the ids set is applied by the repository)
+    boolean matches(Expense e) {
+        if (categoryFilter != null && !e.inCategory(categoryFilter)) return false;
+        if (fromDay != Dates.INVALID || toDay != Dates.INVALID) {
+            int day = e.getEpochDay();
+            if (day == Dates.INVALID) return false;
+            if (fromDay != Dates.INVALID && day < fromDay) return false;
+            if (toDay != Dates.INVALID && day >= toDay) return false;
+        }
+        return true;
+    }
+}
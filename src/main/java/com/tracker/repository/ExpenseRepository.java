@@ -1,154 +1,360 @@
 package main.java.com.tracker.repository;
 
+import main.java.com.tracker.metrics.Metrics;
+import main.java.com.tracker.model.CategoryFilter;
 import main.java.com.tracker.model.Expense;
-import java.io.*;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /*
 Simple file-based repository for Expense.
 
-File format: each line is an Expense serialized with Expense.serialize()
+Default file format: each line is an Expense serialized with Expense.serialize()
 File name is provided in constructor, e.g. "expenses.txt".
+Persistence is delegated to a LedgerStore (see TextLedgerStore, SnapshotLedgerStore,
+LogLedgerStore, PartitionedLedgerStore, ColumnarLedgerStore).
+Wrap the store in a ResidentLedgerStore to keep the ledger in memory between calls.
+
+query() returns a lazy cursor. In id order, when the store keeps its rows in id
+order and the ledger is unchanged since our last write (IdAllocator.isCurrent),
+or the store knows its rows are in id order (inIdOrder), rows stream straight
+from the file and a page stops reading once it is full.
+Otherwise one streaming pass keeps only the best offset+limit rows in a heap.
 */
 public class ExpenseRepository {
-    private final File file;
+    private final LedgerStore store;
+    private final IdAllocator ids;
+    private final List<LedgerListener> listeners = new ArrayList<LedgerListener>();
 
     public ExpenseRepository(String filename) {
-        this.file = new File(filename);
+        this(new TextLedgerStore(new File(filename)));
+    }
+
+    public ExpenseRepository(LedgerStore store) {
+        this.store = store;
+        this.ids = IdAllocator.forStore(store);
+    }
+
+    // Register derived data (aggregates, indexes) to be told about every mutation
+    public void addListener(LedgerListener listener) {
+        listeners.add(listener);
+    }
+
+    // Cut records torn by a crash off the store's files; done once at startup
+    public void recover() {
+        long t = Metrics.start();
+        store.recover();
+        Metrics.record("expense.recover", t);
+    }
+
+    // Check every record's checksum, optionally rewriting the files without the bad ones
+    public List<LedgerRecovery.Report> verify(boolean repair) {
+        return store.verify(repair);
+    }
+
+    // Stamp of the underlying files; changes whenever the ledger changes
+    public long stamp() {
+        return store.stamp();
+    }
+
+    // Streaming sum/count/group-by over the ledger without loading Expense objects
+    public LedgerScanner scanner() {
+        return new LedgerScanner(store);
+    }
+
+    // Whole-ledger totals (overall, per category, per month) computed in parallel
+    public SummaryResult summarize(SummaryEngine engine) {
+        long t = Metrics.start();
+        try {
+            return engine.summarize(store);
+        } finally {
+            Metrics.record("expense.summarize", t);
+        }
     }
 
     // Return all expenses (empty list if file missing)
     public List<Expense> findAll() {
-        List<Expense> out = new ArrayList<Expense>();
-        if (!file.exists()) {
-            return out;
+        long t = Metrics.start();
+        try {
+            return store.loadAll();
+        } finally {
+            Metrics.record("expense.findAll", t);
         }
-        BufferedReader reader = null;
+    }
+
+    // Stream every expense to the visitor without building a list
+    public long forEach(ExpenseVisitor visitor) {
+        long t = Metrics.start();
         try {
-            reader = new BufferedReader(new FileReader(file));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
-                out.add(Expense.deserialize(line));
-            }
-        } catch (IOException e) {
-            System.err.println("Error reading expenses: " + e.getMessage());
+            return store.forEach(visitor);
         } finally {
-            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+            Metrics.record("expense.forEach", t);
         }
-        return out;
     }
 
-    // Find by id
+    // Find by id (O(1) when the store is resident)
     public Expense findById(long id) {
-        List<Expense> all = findAll();
-        for (Expense e : all) {
-            if (e.getId() == id) return e;
+        long t = Metrics.start();
+        try {
+            return store.find(id);
+        } finally {
+            Metrics.record("expense.findById", t);
         }
-        return null;
     }
 
-    // Add expense: assigns id and writes file
+    // Add expense: assigns the next id from the IdAllocator (no ledger scan) and writes it.
+    // The write lock spans the write and listener updates, so concurrent writers stay ordered.
     public long add(Expense exp) {
-        List<Expense> all = findAll();
-        long max = 0;
-        for (Expense e : all) {
-            if (e.getId() > max) max = e.getId();
+        long t = Metrics.start();
+        LedgerLock lock = store.writeLock();
+        lock.lock();
+        try {
+            long before = store.stamp();
+            long next = ids.reserve(1);
+            exp.setId(next);
+            store.insert(exp);
+            ids.commit();
+            fireChange(null, exp, before);
+            return next;
+        } finally {
+            lock.unlock();
+            Metrics.record("expense.add", t);
         }
-        long next = max + 1;
-        exp.setId(next);
-        all.add(exp);
-        writeAll(all);
-        return next;
     }
 
-    // Update existing expense (by id)
-    public boolean update(Expense exp) {
-        List<Expense> all = findAll();
-        boolean found = false;
-        for (int i = 0; i < all.size(); i++) {
-            if (all.get(i).getId() == exp.getId()) {
-                all.set(i, exp);
-                found = true;
-                break;
+    // Add a batch: one block of ids is reserved for the whole batch and the store writes once.
+    // Returns the first id assigned (0 for an empty batch).
+    public long addAll(List<Expense> batch) {
+        if (batch.isEmpty()) return 0L;
+        long t = Metrics.start();
+        LedgerLock lock = store.writeLock();
+        lock.lock();
+        try {
+            long before = store.stamp();
+            long first = ids.reserve(batch.size());
+            long next = first;
+            for (Expense e : batch) {
+                e.setId(next++);
+            }
+            store.insertAll(batch);
+            ids.commit();
+            if (!listeners.isEmpty()) {
+                long tl = Metrics.start();
+                long after = store.stamp();
+                for (LedgerListener l : listeners) {
+                    l.onAddAll(batch, before, after);
+                }
+                Metrics.record("expense.listeners", tl);
             }
+            return first;
+        } finally {
+            lock.unlock();
+            Metrics.record("expense.addAll", t);
         }
-        if (found) {
-            writeAll(all);
+    }
+
+    // Update existing expense (by id)
+    public boolean update(Expense exp) {
+        long t = Metrics.start();
+        LedgerLock lock = store.writeLock();
+        lock.lock();
+        try {
+            long before = store.stamp();
+            Expense prev = store.update(exp);
+            if (prev == null) return false;
+            fireChange(prev, exp, before);
+            return true;
+        } finally {
+            lock.unlock();
+            Metrics.record("expense.update", t);
         }
-        return found;
     }
 
     // Delete by id
     public boolean delete(long id) {
-        List<Expense> all = findAll();
-        boolean removed = false;
-        for (int i = 0; i < all.size(); i++) {
-            if (all.get(i).getId() == id) {
-                all.remove(i);
-                removed = true;
-                break;
+        long t = Metrics.start();
+        LedgerLock lock = store.writeLock();
+        lock.lock();
+        try {
+            long before = store.stamp();
+            Expense removed = store.delete(id);
+            if (removed == null) return false;
+            fireChange(removed, null, before);
+            return true;
+        } finally {
+            lock.unlock();
+            Metrics.record("expense.delete", t);
+        }
+    }
+
+    private void fireChange(Expense before, Expense after, long stampBefore) {
+        if (listeners.isEmpty()) return;
+        long t = Metrics.start();
+        long stampAfter = store.stamp();
+        for (LedgerListener l : listeners) {
+            l.onChange(before, after, stampBefore, stampAfter);
+        }
+        Metrics.record("expense.listeners", t);
+    }
+
+    // ========== Queries ==========
+    private static final Comparator<Expense> ID_ORDER = new Comparator<Expense>() {
+        public int compare(Expense a, Expense b) {
+            return Long.compare(a.getId(), b.getId());
+        }
+    };
+
+    private static final Comparator<Expense> DATE_ORDER = new Comparator<Expense>() {
+        public int compare(Expense a, Expense b) {
+            int c = Integer.compare(a.getEpochDay(), b.getEpochDay());
+            return c != 0 ? c : Long.compare(a.getId(), b.getId());
+        }
+    };
+
+    // Filtered, ordered, paginated expenses; close the cursor when done
+    public ExpenseCursor query(ExpenseQuery q) {
+        long t = Metrics.start();
+        try {
+            if (q.sort == ExpenseQuery.BY_ID) {
+                if (q.ids != null) return idPage(q);
+                if (store.inIdOrder() || (store.idOrdered() && ids.isCurrent())) return new PageCursor(store.open(), q);
+            }
+            return sortedPage(q);
+        } finally {
+            Metrics.record("expense.query", t);
+        }
+    }
+
+    // The page is picked from the sorted candidate ids; only its rows are loaded
+    private ExpenseCursor idPage(ExpenseQuery q) {
+        PostingList page = new PostingList();
+        int skipped = 0;
+        for (int i = 0; i < q.ids.size(); i++) {
+            long id = q.ids.get(i);
+            if (id <= q.after) continue;
+            if (skipped < q.offset) {
+                skipped++;
+                continue;
+            }
+            if (q.limit > 0 && page.size() >= q.limit) break;
+            page.add(id);
+        }
+        List<Expense> rows = new ArrayList<Expense>(store.loadIds(page));
+        Collections.sort(rows, ID_ORDER);
+        return new ListCursor(rows);
+    }
+
+    // One pass over the store keeping the first offset+limit rows in query order
+    private ExpenseCursor sortedPage(ExpenseQuery q) {
+        final Comparator<Expense> order = q.sort == ExpenseQuery.BY_DATE ? DATE_ORDER : ID_ORDER;
+        Expense afterRow = null;
+        if (q.after > 0) {
+            afterRow = q.sort == ExpenseQuery.BY_DATE ? store.find(q.after) : new Expense(q.after, "", 0, "", "");
+            if (afterRow == null) throw new IllegalArgumentException("no expense with id " + q.after);
+        }
+        int keep = q.limit > 0 ? q.offset + q.limit : Integer.MAX_VALUE;
+        PriorityQueue<Expense> best = new PriorityQueue<Expense>(Math.min(keep, 1024) + 1, Collections.reverseOrder(order));
+        ExpenseCursor source = q.ids != null ? new ListCursor(store.loadIds(q.ids)) : store.open();
+        try {
+            Expense e;
+            while ((e = source.next()) != null) {
+                if (!q.matches(e)) continue;
+                if (afterRow != null && order.compare(e, afterRow) <= 0) continue;
+                if (best.size() < keep) {
+                    best.add(e);
+                } else if (order.compare(e, best.peek()) < 0) {
+                    best.poll();
+                    best.add(e);
+                }
+            }
+        } finally {
+            source.close();
+        }
+        List<Expense> rows = new ArrayList<Expense>(best);
+        Collections.sort(rows, order);
+        if (q.offset > 0) rows = q.offset >= rows.size() ? new ArrayList<Expense>() : rows.subList(q.offset, rows.size());
+        return new ListCursor(rows);
+    }
+
+    // Filters a store cursor that is already in id order; stops reading once the page is full
+    private static class PageCursor implements ExpenseCursor {
+        private final ExpenseCursor source;
+        private final ExpenseQuery q;
+        private int skipped = 0;
+        private int returned = 0;
+
+        PageCursor(ExpenseCursor source, ExpenseQuery q) {
+            this.source = source;
+            this.q = q;
+        }
+
+        public Expense next() {
+            if (q.limit > 0 && returned >= q.limit) {
+                source.close();
+                return null;
+            }
+            Expense e;
+            while ((e = source.next()) != null) {
+                if (e.getId() <= q.after || !q.matches(e)) continue;
+                if (skipped < q.offset) {
+                    skipped++;
+                    continue;
+                }
+                returned++;
+                return e;
             }
+            return null;
         }
-        if (removed) {
-            writeAll(all);
+
+        public void close() {
+            source.close();
+        }
+    }
+
+    // Expenses for a set of ids (e.g. from SecondaryIndex.query)
+    public List<Expense> findByIds(PostingList ids) {
+        long t = Metrics.start();
+        try {
+            return store.loadIds(ids);
+        } finally {
+            Metrics.record("expense.findByIds", t);
         }
-        return removed;
     }
 
     // Find expenses for given year and month (month 1-12). Year and month parsed from date string "YYYY-MM-DD"
     public List<Expense> findByMonthYear(int year, int month) {
-        List<Expense> all = findAll();
-        List<Expense> out = new ArrayList<Expense>();
-        String yearPrefix = String.valueOf(year) + "-";
-        String monthPrefix = (month < 10) ? "0" + month : String.valueOf(month);
-        for (Expense e : all) {
-            String d = e.getDate();
-            if (d.length() >= 7 && d.startsWith(yearPrefix) && d.substring(5,7).equals(monthPrefix)) {
-                out.add(e);
-            }
+        long t = Metrics.start();
+        try {
+            return store.loadMonth(year, month);
+        } finally {
+            Metrics.record("expense.findByMonthYear", t);
         }
-        return out;
     }
 
     // Find by category (case-insensitive)
     public List<Expense> findByCategory(String category) {
-        List<Expense> all = findAll();
+        long t = Metrics.start();
+        List<Expense> all = store.loadAll();
         List<Expense> out = new ArrayList<Expense>();
+        CategoryFilter filter = new CategoryFilter(category);
         for (Expense e : all) {
-            String cat = e.getCategory();
-            if (cat != null && cat.equalsIgnoreCase(category)) {
-                out.add(e);
-            }
+            if (e.inCategory(filter)) out.add(e);
         }
+        Metrics.record("expense.findByCategory", t);
         return out;
     }
 
-    // Sum of amounts for a given month/year
-    public double totalForMonth(int year, int month) {
-        List<Expense> list = findByMonthYear(year, month);
-        double total = 0.0;
-        for (Expense e : list) {
-            total += e.getAmount();
-        }
-        return total;
-    }
-
-    // Write all expenses to file (overwrite)
-    private void writeAll(List<Expense> list) {
-        BufferedWriter writer = null;
+    // Sum of amounts (cents) for a given month/year
+    public long totalForMonth(int year, int month) {
+        long t = Metrics.start();
         try {
-            writer = new BufferedWriter(new FileWriter(file, false));
-            for (Expense e : list) {
-                writer.write(e.serialize());
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            System.err.println("Error writing expenses: " + e.getMessage());
+            return store.totalForMonth(year, month);
         } finally {
-            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+            Metrics.record("expense.totalForMonth", t);
         }
     }
 }
\ No newline at end of file
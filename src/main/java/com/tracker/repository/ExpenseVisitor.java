@@ -0,0 +1,13 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Expense;
+
+/*
+Receives the expenses of a LedgerStore.forEach pass one at a time, in store order.
+
+The store does not keep the objects it hands out, so a pass over the whole
+ledger runs in constant memory (for stores that can stream their files).
+*/
+public interface ExpenseVisitor {
+    void expense(Expense e);
+}
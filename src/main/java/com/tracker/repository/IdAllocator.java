@@ -0,0 +1,129 @@
+package main.java.com.tracker.repository;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Hands out expense ids without reading the ledger.
+
+The highest id ever handed out (the high-water mark) is kept in a sidecar file
+next to the ledger (e.g. "expenses.txt.ids") as a single line:
+    highWater|ledgerStamp
+ledgerStamp is the ledger's stamp right after the write that used those ids.
+If it no longer matches (the ledger was edited by hand, or a crash hit between
+the ledger write and the sidecar write) the mark is recomputed once from
+store.maxId(); otherwise no record is read.
+
+Ids come from an AtomicLong: reserve(n) claims a block of n consecutive ids
+with one getAndAdd, so a batch costs the same as a single add. Callers hold the
+ledger's write lock (ExpenseRepository does), and the sidecar is re-read on
+each reservation, so several processes never hand out the same id. Deleted
+ids are never reused. There is one allocator per sidecar file per JVM.
+*/
+public class IdAllocator {
+    private static final Map<String, IdAllocator> ALLOCATORS = new HashMap<String, IdAllocator>();
+
+    private final LedgerStore store;
+    private final File file; // null: keep the mark in memory only
+    private final AtomicLong highWater = new AtomicLong(-1);
+
+    private IdAllocator(LedgerStore store, File file) {
+        this.store = store;
+        this.file = file;
+    }
+
+    public static IdAllocator forStore(LedgerStore store) {
+        File f = store.sidecar(".ids");
+        if (f == null) return new IdAllocator(store, null);
+        String key = f.getAbsoluteFile().toPath().normalize().toString();
+        synchronized (ALLOCATORS) {
+            IdAllocator a = ALLOCATORS.get(key);
+            if (a == null) {
+                a = new IdAllocator(store, f);
+                ALLOCATORS.put(key, a);
+            }
+            return a;
+        }
+    }
+
+    // First of n consecutive unused ids (caller holds the ledger's write lock)
+    public long reserve(int n) {
+        raiseTo(persistedHighWater());
+        return highWater.getAndAdd(n) + 1;
+    }
+
+    // Record the mark together with the ledger stamp after the write that used the ids
+    public void commit() {
+        if (file == null) return;
+        File tmp = AtomicFile.temp(file);
+        Writer w = null;
+        try {
+            w = new FileWriter(tmp, false);
+            w.write(highWater.get() + "|" + store.stamp());
+        } catch (IOException e) {
+            System.err.println("Error writing id counter: " + e.getMessage());
+            tmp.delete();
+            return;
+        } finally {
+            try { if (w != null) w.close(); } catch (IOException ignored) {}
+        }
+        try {
+            AtomicFile.replace(tmp, file);
+        } catch (IOException e) {
+            System.err.println("Error writing id counter: " + e.getMessage());
+        }
+    }
+
+    // True if the ledger is exactly as the last commit() left it (not edited by anything else since)
+    public boolean isCurrent() {
+        if (file == null || !file.exists()) return false;
+        BufferedReader r = null;
+        try {
+            r = new BufferedReader(new FileReader(file));
+            String line = r.readLine();
+            int bar = line == null ? -1 : line.indexOf('|');
+            return bar > 0 && Long.parseLong(line.substring(bar + 1).trim()) == store.stamp();
+        } catch (IOException e) {
+            return false;
+        } catch (NumberFormatException e) {
+            return false;
+        } finally {
+            try { if (r != null) r.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void raiseTo(long value) {
+        long cur = highWater.get();
+        while (value > cur && !highWater.compareAndSet(cur, value)) {
+            cur = highWater.get();
+        }
+    }
+
+    // Mark from the sidecar, or from the ledger itself when the sidecar is missing or stale
+    private long persistedHighWater() {
+        if (file != null && file.exists()) {
+            BufferedReader r = null;
+            try {
+                r = new BufferedReader(new FileReader(file));
+                String line = r.readLine();
+                int bar = line == null ? -1 : line.indexOf('|');
+                if (bar > 0) {
+                    long mark = Long.parseLong(line.substring(0, bar).trim());
+                    long stamp = Long.parseLong(line.substring(bar + 1).trim());
+                    if (stamp == store.stamp()) return mark;
+                    return Math.max(mark, store.maxId());
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading id counter: " + e.getMessage());
+            } catch (NumberFormatException e) {
+                // damaged sidecar: fall through to a scan
+            } finally {
+                try { if (r != null) r.close(); } catch (IOException ignored) {}
+            }
+        }
+        if (file == null && highWater.get() >= 0) return highWater.get();
+        return store.maxId();
+    }
+}
@@ -0,0 +1,170 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Categories;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Column-oriented copy of the ledger: one primitive array per field.
+
+- ids, dates (epoch day, Dates.INVALID when the text date is not YYYY-MM-DD),
+  amounts in cents
+- descriptions and categories as codes into a shared string dictionary
+- rawDates: for rows whose date could not be encoded, the dictionary code of
+  the original text (-1 otherwise), so converting back is lossless
+
+Aggregations run directly over the arrays, without building Expense objects.
+*/
+public class LedgerColumns {
+    long[] ids;
+    int[] dates;
+    long[] amounts;
+    int[] descriptions;
+    int[] categories;
+    int[] rawDates;
+    int size;
+
+    final List<String> dictionary = new ArrayList<String>();
+    private final Map<String, Integer> codes = new HashMap<String, Integer>();
+    private int[] categoryCodes = new int[16]; // dictionary code -> Categories code + 1, 0 = not looked up
+
+    public LedgerColumns(int capacity) {
+        capacity = Math.max(capacity, 16);
+        ids = new long[capacity];
+        dates = new int[capacity];
+        amounts = new long[capacity];
+        descriptions = new int[capacity];
+        categories = new int[capacity];
+        rawDates = new int[capacity];
+    }
+
+    public static LedgerColumns from(List<Expense> list) {
+        LedgerColumns c = new LedgerColumns(list.size());
+        for (Expense e : list) c.add(e);
+        return c;
+    }
+
+    public int size() { return size; }
+
+    public void add(Expense e) {
+        if (size == ids.length) grow();
+        set(size, e);
+        size++;
+    }
+
+    public void set(int row, Expense e) {
+        ids[row] = e.getId();
+        int day = e.getEpochDay();
+        dates[row] = day;
+        rawDates[row] = day == Dates.INVALID ? code(e.getDate() == null ? "" : e.getDate()) : -1;
+        amounts[row] = e.getAmountCents();
+        descriptions[row] = code(e.getDescription());
+        categories[row] = code(e.getCategory());
+    }
+
+    public void remove(int row) {
+        int tail = size - row - 1;
+        System.arraycopy(ids, row + 1, ids, row, tail);
+        System.arraycopy(dates, row + 1, dates, row, tail);
+        System.arraycopy(amounts, row + 1, amounts, row, tail);
+        System.arraycopy(descriptions, row + 1, descriptions, row, tail);
+        System.arraycopy(categories, row + 1, categories, row, tail);
+        System.arraycopy(rawDates, row + 1, rawDates, row, tail);
+        size--;
+    }
+
+    // Row index of an id, -1 if absent
+    public int indexOf(long id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) return i;
+        }
+        return -1;
+    }
+
+    public long maxId() {
+        long max = 0;
+        for (int i = 0; i < size; i++) {
+            if (ids[i] > max) max = ids[i];
+        }
+        return max;
+    }
+
+    public Expense get(int row) {
+        Expense e = new Expense(ids[row], dates[row], amounts[row],
+                dictionary.get(descriptions[row]), categoryCode(categories[row]));
+        if (rawDates[row] >= 0) e.setDate(dictionary.get(rawDates[row]));
+        return e;
+    }
+
+    // Categories code for a dictionary entry, looked up once per distinct word
+    private int categoryCode(int word) {
+        if (word >= categoryCodes.length) categoryCodes = Arrays.copyOf(categoryCodes, Math.max(word + 1, categoryCodes.length * 2));
+        int c = categoryCodes[word];
+        if (c == 0) {
+            c = Categories.code(dictionary.get(word)) + 1;
+            categoryCodes[word] = c;
+        }
+        return c - 1;
+    }
+
+    public List<Expense> toList() {
+        List<Expense> out = new ArrayList<Expense>(size);
+        for (int i = 0; i < size; i++) out.add(get(i));
+        return out;
+    }
+
+    public List<Expense> month(int year, int month) {
+        int from = Dates.epochDay(year, month, 1);
+        int to = from + Dates.daysInMonth(year, month);
+        List<Expense> out = new ArrayList<Expense>();
+        for (int i = 0; i < size; i++) {
+            if (dates[i] >= from && dates[i] < to) out.add(get(i));
+        }
+        return out;
+    }
+
+    public long totalForMonth(int year, int month) {
+        int from = Dates.epochDay(year, month, 1);
+        int to = from + Dates.daysInMonth(year, month);
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            if (dates[i] >= from && dates[i] < to) total += amounts[i];
+        }
+        return total;
+    }
+
+    String word(int code) {
+        return dictionary.get(code);
+    }
+
+    int code(String s) {
+        Integer c = codes.get(s);
+        if (c == null) {
+            c = dictionary.size();
+            dictionary.add(s);
+            codes.put(s, c);
+        }
+        return c;
+    }
+
+    // Used when reading a file: dictionary entries arrive in code order
+    void addWord(String s) {
+        codes.put(s, dictionary.size());
+        dictionary.add(s);
+    }
+
+    private void grow() {
+        int n = ids.length * 2;
+        ids = Arrays.copyOf(ids, n);
+        dates = Arrays.copyOf(dates, n);
+        amounts = Arrays.copyOf(amounts, n);
+        descriptions = Arrays.copyOf(descriptions, n);
+        categories = Arrays.copyOf(categories, n);
+        rawDates = Arrays.copyOf(rawDates, n);
+    }
+}
@@ -0,0 +1,19 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Expense;
+import java.util.List;
+
+/*
+Callback for derived data that must follow ExpenseRepository mutations.
+
+before == null for an add, after == null for a delete.
+stampBefore/stampAfter are the store stamps around the write, so a listener that
+persists its own data can tell whether the ledger also changed behind its back.
+onAddAll() reports a whole batch written by ExpenseRepository.addAll in one call,
+so the listener can persist once instead of once per row.
+*/
+public interface LedgerListener {
+    void onChange(Expense before, Expense after, long stampBefore, long stampAfter);
+
+    void onAddAll(List<Expense> added, long stampBefore, long stampAfter);
+}
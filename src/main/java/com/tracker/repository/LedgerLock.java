@@ -0,0 +1,83 @@
+package main.java.com.tracker.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Writer lock for one set of files, shared by threads and by processes.
+
+- in-process: a ReentrantLock, so daemon threads queue up in order
+- cross-process: an exclusive FileChannel lock on a small lock file
+  (e.g. "expenses.txt.lock"), taken when the outermost lock() is entered
+
+There is one instance per lock file per JVM (see forFile), because the JVM does
+not allow two overlapping FileLocks on the same file.
+
+Only writers lock. Every file a reader opens is either replaced whole through
+AtomicFile or only ever appended to (and readers skip a torn last record), so
+readers never wait for a writer.
+*/
+public class LedgerLock {
+    private static final Map<String, LedgerLock> LOCKS = new HashMap<String, LedgerLock>();
+
+    private final File file;
+    private final ReentrantLock local = new ReentrantLock();
+    private RandomAccessFile raf;
+    private FileLock fileLock;
+
+    private LedgerLock(File file) {
+        this.file = file;
+    }
+
+    // The lock guarding the given lock file (created on first use); null gives an in-process-only lock
+    public static LedgerLock forFile(File lockFile) {
+        if (lockFile == null) return new LedgerLock(null);
+        String key = lockFile.getAbsoluteFile().toPath().normalize().toString();
+        synchronized (LOCKS) {
+            LedgerLock l = LOCKS.get(key);
+            if (l == null) {
+                l = new LedgerLock(lockFile);
+                LOCKS.put(key, l);
+            }
+            return l;
+        }
+    }
+
+    // Block until this thread holds the lock; nested calls just count
+    public void lock() {
+        local.lock();
+        if (local.getHoldCount() > 1 || file == null) return;
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists()) dir.mkdirs();
+            raf = new RandomAccessFile(file, "rw");
+            FileChannel ch = raf.getChannel();
+            fileLock = ch.lock();
+        } catch (IOException e) {
+            // no file lock available (e.g. read-only directory): still exclusive within this JVM
+            System.err.println("Warning: cannot lock " + file + ": " + e.getMessage());
+            closeFile();
+        }
+    }
+
+    public void unlock() {
+        try {
+            if (local.getHoldCount() == 1) closeFile();
+        } finally {
+            local.unlock();
+        }
+    }
+
+    private void closeFile() {
+        try { if (fileLock != null) fileLock.release(); } catch (IOException ignored) {}
+        try { if (raf != null) raf.close(); } catch (IOException ignored) {}
+        fileLock = null;
+        raf = null;
+    }
+}
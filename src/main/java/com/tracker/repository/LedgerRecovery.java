@@ -0,0 +1,362 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.metrics.Metrics;
+import main.java.com.tracker.model.Expense;
+import main.java.com.tracker.model.LineChecksum;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/*
+Crash recovery and verification for the line-based ledger files
+(expense lines, or log records when `log` is set; see LineChecksum).
+
+- repairTail(): run at startup. Looks only at the last 64KB and cuts off what
+  a crash mid-append leaves behind: lines containing zero bytes, and a last
+  line without a line break that is bad (or has no checksum although the line
+  before it has one). Readers then no longer trip over them and the next
+  append starts on a clean line. A complete line with a wrong checksum (e.g.
+  a hand edit) is not crash damage; it stays for verify() to report.
+- verify(): one memory-mapped pass over the whole file. Checksummed lines are
+  checked straight from the mapped bytes; only lines without a checksum (or,
+  when the platform charset is not UTF-8, lines whose bytes do not match) are
+  decoded and parsed. With repair, the good lines are copied byte for byte into
+  a temp file that replaces the original through AtomicFile.
+
+Removed bytes are appended to "<file>.rejected", never simply dropped.
+*/
+public class LedgerRecovery {
+    static final int TAIL_WINDOW = 64 * 1024;
+    private static final int WINDOW = 256 * 1024 * 1024;
+    private static final int MAX_REPORTED = 10;
+
+    // Outcome of verify() for one file
+    public static class Report {
+        public final File file;
+        public long records;      // non-blank lines
+        public long checked;      // lines with a matching checksum
+        public long unchecked;    // older lines without a checksum (parsed instead)
+        public long bad;          // wrong checksum or unparseable
+        public boolean tornTail;  // last line has no line break and is bad
+        public boolean repaired;
+        final StringBuilder samples = new StringBuilder();
+
+        Report(File file) {
+            this.file = file;
+        }
+
+        public boolean ok() { return bad == 0; }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(file.getName()).append(": ").append(records).append(" records, ")
+              .append(checked).append(" checksummed, ").append(unchecked).append(" without checksum, ")
+              .append(bad).append(" bad");
+            if (tornTail) sb.append(" (torn last record)");
+            if (repaired) sb.append("; repaired, bad records moved to ").append(rejectedFile(file).getName());
+            sb.append(samples);
+            return sb.toString();
+        }
+    }
+
+    // ========== Records ==========
+    // Whether one record (trimmed, without line break) is intact
+    static boolean valid(String line, boolean log) {
+        try {
+            if (log) {
+                if (!LogLedgerStore.validRecord(line)) return false;
+                char op = line.charAt(0);
+                if (op == 'D') Long.parseLong(line.substring(2, LineChecksum.bodyEnd(line, 0, line.length())));
+                else if (op == 'A' || op == 'U') Expense.deserialize(line.substring(2));
+                else return false;
+                return true;
+            }
+            int c = LineChecksum.check(line);
+            if (c == LineChecksum.BAD) return false;
+            if (c == LineChecksum.MISSING) Expense.deserialize(line);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static boolean checksummed(String line, boolean log) {
+        int from = log && line.length() > 2 && line.charAt(0) != 'D' ? 2 : 0;
+        return LineChecksum.check(line, from, line.length()) == LineChecksum.VALID;
+    }
+
+    public static File rejectedFile(File f) {
+        return new File(f.getPath() + ".rejected");
+    }
+
+    // ========== Tail ==========
+    // Offset to cut f at so that it ends after its last good record, or -1 if nothing needs cutting
+    static long tornTailOffset(File f, boolean log) throws IOException {
+        long len = f.length();
+        if (len == 0) return -1;
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        byte[] buf;
+        long base;
+        try {
+            int n = (int) Math.min(len, TAIL_WINDOW);
+            base = len - n;
+            buf = new byte[n];
+            raf.seek(base);
+            raf.readFully(buf);
+        } finally {
+            raf.close();
+        }
+        boolean endsWithBreak = buf[buf.length - 1] == '\n';
+        long cut = -1;      // start of the earliest bad line seen so far
+        int end = endsWithBreak ? buf.length - 1 : buf.length;
+        boolean last = true;
+        while (end >= 0) {
+            int start = end;
+            while (start > 0 && buf[start - 1] != '\n') start--;
+            if (start == 0 && base > 0) return cut; // cannot judge a line cut by the window; a later start will
+            String line = new String(buf, start, end - start, Charset.defaultCharset()).trim();
+            if (hasZero(buf, start, end)) {
+                // zero bytes: blocks the crash left unwritten
+                cut = base + start;
+            } else if (line.isEmpty()) {
+                // blank line: harmless, keep looking
+            } else if (!last || endsWithBreak) {
+                // a complete line was written whole; a bad checksum there is for verify --repair
+                return cut;
+            } else if (valid(line, log) && (checksummed(line, log) || !previousChecksummed(buf, start, log))) {
+                return cut;
+            } else {
+                cut = base + start;
+            }
+            last = false;
+            end = start - 1;
+        }
+        return cut;
+    }
+
+    private static boolean hasZero(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == 0) return true;
+        }
+        return false;
+    }
+
+    // Whether the nearest non-blank line before offset start carries a good checksum
+    private static boolean previousChecksummed(byte[] buf, int start, boolean log) {
+        int end = start - 1;
+        while (end >= 0) {
+            int s = end;
+            while (s > 0 && buf[s - 1] != '\n') s--;
+            String line = new String(buf, s, end - s, Charset.defaultCharset()).trim();
+            if (!line.isEmpty()) return checksummed(line, log);
+            end = s - 1;
+        }
+        return false;
+    }
+
+    // Cheap check without the lock: whether repairTail() has anything to do
+    static boolean tailDamaged(File f, boolean log) {
+        if (!f.exists() || f.length() == 0) return false;
+        try {
+            return tornTailOffset(f, log) >= 0 || (log && !endsWithBreak(f));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean endsWithBreak(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        } finally {
+            raf.close();
+        }
+    }
+
+    // Cut torn records off the end of f (caller holds the ledger's write lock); returns bytes removed.
+    // A log also gets its final line break back, so the next record does not join the last one.
+    static long repairTail(File f, boolean log) {
+        if (!f.exists() || f.length() == 0) return 0;
+        try {
+            long cut = tornTailOffset(f, log);
+            if (cut < 0) {
+                if (log && !endsWithBreak(f)) appendBreak(f);
+                return 0;
+            }
+            long removed = f.length() - cut;
+            saveRejected(f, cut, f.length());
+            RandomAccessFile raf = new RandomAccessFile(f, "rw");
+            try {
+                raf.getChannel().truncate(cut);
+                raf.getChannel().force(true);
+            } finally {
+                raf.close();
+            }
+            Metrics.parseError();
+            System.err.println("Recovered " + f.getName() + ": cut " + removed + " bytes of a torn record (saved to "
+                    + rejectedFile(f).getName() + ")");
+            return removed;
+        } catch (IOException e) {
+            System.err.println("Error recovering " + f.getName() + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private static void appendBreak(File f) throws IOException {
+        FileOutputStream out = new FileOutputStream(f, true);
+        try {
+            out.write(System.lineSeparator().getBytes(StandardCharsets.US_ASCII));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void saveRejected(File f, long from, long to) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(f, "r");
+        FileOutputStream out = new FileOutputStream(rejectedFile(f), true);
+        try {
+            byte[] buf = new byte[(int) (to - from)];
+            in.seek(from);
+            in.readFully(buf);
+            out.write(buf);
+            if (buf.length > 0 && buf[buf.length - 1] != '\n') out.write('\n');
+            out.getFD().sync();
+        } finally {
+            try { in.close(); } catch (IOException ignored) {}
+            try { out.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // ========== Verify ==========
+    // Check every record of f; with repair (caller holds the write lock) rewrite it without the bad ones
+    public static Report verify(File f, boolean log, boolean repair) {
+        Report r = new Report(f);
+        if (!f.exists()) return r;
+        long t = Metrics.start();
+        boolean utf8 = Charset.defaultCharset().equals(StandardCharsets.UTF_8);
+        File tmp = repair ? AtomicFile.temp(f) : null;
+        RandomAccessFile raf = null;
+        FileChannel out = null;
+        FileOutputStream rejected = null;
+        try {
+            raf = new RandomAccessFile(f, "r");
+            FileChannel ch = raf.getChannel();
+            long size = ch.size();
+            if (repair) out = new FileOutputStream(tmp).getChannel();
+            CRC32 crc = new CRC32();
+            long pos = 0;
+            while (pos < size) {
+                long len = Math.min(WINDOW, size - pos);
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                int limit = (int) len;
+                if (pos + len < size) {
+                    while (limit > 0 && buf.get(limit - 1) != '\n') limit--;
+                    if (limit == 0) throw new IOException("line longer than verify window at offset " + pos);
+                }
+                ByteBuffer view = buf.duplicate();
+                int keepFrom = 0;  // start of the run of good lines not yet copied
+                int start = 0;
+                while (start < limit) {
+                    int eol = start;
+                    while (eol < limit && buf.get(eol) != '\n') eol++;
+                    int s = start;
+                    int e = eol;
+                    while (s < e && buf.get(s) <= ' ' && buf.get(s) != 0) s++;
+                    while (e > s && buf.get(e - 1) <= ' ' && buf.get(e - 1) != 0) e--;
+                    int next = Math.min(eol + 1, limit);
+                    if (s < e) {
+                        r.records++;
+                        int state = checkBytes(buf, view, crc, s, e, log);
+                        boolean good;
+                        if (state == LineChecksum.VALID) {
+                            r.checked++;
+                            good = true;
+                        } else {
+                            String line = decode(buf, s, e);
+                            // bytes only equal the UTF-8 the checksum covers for ASCII or UTF-8 files
+                            good = (state != LineChecksum.BAD || !utf8) && valid(line, log);
+                            if (good && checksummed(line, log)) r.checked++;
+                            else if (good) r.unchecked++;
+                        }
+                        if (!good) {
+                            r.bad++;
+                            if (eol == limit && pos + limit == size) r.tornTail = true;
+                            if (r.bad <= MAX_REPORTED) {
+                                r.samples.append(System.lineSeparator()).append("  bad record at byte ").append(pos + s);
+                            }
+                            if (repair) {
+                                copy(buf, keepFrom, start, out);
+                                if (rejected == null) rejected = new FileOutputStream(rejectedFile(f), true);
+                                copy(buf, start, next, rejected.getChannel());
+                                if (buf.get(next - 1) != '\n') rejected.write('\n');
+                                keepFrom = next;
+                            }
+                        }
+                    }
+                    start = next;
+                }
+                if (repair) copy(buf, keepFrom, limit, out);
+                pos += limit;
+            }
+            if (r.bad > MAX_REPORTED) {
+                r.samples.append(System.lineSeparator()).append("  ... ").append(r.bad - MAX_REPORTED).append(" more");
+            }
+            Metrics.rowsRead(r.records);
+            Metrics.bytesRead(size);
+        } catch (IOException e) {
+            System.err.println("Error verifying " + f.getName() + ": " + e.getMessage());
+            repair = false;
+        } finally {
+            try { if (raf != null) raf.close(); } catch (IOException ignored) {}
+            try { if (out != null) out.close(); } catch (IOException ignored) {}
+            try { if (rejected != null) { rejected.getFD().sync(); rejected.close(); } } catch (IOException ignored) {}
+        }
+        if (repair && r.bad > 0) {
+            try {
+                AtomicFile.replace(tmp, f);
+                r.repaired = true;
+            } catch (IOException e) {
+                System.err.println("Error repairing " + f.getName() + ": " + e.getMessage());
+            }
+        }
+        if (tmp != null && tmp.exists()) tmp.delete();
+        Metrics.record("ledger.verify", t);
+        return r;
+    }
+
+    // Checksum state of buf[s, e) from the bytes (exact for UTF-8 files; for other charsets BAD may be wrong)
+    private static int checkBytes(MappedByteBuffer buf, ByteBuffer view, CRC32 crc, int s, int e, boolean log) {
+        int suffix = e - LineChecksum.SUFFIX_LENGTH;
+        if (suffix <= s || buf.get(suffix) != '|' || buf.get(suffix + 1) != '#') return LineChecksum.MISSING;
+        int expected = 0;
+        for (int i = suffix + 2; i < e; i++) {
+            int d = Character.digit((char) buf.get(i), 16);
+            if (d < 0) return LineChecksum.MISSING;
+            expected = (expected << 4) | d;
+        }
+        int from = log && e - s > 2 && buf.get(s) != 'D' ? s + 2 : s;
+        view.limit(suffix).position(from);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue() == expected ? LineChecksum.VALID : LineChecksum.BAD;
+    }
+
+    private static String decode(MappedByteBuffer buf, int from, int to) {
+        byte[] b = new byte[to - from];
+        for (int i = 0; i < b.length; i++) b[i] = buf.get(from + i);
+        return new String(b, Charset.defaultCharset());
+    }
+
+    private static void copy(MappedByteBuffer buf, int from, int to, FileChannel out) throws IOException {
+        if (to <= from) return;
+        ByteBuffer slice = buf.duplicate();
+        slice.limit(to).position(from);
+        while (slice.hasRemaining()) out.write(slice);
+    }
+}
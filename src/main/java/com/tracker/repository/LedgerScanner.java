@@ -0,0 +1,62 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Dates;
+import java.util.Arrays;
+
+/*
+Streaming aggregation primitives over a store's scan().
+
+Each call makes one pass over the ledger and keeps only running long (cents)
+totals (for trend(), arrays indexed by month and category code), so memory does not grow
+with the number of rows. For the text store the pass is memory-mapped
+(MappedTextScanner); other stores feed the same visitor.
+*/
+public class LedgerScanner {
+    private final LedgerStore store;
+
+    public LedgerScanner(LedgerStore store) {
+        this.store = store;
+    }
+
+    public long count() {
+        final long[] n = new long[1];
+        store.scan(new CategoryTable(), new ScanVisitor() {
+            public void row(int epochDay, long amount, int category) {
+                n[0]++;
+            }
+        });
+        return n[0];
+    }
+
+    // Sum of amounts (cents) dated in [fromDay, toDay)
+    public long totalBetween(final int fromDay, final int toDay) {
+        final long[] sum = new long[1];
+        store.scan(new CategoryTable(), new ScanVisitor() {
+            public void row(int epochDay, long amount, int category) {
+                if (epochDay >= fromDay && epochDay < toDay) sum[0] += amount;
+            }
+        });
+        return sum[0];
+    }
+
+    // Month x category totals for count months from firstMonth (Dates.monthIndex), plus lead months
+    // before it for rolling averages and year-over-year; category (ignoring case) limits it to one category
+    public TrendReport trend(final int firstMonth, int count, int lead, final String category) {
+        final TrendReport r = new TrendReport(firstMonth, count, lead);
+        final int fromDay = Dates.epochDay(Math.floorDiv(r.scanFirst(), 12), Math.floorMod(r.scanFirst(), 12) + 1, 1);
+        final int toDay = Dates.epochDay(Math.floorDiv(r.last() + 1, 12), Math.floorMod(r.last() + 1, 12) + 1, 1);
+        final byte[][] match = { new byte[16] }; // per code: 0 = not checked yet, 1 = in, 2 = out
+        store.scan(r.categories, new ScanVisitor() {
+            public void row(int epochDay, long amount, int code) {
+                if (epochDay < fromDay || epochDay >= toDay) return;
+                if (category != null) {
+                    if (code >= match[0].length) match[0] = Arrays.copyOf(match[0], code * 2 + 1);
+                    if (match[0][code] == 0) match[0][code] = r.categories.name(code).equalsIgnoreCase(category) ? (byte) 1 : (byte) 2;
+                    if (match[0][code] != 1) return;
+                }
+                r.add(code, Dates.monthIndex(epochDay), amount);
+            }
+        });
+        return r;
+    }
+}
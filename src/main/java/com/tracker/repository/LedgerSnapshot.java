@@ -0,0 +1,515 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.metrics.Metrics;
+import main.java.com.tracker.model.Categories;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/*
+Binary snapshot of a text ledger (e.g. "expenses.txt.snap"), so a cold start
+does not parse the whole text file again.
+
+Layout (big-endian):
+- magic "EXPS", int version
+- source stamp: long size (bytes of the text file covered, ending on a line
+  break), long mtime, long file key hash, int CRC-32 of all the bytes covered
+- int rowCount, long maxId, int flags (1 = ids ascending in row order)
+- int dictionarySize, int dictionaryBytes, int rawDateCount, int monthCount
+- int[dictionarySize + 1] word offsets, then the UTF-8 bytes of every word
+- padding to 8 bytes, long[rowCount] ids, long[rowCount] amounts in cents
+- int[rowCount] dates (epoch day), description codes, category codes
+- rawDateCount pairs (int row, int code) for dates kept as text
+- int[rowCount] rows in id order (only when the ids are not ascending)
+- monthCount pairs (int month index, int start), int end, then the rows of
+  every dated month in file order (start/end index this list)
+
+The file is memory-mapped and rows are read straight from it; a word is only
+decoded when a row using it is materialized, and scans look categories up by
+their raw bytes. matches() accepts the snapshot for the same file (file key)
+whose covered prefix is unchanged: same size and mtime, or a larger file
+(appended to) whose whole covered prefix still has the same CRC, which costs
+one sequential read of it (SnapshotLedgerStore skips that read after its own
+appends). Anything else, e.g. an editor changing a line and adding one, is a
+mismatch and the snapshot is rebuilt. Whole-file rewrites of the ledger delete
+the snapshot (see TextLedgerStore.writeAll).
+*/
+public class LedgerSnapshot {
+    private static final int MAGIC = 0x45585053; // "EXPS"
+    private static final int VERSION = 2; // 1 kept a CRC of the last 64KB only
+    private static final int ID_ASCENDING = 1;
+
+    // What a snapshot was built from: a prefix of the text file
+    public static class Source {
+        public long size;
+        public long mtime;
+        public long key;
+        public int crc;
+    }
+
+    private final ByteBuffer buf;
+    private final Source source = new Source();
+    private final int rows;
+    private final long maxId;
+    private final boolean idAscending;
+    private final int words;
+    private final int offsetsAt, blobAt;
+    private final int idsAt, amountsAt, datesAt, descriptionsAt, categoriesAt;
+    private final int idOrderAt;      // -1 when ids are ascending
+    private final int months, monthDirAt, monthRowsAt;
+    private final Map<Integer, Integer> rawDates = new HashMap<Integer, Integer>(); // row -> word
+    private final String[] wordCache;
+    private final int[] categoryCodes; // word -> Categories code + 1, 0 = not looked up
+
+    private LedgerSnapshot(ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        if (buf.getInt(0) != MAGIC) throw new IOException("not a ledger snapshot");
+        if (buf.getInt(4) != VERSION) throw new IOException("unsupported snapshot version " + buf.getInt(4));
+        source.size = buf.getLong(8);
+        source.mtime = buf.getLong(16);
+        source.key = buf.getLong(24);
+        source.crc = buf.getInt(32);
+        rows = buf.getInt(36);
+        maxId = buf.getLong(40);
+        idAscending = (buf.getInt(48) & ID_ASCENDING) != 0;
+        words = buf.getInt(52);
+        int blobBytes = buf.getInt(56);
+        int raw = buf.getInt(60);
+        months = buf.getInt(64);
+        offsetsAt = 68;
+        blobAt = offsetsAt + (words + 1) * 4;
+        idsAt = align(blobAt + blobBytes);
+        amountsAt = idsAt + rows * 8;
+        datesAt = amountsAt + rows * 8;
+        descriptionsAt = datesAt + rows * 4;
+        categoriesAt = descriptionsAt + rows * 4;
+        int rawAt = categoriesAt + rows * 4;
+        for (int i = 0; i < raw; i++) rawDates.put(buf.getInt(rawAt + i * 8), buf.getInt(rawAt + i * 8 + 4));
+        int next = rawAt + raw * 8;
+        idOrderAt = idAscending ? -1 : next;
+        monthDirAt = idAscending ? next : next + rows * 4;
+        monthRowsAt = monthDirAt + months * 8 + 4;
+        if (monthRowsAt > buf.limit() || monthRowsAt + buf.getInt(monthRowsAt - 4) * 4 > buf.limit()) {
+            throw new IOException("truncated ledger snapshot");
+        }
+        wordCache = new String[words];
+        categoryCodes = new int[words];
+    }
+
+    private static int align(int pos) {
+        return (pos + 7) & ~7;
+    }
+
+    // ========== Open / check ==========
+    // Map a snapshot file; null if it is missing or unreadable (it is rebuilt then)
+    public static LedgerSnapshot open(File f) {
+        if (!f.exists()) return null;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(f, "r");
+            FileChannel ch = raf.getChannel();
+            if (ch.size() > Integer.MAX_VALUE) return null;
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new LedgerSnapshot(map);
+        } catch (IOException e) {
+            return null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        } finally {
+            try { if (raf != null) raf.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // Size, mtime and file key of the text file as it is now (crc is left 0)
+    public static Source sourceOf(File text) {
+        Source s = new Source();
+        try {
+            BasicFileAttributes a = Files.readAttributes(text.toPath(), BasicFileAttributes.class);
+            s.size = a.size();
+            s.mtime = a.lastModifiedTime().toMillis();
+            Object key = a.fileKey();
+            s.key = key == null ? 0 : key.toString().hashCode();
+        } catch (IOException e) {
+            s.size = -1;
+        }
+        return s;
+    }
+
+    // True if the snapshot describes a prefix of the text file whose stamp is now
+    public boolean matches(File text, Source now) {
+        if (now.size < source.size || now.key != source.key) return false;
+        if (now.size == source.size) return now.mtime == source.mtime;
+        long t = Metrics.start();
+        try {
+            return prefixCrc(text, source.size) == source.crc;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            Metrics.record("snapshot.verify", t);
+        }
+    }
+
+    public Source source() { return source; }
+
+    // CRC-32 of the first end bytes of f
+    static int prefixCrc(File f, long end) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] b = new byte[1 << 20];
+        InputStream in = new FileInputStream(f);
+        try {
+            long left = end;
+            while (left > 0) {
+                int n = in.read(b, 0, (int) Math.min(b.length, left));
+                if (n < 0) throw new EOFException("ledger shorter than its snapshot");
+                crc.update(b, 0, n);
+                left -= n;
+            }
+        } finally {
+            in.close();
+        }
+        Metrics.bytesRead(end);
+        return (int) crc.getValue();
+    }
+
+    // Offset just past the last line break before size (0 if there is none)
+    static long lineEnd(File f, long size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            byte[] b = new byte[8192];
+            long end = size;
+            while (end > 0) {
+                int n = (int) Math.min(b.length, end);
+                raf.seek(end - n);
+                raf.readFully(b, 0, n);
+                for (int i = n - 1; i >= 0; i--) {
+                    if (b[i] == '\n') return end - n + i + 1;
+                }
+                end -= n;
+            }
+            return 0;
+        } finally {
+            raf.close();
+        }
+    }
+
+    // ========== Rows ==========
+    public int size() { return rows; }
+
+    public long maxId() { return maxId; }
+
+    public boolean idAscending() { return idAscending; }
+
+    public long id(int row) {
+        return buf.getLong(idsAt + row * 8);
+    }
+
+    public int date(int row) {
+        return buf.getInt(datesAt + row * 4);
+    }
+
+    public long amount(int row) {
+        return buf.getLong(amountsAt + row * 8);
+    }
+
+    public Expense get(int row) {
+        Expense e = new Expense(id(row), date(row), amount(row),
+                word(buf.getInt(descriptionsAt + row * 4)), categoryCode(buf.getInt(categoriesAt + row * 4)));
+        if (!rawDates.isEmpty()) {
+            Integer raw = rawDates.get(row);
+            if (raw != null) e.setDate(word(raw));
+        }
+        return e;
+    }
+
+    String word(int code) {
+        String w = wordCache[code];
+        if (w == null) {
+            int from = buf.getInt(offsetsAt + code * 4);
+            int to = buf.getInt(offsetsAt + code * 4 + 4);
+            byte[] b = new byte[to - from];
+            ByteBuffer view = buf.duplicate();
+            view.position(blobAt + from);
+            view.get(b);
+            w = new String(b, StandardCharsets.UTF_8);
+            wordCache[code] = w;
+        }
+        return w;
+    }
+
+    private int categoryCode(int word) {
+        int c = categoryCodes[word];
+        if (c == 0) {
+            c = Categories.code(word(word)) + 1;
+            categoryCodes[word] = c;
+        }
+        return c - 1;
+    }
+
+    // First row (in file order) holding id, -1 if none
+    public int rowOf(long id) {
+        int pos = lowerBound(id);
+        return pos < rows && sortedId(pos) == id ? sortedRow(pos) : -1;
+    }
+
+    // Every row holding one of the ids, ascending
+    public int[] rowsOf(PostingList ids) {
+        int[] out = new int[Math.min(ids.size(), 16)];
+        int n = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            long id = ids.get(i);
+            for (int pos = lowerBound(id); pos < rows && sortedId(pos) == id; pos++) {
+                if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                out[n++] = sortedRow(pos);
+            }
+        }
+        out = Arrays.copyOf(out, n);
+        Arrays.sort(out);
+        return out;
+    }
+
+    private int sortedRow(int pos) {
+        return idOrderAt < 0 ? pos : buf.getInt(idOrderAt + pos * 4);
+    }
+
+    private long sortedId(int pos) {
+        return id(sortedRow(pos));
+    }
+
+    private int lowerBound(long id) {
+        int lo = 0;
+        int hi = rows;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedId(mid) < id) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Rows dated in the month (Dates.monthIndex), in file order: {from, to} into monthRow()
+    public int[] monthRange(int monthIndex) {
+        int lo = 0;
+        int hi = months;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int key = buf.getInt(monthDirAt + mid * 8);
+            if (key == monthIndex) {
+                int to = mid + 1 < months ? buf.getInt(monthDirAt + mid * 8 + 12) : buf.getInt(monthRowsAt - 4);
+                return new int[] { buf.getInt(monthDirAt + mid * 8 + 4), to };
+            }
+            if (key < monthIndex) lo = mid + 1;
+            else hi = mid;
+        }
+        return new int[] { 0, 0 };
+    }
+
+    public int monthRow(int i) {
+        return buf.getInt(monthRowsAt + i * 4);
+    }
+
+    // Visit every row, looking categories up by their raw bytes
+    public void scan(CategoryTable categories, ScanVisitor visitor) {
+        int[] toScan = new int[words];
+        for (int i = 0; i < words; i++) toScan[i] = -1;
+        for (int row = 0; row < rows; row++) {
+            int code = buf.getInt(categoriesAt + row * 4);
+            if (toScan[code] < 0) {
+                toScan[code] = categories.code(buf, blobAt + buf.getInt(offsetsAt + code * 4),
+                        blobAt + buf.getInt(offsetsAt + code * 4 + 4));
+            }
+            visitor.row(date(row), amount(row), toScan[code]);
+        }
+    }
+
+    // Heap copy of every column, with room for extra rows
+    public LedgerColumns toColumns(int extra) {
+        LedgerColumns c = new LedgerColumns(rows + extra);
+        for (int i = 0; i < words; i++) c.addWord(word(i));
+        ByteBuffer view = buf.duplicate();
+        view.position(idsAt);
+        view.asLongBuffer().get(c.ids, 0, rows);
+        view.position(amountsAt);
+        view.asLongBuffer().get(c.amounts, 0, rows);
+        view.position(datesAt);
+        view.asIntBuffer().get(c.dates, 0, rows);
+        view.position(descriptionsAt);
+        view.asIntBuffer().get(c.descriptions, 0, rows);
+        view.position(categoriesAt);
+        view.asIntBuffer().get(c.categories, 0, rows);
+        Arrays.fill(c.rawDates, 0, rows, -1);
+        for (Map.Entry<Integer, Integer> en : rawDates.entrySet()) c.rawDates[en.getKey()] = en.getValue();
+        c.size = rows;
+        return c;
+    }
+
+    // ========== Write ==========
+    private static void putLongs(FileChannel ch, ByteBuffer b, long[] a, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            room(ch, b, 8);
+            b.putLong(a[i]);
+        }
+    }
+
+    private static void putInts(FileChannel ch, ByteBuffer b, int[] a, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            room(ch, b, 4);
+            b.putInt(a[i]);
+        }
+    }
+
+    // Write out the buffer when fewer than n bytes are left in it
+    private static void room(FileChannel ch, ByteBuffer b, int n) throws IOException {
+        if (b.remaining() >= n) return;
+        b.flip();
+        while (b.hasRemaining()) ch.write(b);
+        b.clear();
+    }
+
+    // Write the columns as the snapshot of source (through a temp file); false if it cannot be written
+    public static boolean write(File f, final LedgerColumns c, Source source) {
+        long t = Metrics.start();
+        final int n = c.size;
+        byte[][] words = new byte[c.dictionary.size()][];
+        long blobBytes = 0;
+        for (int i = 0; i < words.length; i++) {
+            words[i] = c.dictionary.get(i).getBytes(StandardCharsets.UTF_8);
+            blobBytes += words[i].length;
+        }
+        boolean ascending = true;
+        long maxId = 0;
+        int rawCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && c.ids[i] <= c.ids[i - 1]) ascending = false;
+            if (c.ids[i] > maxId) maxId = c.ids[i];
+            if (c.rawDates[i] >= 0) rawCount++;
+        }
+
+        // rows grouped by month with a counting sort; month indexes of 4-digit years fit in 120000 slots
+        int[] monthOf = new int[n];
+        int minMonth = Integer.MAX_VALUE;
+        int maxMonth = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int m = c.dates[i] == Dates.INVALID ? -1 : Dates.monthIndex(c.dates[i]);
+            monthOf[i] = m;
+            if (m >= 0 && m < minMonth) minMonth = m;
+            if (m > maxMonth) maxMonth = m;
+        }
+        int span = maxMonth < 0 ? 0 : maxMonth - minMonth + 1;
+        int[] starts = new int[span + 1];
+        for (int i = 0; i < n; i++) {
+            if (monthOf[i] >= 0) starts[monthOf[i] - minMonth + 1]++;
+        }
+        int monthCount = 0;
+        for (int m = 0; m < span; m++) {
+            if (starts[m + 1] > 0) monthCount++;
+            starts[m + 1] += starts[m];
+        }
+        int dated = span == 0 ? 0 : starts[span];
+        int[] byMonth = new int[dated];
+        int[] fill = Arrays.copyOf(starts, span + 1);
+        for (int i = 0; i < n; i++) {
+            if (monthOf[i] >= 0) byMonth[fill[monthOf[i] - minMonth]++] = i;
+        }
+
+        long total = 68L + (words.length + 1) * 4L + blobBytes + 8 + n * 28L + rawCount * 8L
+                + (ascending ? 0 : n * 4L) + monthCount * 8L + 4 + dated * 4L;
+        if (total > Integer.MAX_VALUE) return false;
+
+        File tmp = AtomicFile.temp(f);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp, false);
+            FileChannel ch = out.getChannel();
+            ByteBuffer b = ByteBuffer.allocate(1 << 20);
+            b.putInt(MAGIC).putInt(VERSION);
+            b.putLong(source.size).putLong(source.mtime).putLong(source.key).putInt(source.crc);
+            b.putInt(n).putLong(maxId).putInt(ascending ? ID_ASCENDING : 0);
+            b.putInt(words.length).putInt((int) blobBytes).putInt(rawCount).putInt(monthCount);
+            int off = 0;
+            for (byte[] w : words) {
+                room(ch, b, 4);
+                b.putInt(off);
+                off += w.length;
+            }
+            room(ch, b, 4);
+            b.putInt(off);
+            long written = 68L + (words.length + 1) * 4L;
+            for (byte[] w : words) {
+                if (w.length > b.capacity()) {
+                    room(ch, b, b.capacity());
+                    ByteBuffer big = ByteBuffer.wrap(w);
+                    while (big.hasRemaining()) ch.write(big);
+                    continue;
+                }
+                room(ch, b, w.length);
+                b.put(w);
+            }
+            written += blobBytes;
+            room(ch, b, 8);
+            while ((written & 7) != 0) {
+                b.put((byte) 0);
+                written++;
+            }
+            putLongs(ch, b, c.ids, n);
+            putLongs(ch, b, c.amounts, n);
+            putInts(ch, b, c.dates, n);
+            putInts(ch, b, c.descriptions, n);
+            putInts(ch, b, c.categories, n);
+            for (int i = 0; i < n; i++) {
+                if (c.rawDates[i] < 0) continue;
+                room(ch, b, 8);
+                b.putInt(i).putInt(c.rawDates[i]);
+            }
+            if (!ascending) {
+                Integer[] order = new Integer[n];
+                for (int i = 0; i < n; i++) order[i] = i;
+                // stable, so equal ids keep file order
+                Arrays.sort(order, new Comparator<Integer>() {
+                    public int compare(Integer a, Integer b) {
+                        return Long.compare(c.ids[a], c.ids[b]);
+                    }
+                });
+                int[] rowsById = new int[n];
+                for (int i = 0; i < n; i++) rowsById[i] = order[i];
+                putInts(ch, b, rowsById, n);
+            }
+            for (int m = 0; m < span; m++) {
+                if (starts[m + 1] == starts[m]) continue;
+                room(ch, b, 8);
+                b.putInt(minMonth + m).putInt(starts[m]);
+            }
+            room(ch, b, 4);
+            b.putInt(dated);
+            putInts(ch, b, byMonth, dated);
+            b.flip();
+            while (b.hasRemaining()) ch.write(b);
+        } catch (IOException e) {
+            System.err.println("Error writing ledger snapshot: " + e.getMessage());
+            tmp.delete();
+            return false;
+        } finally {
+            try { if (out != null) out.close(); } catch (IOException ignored) {}
+        }
+        long bytes = tmp.length();
+        try {
+            AtomicFile.replace(tmp, f);
+        } catch (IOException e) {
+            System.err.println("Error writing ledger snapshot: " + e.getMessage());
+            return false;
+        }
+        Metrics.bytesWritten(bytes);
+        Metrics.record("snapshot.write", t);
+        return true;
+    }
+}
@@ -0,0 +1,184 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Storage backend used by ExpenseRepository.
+
+A store only knows how to load and persist expenses. Id assignment and the
+query methods live in ExpenseRepository so every storage mode behaves the same.
+ExpenseRepository holds writeLock() around each mutation; stores replace files
+through AtomicFile (or append), so reads need no lock.
+*/
+public abstract class LedgerStore {
+    private LedgerLock writeLock;
+
+    // Return all expenses currently stored (empty list if nothing stored yet)
+    public abstract List<Expense> loadAll();
+
+    // Highest id currently stored, 0 if the ledger is empty
+    public abstract long maxId();
+
+    // Persist a new expense (id already assigned)
+    public abstract void insert(Expense exp);
+
+    // Persist a batch of new expenses (ids already assigned); stores override this to write once
+    public void insertAll(List<Expense> list) {
+        for (Expense e : list) {
+            insert(e);
+        }
+    }
+
+    // Replace the expense with the same id; returns the previous version or null if not found
+    public abstract Expense update(Expense exp);
+
+    // Remove by id; returns the removed expense or null if not found
+    public abstract Expense delete(long id);
+
+    // Hand every expense to the visitor in store order; stores that can stream their files override this
+    public long forEach(ExpenseVisitor visitor) {
+        long rows = 0;
+        for (Expense e : loadAll()) {
+            visitor.expense(e);
+            rows++;
+        }
+        return rows;
+    }
+
+    // Lazy cursor over every expense in store order; stores that can stream their files override this
+    public ExpenseCursor open() {
+        return new ListCursor(loadAll());
+    }
+
+    // True if store order is ascending id order whenever the files were last written by this code
+    public boolean idOrdered() {
+        return false;
+    }
+
+    // True if the rows are known to be in ascending id order as the files are now, whoever wrote them
+    public boolean inIdOrder() {
+        return false;
+    }
+
+    // Find by id (full scan unless the store keeps an index)
+    public Expense find(long id) {
+        for (Expense e : loadAll()) {
+            if (e.getId() == id) return e;
+        }
+        return null;
+    }
+
+    // Expenses whose id is in the list, in store order
+    public List<Expense> loadIds(PostingList ids) {
+        List<Expense> out = new ArrayList<Expense>();
+        if (ids.isEmpty()) return out;
+        for (Expense e : loadAll()) {
+            if (ids.contains(e.getId())) out.add(e);
+        }
+        return out;
+    }
+
+    // Expenses dated in the given year and month (month 1-12); stores partitioned by month override this
+    public List<Expense> loadMonth(int year, int month) {
+        List<Expense> out = new ArrayList<Expense>();
+        if (month < 1 || month > 12) return out;
+        int from = Dates.epochDay(year, month, 1);
+        int to = from + Dates.daysInMonth(year, month) - 1;
+        for (Expense e : loadAll()) {
+            int day = e.getEpochDay();
+            if (day >= from && day <= to) out.add(e);
+        }
+        return out;
+    }
+
+    // Sum of amounts (cents) for a given month/year
+    public long totalForMonth(int year, int month) {
+        long total = 0;
+        for (Expense e : loadMonth(year, month)) {
+            total += e.getAmountCents();
+        }
+        return total;
+    }
+
+    // Visit date/amount/category of every expense (see LedgerScanner); returns rows visited
+    public long scan(CategoryTable categories, ScanVisitor visitor) {
+        long rows = 0;
+        for (Expense e : loadAll()) {
+            visitor.row(e.getEpochDay(), e.getAmountCents(), categories.code(e.getCategory()));
+            rows++;
+        }
+        return rows;
+    }
+
+    // Persist an update for an id the caller already knows exists
+    public void writeUpdate(Expense exp) {
+        update(exp);
+    }
+
+    // Persist a delete for an id the caller already knows exists
+    public void writeDelete(long id) {
+        delete(id);
+    }
+
+    // Make the files consistent after a crash (called once at startup); stores that append override this
+    public void recover() {
+    }
+
+    // Check every record's checksum; with repair, rewrite without bad records. Empty if there is nothing to check.
+    public List<LedgerRecovery.Report> verify(boolean repair) {
+        return new ArrayList<LedgerRecovery.Report>();
+    }
+
+    // Cut a torn record off the end of an appended file. Readers never take the lock, so the tail is
+    // looked at without it first and only re-checked and cut while holding it.
+    protected void recoverTail(File f, boolean log) {
+        if (!LedgerRecovery.tailDamaged(f, log)) return;
+        LedgerLock lock = writeLock();
+        lock.lock();
+        try {
+            LedgerRecovery.repairTail(f, log);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // verify() of the given files; repairs hold the write lock
+    protected List<LedgerRecovery.Report> verifyFiles(File[] files, boolean[] log, boolean repair) {
+        List<LedgerRecovery.Report> out = new ArrayList<LedgerRecovery.Report>();
+        LedgerLock lock = writeLock();
+        if (repair) lock.lock();
+        try {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].exists()) out.add(LedgerRecovery.verify(files[i], log[i], repair));
+            }
+        } finally {
+            if (repair) lock.unlock();
+        }
+        return out;
+    }
+
+    // Writer lock shared by every store (in any process) over the same files
+    public synchronized LedgerLock writeLock() {
+        if (writeLock == null) writeLock = LedgerLock.forFile(sidecar(".lock"));
+        return writeLock;
+    }
+
+    // Small helper file stored next to the ledger (".lock", ".ids"); null when the store has no files
+    protected File sidecar(String ext) {
+        return null;
+    }
+
+    // Changes whenever the underlying files change (size/mtime); 0 if unknown
+    public long stamp() {
+        return 0L;
+    }
+
+    static long fileStamp(File f) {
+        if (!f.exists()) return 0L;
+        return f.lastModified() * 31L + f.length();
+    }
+}
@@ -0,0 +1,24 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Expense;
+import java.util.List;
+
+/*
+ExpenseCursor over a list that is already in memory.
+*/
+class ListCursor implements ExpenseCursor {
+    private final List<Expense> list;
+    private int next = 0;
+
+    ListCursor(List<Expense> list) {
+        this.list = list;
+    }
+
+    public Expense next() {
+        return next < list.size() ? list.get(next++) : null;
+    }
+
+    public void close() {
+        next = list.size();
+    }
+}
@@ -0,0 +1,395 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.metrics.Metrics;
+import main.java.com.tracker.model.Expense;
+import main.java.com.tracker.model.LineChecksum;
+import java.io.*;
+import java.util.*;
+
+/*
+Append-only store: a snapshot file plus a write-ahead log of mutations.
+
+Snapshot: same layout as expenses.txt, kept sorted by id.
+Log (<snapshot>.log), one record per line:
+- A|<Expense.serialize()>   added
+- U|<Expense.serialize()>   updated
+- D|<id>|#<crc>             deleted (tombstone)
+
+Every record ends in a LineChecksum (for A and U it is the one serialize()
+writes). Replay skips a record whose checksum does not match, such as one
+torn by a crash mid-append; recover() cuts such a record off the end of
+the log so the next append starts on a clean line.
+
+Reads replay the snapshot and then the log, so applying a record twice is harmless.
+Once the log grows past compactThreshold bytes a background thread folds it into
+the snapshot. While that runs new records go to a fresh log; the log being
+compacted is parked as <snapshot>.log.compacting and is still replayed by readers.
+*/
+public class LogLedgerStore extends LedgerStore {
+    public static final long DEFAULT_COMPACT_THRESHOLD = 1024L * 1024L;
+
+    private final File snapshot;
+    private final File log;
+    private final File compacting;
+    private final long compactThreshold;
+    private boolean compactionRunning = false;
+
+    public LogLedgerStore(File snapshot) {
+        this(snapshot, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    public LogLedgerStore(File snapshot, long compactThreshold) {
+        this.snapshot = snapshot;
+        this.log = new File(snapshot.getPath() + ".log");
+        this.compacting = new File(snapshot.getPath() + ".log.compacting");
+        this.compactThreshold = compactThreshold;
+    }
+
+    @Override
+    public synchronized List<Expense> loadAll() {
+        return new ArrayList<Expense>(replay().values());
+    }
+
+    // Snapshot is sorted by id and replay keeps updated ids in place, new ids at the end
+    @Override
+    public boolean idOrdered() {
+        return true;
+    }
+
+    // Snapshot is sorted by id, so its last line holds the max; the logs are small
+    @Override
+    public synchronized long maxId() {
+        long max = lastSnapshotId();
+        max = Math.max(max, maxLoggedId(compacting));
+        max = Math.max(max, maxLoggedId(log));
+        return max;
+    }
+
+    @Override
+    public synchronized void insert(Expense exp) {
+        appendRecord("A|" + exp.serialize());
+    }
+
+    // One append of A| records for the whole batch
+    @Override
+    public synchronized void insertAll(List<Expense> list) {
+        if (list.isEmpty()) return;
+        StringBuilder sb = new StringBuilder(list.size() * 64);
+        for (Expense e : list) {
+            sb.append("A|").append(e.serialize()).append(System.lineSeparator());
+        }
+        appendRecords(sb.toString());
+    }
+
+    @Override
+    public synchronized Expense update(Expense exp) {
+        Expense prev = replay().get(exp.getId());
+        if (prev == null) return null;
+        appendRecord("U|" + exp.serialize());
+        return prev;
+    }
+
+    @Override
+    public synchronized Expense delete(long id) {
+        Expense prev = replay().get(id);
+        if (prev == null) return null;
+        appendRecord(deleteRecord(id));
+        return prev;
+    }
+
+    @Override
+    public synchronized void writeUpdate(Expense exp) {
+        appendRecord("U|" + exp.serialize());
+    }
+
+    @Override
+    public synchronized void writeDelete(long id) {
+        appendRecord(deleteRecord(id));
+    }
+
+    @Override
+    public synchronized long stamp() {
+        return (fileStamp(snapshot) * 31L + fileStamp(compacting)) * 31L + fileStamp(log);
+    }
+
+    // Fold the logs into the snapshot right now (blocks the caller)
+    public void compact() {
+        synchronized (this) {
+            if (compactionRunning) return;
+            compactionRunning = true;
+        }
+        try {
+            runCompaction();
+        } finally {
+            synchronized (this) {
+                compactionRunning = false;
+            }
+        }
+    }
+
+    // ========== Replay ==========
+    private Map<Long, Expense> replay() {
+        long t = Metrics.start();
+        Map<Long, Expense> byId = new LinkedHashMap<Long, Expense>();
+        readSnapshot(snapshot, byId);
+        readLog(compacting, byId);
+        readLog(log, byId);
+        Metrics.bytesRead(snapshot.length() + compacting.length() + log.length());
+        Metrics.record("log.replay", t);
+        return byId;
+    }
+
+    private void readSnapshot(File f, Map<Long, Expense> byId) {
+        if (!f.exists()) return;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(f));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                Expense e = Expense.deserialize(line);
+                byId.put(e.getId(), e);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading expenses: " + e.getMessage());
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void readLog(File f, Map<Long, Expense> byId) {
+        if (!f.exists()) return;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(f));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() < 3) continue;
+                try {
+                    applyRecord(line, byId);
+                } catch (RuntimeException bad) {
+                    // most likely a record torn by a crash mid-append; skip it
+                    Metrics.parseError();
+                    System.err.println("Skipping bad log record in " + f.getName() + ": " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading expense log: " + e.getMessage());
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void applyRecord(String line, Map<Long, Expense> byId) {
+        if (!validRecord(line)) throw new IllegalArgumentException("checksum mismatch");
+        char op = line.charAt(0);
+        if (op == 'A' || op == 'U') {
+            Expense e = Expense.deserialize(line.substring(2));
+            byId.put(e.getId(), e);
+        } else if (op == 'D') {
+            byId.remove(Long.parseLong(line.substring(2, LineChecksum.bodyEnd(line, 0, line.length()))));
+        } else {
+            throw new IllegalArgumentException("unknown op " + op);
+        }
+    }
+
+    // D|<id>|#<crc>, the checksum covering "D|<id>"
+    static String deleteRecord(long id) {
+        StringBuilder sb = new StringBuilder(32).append("D|").append(id);
+        LineChecksum.append(sb, 0);
+        return sb.toString();
+    }
+
+    // False when the record carries a checksum that does not match (records from older versions have none)
+    static boolean validRecord(String line) {
+        if (line.length() < 3 || line.charAt(1) != '|') return false;
+        int from = line.charAt(0) == 'D' ? 0 : 2;
+        return LineChecksum.check(line, from, line.length()) != LineChecksum.BAD;
+    }
+
+    private long lastSnapshotId() {
+        if (!snapshot.exists() || snapshot.length() == 0) return 0;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(snapshot, "r");
+            long len = raf.length();
+            int tail = (int) Math.min(len, 4096);
+            byte[] buf = new byte[tail];
+            raf.seek(len - tail);
+            raf.readFully(buf);
+            String[] lines = new String(buf, "UTF-8").split("\n");
+            for (int i = lines.length - 1; i >= 0; i--) {
+                String line = lines[i].trim();
+                if (line.isEmpty()) continue;
+                int bar = line.indexOf('|');
+                return Long.parseLong(bar < 0 ? line : line.substring(0, bar));
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading expenses: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            // last line was cut by the 4k window or is malformed: fall back to a full read
+            long max = 0;
+            Map<Long, Expense> byId = new LinkedHashMap<Long, Expense>();
+            readSnapshot(snapshot, byId);
+            for (Long id : byId.keySet()) max = Math.max(max, id);
+            return max;
+        } finally {
+            try { if (raf != null) raf.close(); } catch (IOException ignored) {}
+        }
+        return 0;
+    }
+
+    private long maxLoggedId(File f) {
+        if (!f.exists()) return 0;
+        long max = 0;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(f));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() < 3 || line.charAt(0) == 'D') continue;
+                int bar = line.indexOf('|', 2);
+                if (bar < 0) continue;
+                try {
+                    max = Math.max(max, Long.parseLong(line.substring(2, bar)));
+                } catch (NumberFormatException ignored) {
+                    // torn record, replay skips it too
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading expense log: " + e.getMessage());
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+        return max;
+    }
+
+    // ========== Writing ==========
+    private void appendRecord(String record) {
+        appendRecords(record + System.lineSeparator());
+    }
+
+    private void appendRecords(String records) {
+        long t = Metrics.start();
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(log, true), 1 << 16);
+            writer.write(records);
+            writer.flush();
+            AtomicFile.sync(log);
+        } catch (IOException e) {
+            System.err.println("Error writing expense log: " + e.getMessage());
+        } finally {
+            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+        }
+        Metrics.bytesWritten(records.length());
+        Metrics.record("log.append", t);
+        if (!compactionRunning && log.length() > compactThreshold) {
+            startBackgroundCompaction();
+        }
+    }
+
+    // Non-daemon thread: a short-lived CLI process still finishes the compaction before exiting
+    private void startBackgroundCompaction() {
+        compactionRunning = true;
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    runCompaction();
+                } finally {
+                    synchronized (LogLedgerStore.this) {
+                        compactionRunning = false;
+                    }
+                }
+            }
+        }, "expense-log-compaction");
+        t.start();
+    }
+
+    // Steps 1 and 3 hold the ledger's write lock (before the monitor, the same order writers use),
+    // so another process compacting or appending at the same time cannot lose records
+    private void runCompaction() {
+        LedgerLock lock = writeLock();
+        long snapshotSeen;
+        // 1. park the current log so writers can keep appending to a fresh one
+        lock.lock();
+        try {
+            synchronized (this) {
+                if (!compacting.exists()) {
+                    if (!log.exists()) return;
+                    if (!log.renameTo(compacting)) {
+                        System.err.println("Error compacting expense log: cannot rotate " + log.getName());
+                        return;
+                    }
+                }
+                snapshotSeen = fileStamp(snapshot);
+            }
+        } finally {
+            lock.unlock();
+        }
+        // 2. build the new snapshot without holding the lock
+        Map<Long, Expense> byId = new LinkedHashMap<Long, Expense>();
+        readSnapshot(snapshot, byId);
+        readLog(compacting, byId);
+        List<Expense> merged = new ArrayList<Expense>(byId.values());
+        Collections.sort(merged, new Comparator<Expense>() {
+            public int compare(Expense a, Expense b) {
+                return Long.compare(a.getId(), b.getId());
+            }
+        });
+        File tmp = AtomicFile.temp(snapshot);
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(tmp, false), 1 << 16);
+            for (Expense e : merged) {
+                writer.write(e.serialize());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Error compacting expense log: " + e.getMessage());
+            tmp.delete();
+            return;
+        } finally {
+            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+        }
+        // 3. swap it in; replaying a leftover .compacting after a crash here is harmless
+        lock.lock();
+        try {
+            synchronized (this) {
+                if (!compacting.exists() || fileStamp(snapshot) != snapshotSeen) {
+                    // another process finished this compaction first
+                    tmp.delete();
+                    return;
+                }
+                try {
+                    AtomicFile.replace(tmp, snapshot);
+                    if (!compacting.delete()) {
+                        System.err.println("Warning: could not remove " + compacting.getName());
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error compacting expense log: " + e.getMessage());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void recover() {
+        recoverTail(compacting, true);
+        recoverTail(log, true);
+    }
+
+    @Override
+    public List<LedgerRecovery.Report> verify(boolean repair) {
+        return verifyFiles(new File[] { snapshot, compacting, log }, new boolean[] { false, true, true }, repair);
+    }
+
+    @Override
+    protected File sidecar(String ext) {
+        return new File(snapshot.getPath() + ext);
+    }
+}
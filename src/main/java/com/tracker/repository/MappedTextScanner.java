@@ -0,0 +1,203 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.metrics.Metrics;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Money;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/*
+Zero-copy scan of a pipe-delimited ledger (Expense.serialize() lines).
+
+The file is memory-mapped in windows that end on a line break. For every line
+only date, amount and category are parsed, straight from the mapped bytes;
+no String, array or Expense is created per row (categories are interned in a
+CategoryTable). Amounts are read as cents; only unusual spellings such as
+"1.0E7" take the Money.parse slow path.
+*/
+public class MappedTextScanner {
+    private static final int WINDOW = 256 * 1024 * 1024;
+    private static final long MAX_UNITS = (Long.MAX_VALUE / 100 - 9) / 10;
+
+    // Visit every expense line of the file; returns the number of rows visited
+    public static long scan(File file, CategoryTable categories, ScanVisitor visitor) {
+        return scan(file, 0, Long.MAX_VALUE, categories, visitor);
+    }
+
+    // Visit the lines that start in [from, to). Splitting a file at arbitrary offsets and
+    // scanning each range visits every line exactly once (used for parallel scans).
+    public static long scan(File file, long from, long to, CategoryTable categories, ScanVisitor visitor) {
+        if (!file.exists()) return 0;
+        long t = Metrics.start();
+        RandomAccessFile raf = null;
+        long rows = 0;
+        long bytes = 0;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel ch = raf.getChannel();
+            long size = ch.size();
+            to = Math.min(to, size);
+            long pos = lineStart(raf, from);
+            while (pos < to) {
+                long len = Math.min(WINDOW, size - pos);
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                int end = (int) len;
+                if (pos + len < size) {
+                    // stop the window after its last complete line
+                    while (end > 0 && buf.get(end - 1) != '\n') end--;
+                    if (end == 0) throw new IOException("line longer than scan window at offset " + pos);
+                }
+                int startLimit = (int) Math.min(end, to - pos);
+                long[] consumed = new long[1];
+                rows += scanWindow(buf, end, startLimit, consumed, categories, visitor);
+                pos += consumed[0];
+                bytes += consumed[0];
+            }
+        } catch (IOException e) {
+            System.err.println("Error scanning expenses: " + e.getMessage());
+        } finally {
+            try { if (raf != null) raf.close(); } catch (IOException ignored) {}
+        }
+        Metrics.rowsRead(rows);
+        Metrics.bytesRead(bytes);
+        Metrics.record("text.scan", t);
+        return rows;
+    }
+
+    // First line start at or after offset
+    private static long lineStart(RandomAccessFile raf, long offset) throws IOException {
+        if (offset <= 0) return 0;
+        long pos = offset - 1;
+        raf.seek(pos);
+        int b;
+        while ((b = raf.read()) >= 0) {
+            pos++;
+            if (b == '\n') return pos;
+        }
+        return pos;
+    }
+
+    // Lines starting before startLimit; consumed[0] = bytes up to the end of the last line visited
+    private static long scanWindow(MappedByteBuffer buf, int limit, int startLimit, long[] consumed,
+                                   CategoryTable categories, ScanVisitor visitor) {
+        long rows = 0;
+        int start = 0;
+        while (start < startLimit) {
+            int eol = start;
+            while (eol < limit && buf.get(eol) != '\n') eol++;
+            int s = start;
+            int e = eol;
+            while (s < e && buf.get(s) <= ' ') s++;
+            while (e > s && buf.get(e - 1) <= ' ') e--;
+            if (s < e && parseLine(buf, s, e, categories, visitor)) rows++;
+            start = eol + 1;
+        }
+        consumed[0] = Math.min(start, limit);
+        return rows;
+    }
+
+    // line = id|date|amount|description|category
+    private static boolean parseLine(MappedByteBuffer buf, int s, int e, CategoryTable categories, ScanVisitor visitor) {
+        int p1 = indexOf(buf, s, e);
+        int p2 = indexOf(buf, p1 + 1, e);
+        int p3 = indexOf(buf, p2 + 1, e);
+        if (p1 >= e || p2 >= e || p3 > e) {
+            Metrics.parseError();
+            System.err.println("Skipping malformed expense line");
+            return false;
+        }
+        int catFrom = e;
+        int catTo = e;
+        if (p3 < e) {
+            int p4 = indexOf(buf, p3 + 1, e);
+            if (p4 < e) {
+                catFrom = p4 + 1;
+                catTo = indexOf(buf, catFrom, e);
+            }
+        }
+        int day = parseDate(buf, p1 + 1, p2);
+        long amount = parseAmount(buf, p2 + 1, p3);
+        visitor.row(day, amount, categories.code(buf, catFrom, catTo));
+        return true;
+    }
+
+    private static int indexOf(MappedByteBuffer buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == '|') return i;
+        }
+        return to;
+    }
+
+    static int parseDate(MappedByteBuffer buf, int from, int to) {
+        if (to - from != 10 || buf.get(from + 4) != '-' || buf.get(from + 7) != '-') return Dates.INVALID;
+        int y = digits(buf, from, 4);
+        int m = digits(buf, from + 5, 2);
+        int d = digits(buf, from + 8, 2);
+        if (y < 0 || m < 1 || m > 12 || d < 1 || d > Dates.daysInMonth(y, m)) return Dates.INVALID;
+        return Dates.epochDay(y, m, d);
+    }
+
+    private static int digits(MappedByteBuffer buf, int from, int len) {
+        int v = 0;
+        for (int i = from; i < from + len; i++) {
+            int c = buf.get(i) - '0';
+            if (c < 0 || c > 9) return -1;
+            v = v * 10 + c;
+        }
+        return v;
+    }
+
+    // [-]digits[.digits] read straight into cents; anything else goes through Money.parse
+    static long parseAmount(MappedByteBuffer buf, int from, int to) {
+        int i = from;
+        boolean neg = false;
+        if (i < to && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            neg = buf.get(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        for (; i < to; i++) {
+            int c = buf.get(i) - '0';
+            if (c < 0 || c > 9) break;
+            if (units > MAX_UNITS) return slowAmount(buf, from, to);
+            units = units * 10 + c;
+            digits++;
+        }
+        long cents = 0;
+        if (i < to && buf.get(i) == '.') {
+            i++;
+            int frac = 0;
+            for (; i < to && frac < 2; i++) {
+                int c = buf.get(i) - '0';
+                if (c < 0 || c > 9) break;
+                cents = cents * 10 + c;
+                frac++;
+                digits++;
+            }
+            if (frac == 1) cents *= 10;
+            // "50.0", "12.50": trailing zeros past the cents do not change the value
+            while (i < to && buf.get(i) == '0') i++;
+        }
+        if (i != to || digits == 0) return slowAmount(buf, from, to);
+        long v = units * 100 + cents;
+        return neg ? -v : v;
+    }
+
+    private static long slowAmount(MappedByteBuffer buf, int from, int to) {
+        byte[] b = new byte[to - from];
+        for (int k = 0; k < b.length; k++) b[k] = buf.get(from + k);
+        String s = new String(b, StandardCharsets.US_ASCII);
+        try {
+            return Money.parse(s);
+        } catch (NumberFormatException ex) {
+            Metrics.parseError();
+            System.err.println("Skipping bad amount: " + s);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+Time-partitioned store: one segment file per year-month inside a directory.
+
+Layout (e.g. for directory "expenses.d"):
+- expenses.d/2026-01.txt   expenses dated 2026-01, Expense.serialize() per line
+- expenses.d/undated.txt   expenses whose date has no YYYY-MM prefix
+- expenses.d/manifest.txt  one line per segment: key|count|minId|maxId|bytes
+
+A monthly query opens a single segment. Inserts append to their own segment;
+updates and deletes rewrite only the segment(s) involved, using the id ranges
+in the manifest to skip segments that cannot hold the id.
+
+bytes is the segment's size as of the last manifest write (-1 if unknown, as
+in older manifests). Every write updates the manifest after the segment, so
+only a segment that grew past it can end in a torn append, and recover() reads
+the tail of those alone.
+*/
+public class PartitionedLedgerStore extends LedgerStore {
+    private static final String UNDATED = "undated";
+
+    private final File dir;
+    private final File manifestFile;
+    private final TreeMap<String, Segment> segments = new TreeMap<String, Segment>();
+    private long loadedStamp = -1;
+
+    // Manifest entry for one segment
+    private static class Segment {
+        long count;
+        long minId = Long.MAX_VALUE;
+        long maxId = 0;
+        long bytes = -1; // segment file size when the manifest was written, -1 if unknown
+
+        void include(long id) {
+            if (id < minId) minId = id;
+            if (id > maxId) maxId = id;
+        }
+
+        boolean mayContain(long id) {
+            return count > 0 && id >= minId && id <= maxId;
+        }
+    }
+
+    public PartitionedLedgerStore(File dir) {
+        this.dir = dir;
+        this.manifestFile = new File(dir, "manifest.txt");
+    }
+
+    // Open the partition directory, splitting an existing flat ledger into it the first time
+    public PartitionedLedgerStore(File dir, File legacyFile) {
+        this(dir);
+        if (!manifestFile.exists() && legacyFile.exists()) {
+            importFlat(new TextLedgerStore(legacyFile).loadAll());
+        }
+    }
+
+    @Override
+    public synchronized List<Expense> loadAll() {
+        readManifest();
+        List<Expense> out = new ArrayList<Expense>();
+        for (String key : segments.keySet()) {
+            out.addAll(readSegment(key));
+        }
+        return out;
+    }
+
+    // Streams segment by segment
+    @Override
+    public synchronized long forEach(ExpenseVisitor visitor) {
+        readManifest();
+        long rows = 0;
+        for (String key : segments.keySet()) {
+            rows += TextLedgerStore.forEach(segmentFile(key), visitor);
+        }
+        return rows;
+    }
+
+    @Override
+    public synchronized List<Expense> loadMonth(int year, int month) {
+        readManifest();
+        String key = year + "-" + (month < 10 ? "0" + month : String.valueOf(month));
+        if (!segments.containsKey(key)) return new ArrayList<Expense>();
+        return readSegment(key);
+    }
+
+    @Override
+    public synchronized long maxId() {
+        readManifest();
+        long max = 0;
+        for (Segment s : segments.values()) {
+            if (s.maxId > max) max = s.maxId;
+        }
+        return max;
+    }
+
+    @Override
+    public synchronized Expense find(long id) {
+        readManifest();
+        for (Map.Entry<String, Segment> en : segments.entrySet()) {
+            if (!en.getValue().mayContain(id)) continue;
+            for (Expense e : readSegment(en.getKey())) {
+                if (e.getId() == id) return e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void insert(Expense exp) {
+        readManifest();
+        String key = keyFor(exp);
+        appendToSegment(key, exp);
+        Segment s = segment(key);
+        s.count++;
+        s.include(exp.getId());
+        s.bytes = segmentFile(key).length();
+        writeManifest();
+    }
+
+    // Groups the batch by month: one append per touched segment and one manifest write
+    @Override
+    public synchronized void insertAll(List<Expense> list) {
+        if (list.isEmpty()) return;
+        readManifest();
+        ensureDir();
+        for (Map.Entry<String, List<Expense>> en : groupByKey(list).entrySet()) {
+            TextLedgerStore.appendAll(segmentFile(en.getKey()), en.getValue());
+            Segment s = segment(en.getKey());
+            for (Expense e : en.getValue()) {
+                s.count++;
+                s.include(e.getId());
+            }
+            s.bytes = segmentFile(en.getKey()).length();
+        }
+        writeManifest();
+    }
+
+    @Override
+    public synchronized Expense update(Expense exp) {
+        readManifest();
+        String newKey = keyFor(exp);
+        // most updates keep the date, so try the target month first
+        Expense prev = null;
+        String oldKey = null;
+        if (segments.containsKey(newKey) && segments.get(newKey).mayContain(exp.getId())) {
+            prev = findIn(newKey, exp.getId());
+            if (prev != null) oldKey = newKey;
+        }
+        if (prev == null) {
+            for (Map.Entry<String, Segment> en : segments.entrySet()) {
+                if (en.getKey().equals(newKey) || !en.getValue().mayContain(exp.getId())) continue;
+                prev = findIn(en.getKey(), exp.getId());
+                if (prev != null) {
+                    oldKey = en.getKey();
+                    break;
+                }
+            }
+        }
+        if (prev == null) return null;
+
+        List<Expense> old = readSegment(oldKey);
+        if (oldKey.equals(newKey)) {
+            for (int i = 0; i < old.size(); i++) {
+                if (old.get(i).getId() == exp.getId()) old.set(i, exp);
+            }
+            writeSegment(oldKey, old);
+        } else {
+            removeId(old, exp.getId());
+            writeSegment(oldKey, old);
+            segments.get(oldKey).count--;
+            appendToSegment(newKey, exp);
+            Segment s = segment(newKey);
+            s.count++;
+            s.include(exp.getId());
+            s.bytes = segmentFile(newKey).length();
+        }
+        writeManifest();
+        return prev;
+    }
+
+    @Override
+    public synchronized Expense delete(long id) {
+        readManifest();
+        for (Map.Entry<String, Segment> en : segments.entrySet()) {
+            if (!en.getValue().mayContain(id)) continue;
+            List<Expense> list = readSegment(en.getKey());
+            Expense removed = removeId(list, id);
+            if (removed != null) {
+                writeSegment(en.getKey(), list);
+                en.getValue().count--;
+                writeManifest();
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized long stamp() {
+        return fileStamp(manifestFile);
+    }
+
+    @Override
+    protected File sidecar(String ext) {
+        return new File(dir, "manifest" + ext);
+    }
+
+    // ========== Segments ==========
+    static String keyFor(Expense e) {
+        int day = e.getEpochDay();
+        if (day == Dates.INVALID) return keyFor(e.getDate());
+        StringBuilder sb = new StringBuilder(10);
+        Dates.appendTo(sb, day);
+        sb.setLength(7);
+        return sb.toString();
+    }
+
+    static String keyFor(String date) {
+        if (date == null || date.length() < 7 || date.charAt(4) != '-') return UNDATED;
+        for (int i = 0; i < 7; i++) {
+            if (i != 4 && !Character.isDigit(date.charAt(i))) return UNDATED;
+        }
+        return date.substring(0, 7);
+    }
+
+    private Segment segment(String key) {
+        Segment s = segments.get(key);
+        if (s == null) {
+            s = new Segment();
+            segments.put(key, s);
+        }
+        return s;
+    }
+
+    private File segmentFile(String key) {
+        return new File(dir, key + ".txt");
+    }
+
+    private Expense findIn(String key, long id) {
+        for (Expense e : readSegment(key)) {
+            if (e.getId() == id) return e;
+        }
+        return null;
+    }
+
+    private static Expense removeId(List<Expense> list, long id) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).getId() == id) return list.remove(i);
+        }
+        return null;
+    }
+
+    private List<Expense> readSegment(String key) {
+        return new TextLedgerStore(segmentFile(key)).loadAll();
+    }
+
+    private void writeSegment(String key, List<Expense> list) {
+        ensureDir();
+        new TextLedgerStore(segmentFile(key)).writeAll(list);
+        segment(key).bytes = segmentFile(key).length();
+    }
+
+    private void appendToSegment(String key, Expense exp) {
+        ensureDir();
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(segmentFile(key), true));
+            writer.write(exp.serialize());
+            writer.newLine();
+            writer.flush();
+            AtomicFile.sync(segmentFile(key));
+        } catch (IOException e) {
+            System.err.println("Error writing expenses: " + e.getMessage());
+        } finally {
+            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void importFlat(List<Expense> all) {
+        ensureDir();
+        Map<String, List<Expense>> byKey = groupByKey(all);
+        for (Map.Entry<String, List<Expense>> en : byKey.entrySet()) {
+            Segment s = segment(en.getKey());
+            for (Expense e : en.getValue()) {
+                s.count++;
+                s.include(e.getId());
+            }
+            writeSegment(en.getKey(), en.getValue());
+        }
+        writeManifest();
+    }
+
+    private static Map<String, List<Expense>> groupByKey(List<Expense> all) {
+        Map<String, List<Expense>> byKey = new TreeMap<String, List<Expense>>();
+        for (Expense e : all) {
+            String key = keyFor(e);
+            List<Expense> list = byKey.get(key);
+            if (list == null) {
+                list = new ArrayList<Expense>();
+                byKey.put(key, list);
+            }
+            list.add(e);
+        }
+        return byKey;
+    }
+
+    @Override
+    public synchronized void recover() {
+        readManifest();
+        for (Map.Entry<String, Segment> en : segments.entrySet()) {
+            File f = segmentFile(en.getKey());
+            long bytes = en.getValue().bytes;
+            if (bytes < 0 || f.length() > bytes) recoverTail(f, false);
+        }
+    }
+
+    // Segment counts in the manifest may then be too high, which only costs a needless segment read
+    @Override
+    public synchronized List<LedgerRecovery.Report> verify(boolean repair) {
+        readManifest();
+        File[] files = new File[segments.size()];
+        int i = 0;
+        for (String key : segments.keySet()) files[i++] = segmentFile(key);
+        return verifyFiles(files, new boolean[files.length], repair);
+    }
+
+    // ========== Manifest ==========
+    private void readManifest() {
+        long now = fileStamp(manifestFile);
+        if (now == loadedStamp) return;
+        segments.clear();
+        loadedStamp = now;
+        if (!manifestFile.exists()) return;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(manifestFile));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                String[] p = line.split("\\|", -1);
+                Segment s = segment(p[0]);
+                s.count = Long.parseLong(p[1]);
+                s.minId = Long.parseLong(p[2]);
+                s.maxId = Long.parseLong(p[3]);
+                s.bytes = p.length > 4 ? Long.parseLong(p[4]) : -1;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading partition manifest: " + e.getMessage());
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // Empty segments stay listed so their id range still counts towards maxId
+    private void writeManifest() {
+        ensureDir();
+        File tmp = AtomicFile.temp(manifestFile);
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(tmp, false));
+            for (Map.Entry<String, Segment> en : segments.entrySet()) {
+                Segment s = en.getValue();
+                writer.write(en.getKey() + "|" + s.count + "|" + s.minId + "|" + s.maxId + "|" + s.bytes);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing partition manifest: " + e.getMessage());
+            tmp.delete();
+            return;
+        } finally {
+            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+        }
+        moveInto(tmp, manifestFile);
+        loadedStamp = fileStamp(manifestFile);
+    }
+
+    private void ensureDir() {
+        if (!dir.exists() && !dir.mkdirs()) {
+            System.err.println("Error creating partition directory " + dir);
+        }
+    }
+
+    private static void moveInto(File tmp, File target) {
+        try {
+            AtomicFile.replace(tmp, target);
+        } catch (IOException e) {
+            System.err.println("Error replacing " + target + ": " + e.getMessage());
+        }
+    }
+}
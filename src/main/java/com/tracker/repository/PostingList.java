@@ -0,0 +1,117 @@
+package main.java.com.tracker.repository;
+
+import java.util.Arrays;
+
+/*
+Sorted set of expense ids backed by a long array.
+
+Used as the value side of the secondary indexes: membership and updates are
+binary searches, and two lists are combined with a linear merge (or binary
+searches when one list is much shorter than the other).
+*/
+public class PostingList {
+    private long[] ids;
+    private int size;
+
+    public PostingList() {
+        this(4);
+    }
+
+    public PostingList(int capacity) {
+        ids = new long[Math.max(capacity, 4)];
+    }
+
+    // Wrap an already sorted, duplicate-free array
+    public static PostingList of(long[] sorted, int size) {
+        PostingList p = new PostingList(0);
+        p.ids = sorted;
+        p.size = size;
+        return p;
+    }
+
+    public int size() { return size; }
+
+    public long get(int i) { return ids[i]; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public boolean contains(long id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    public void add(long id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos >= 0) return;
+        pos = -pos - 1;
+        if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+        System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        ids[pos] = id;
+        size++;
+    }
+
+    public void remove(long id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos < 0) return;
+        System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+        size--;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    public static PostingList intersect(PostingList a, PostingList b) {
+        if (a.size > b.size) {
+            PostingList t = a;
+            a = b;
+            b = t;
+        }
+        PostingList out = new PostingList(a.size);
+        if (a.size * 16 < b.size) {
+            // much shorter list: binary search each of its ids instead of walking both
+            int from = 0;
+            for (int i = 0; i < a.size; i++) {
+                int pos = Arrays.binarySearch(b.ids, from, b.size, a.ids[i]);
+                if (pos >= 0) out.ids[out.size++] = a.ids[i];
+                from = pos >= 0 ? pos + 1 : -pos - 1;
+            }
+            return out;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            long x = a.ids[i];
+            long y = b.ids[j];
+            if (x == y) {
+                out.ids[out.size++] = x;
+                i++;
+                j++;
+            } else if (x < y) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return out;
+    }
+
+    public static PostingList union(PostingList a, PostingList b) {
+        PostingList out = new PostingList(a.size + b.size);
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            long next;
+            if (j >= b.size || (i < a.size && a.ids[i] < b.ids[j])) {
+                next = a.ids[i++];
+            } else if (i >= a.size || b.ids[j] < a.ids[i]) {
+                next = b.ids[j++];
+            } else {
+                next = a.ids[i];
+                i++;
+                j++;
+            }
+            out.ids[out.size++] = next;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,233 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.metrics.Metrics;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import main.java.com.tracker.model.RecurringRule;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+Simple file-based repository for RecurringRule (e.g. "recurring.txt" next to budgets.txt).
+File format: each line = RecurringRule.serialize(), in id order.
+Lines that do not parse are kept in the file as they are (after the rules) and
+otherwise ignored; their leading id stays taken, so add() does not reuse it.
+
+The rules are held in memory and reloaded only when the file's size/mtime
+changes (as in BudgetRepository). Every change holds a LedgerLock on
+"<file>.lock" and rewrites the file through AtomicFile.
+
+materialize() books every occurrence after each rule's "through" day up to a
+given day, through ExpenseRepository.addAll: rules are walked in id order and
+their occurrences collected until a batch is full, then the batch is written
+in one store write and the rules it covered are saved with through = until.
+So a rerun, or a run with an earlier until, books nothing twice. The lock is
+held for the whole run, so two runs do not both book the same occurrences; a
+crash between a batch write and the rules write after it books that batch
+again on the next run.
+*/
+public class RecurringRepository {
+    private final File file;
+    private final LedgerLock lock;
+    private List<RecurringRule> rules = new ArrayList<RecurringRule>();
+    private final List<String> kept = new ArrayList<String>(); // lines that are not a valid rule
+    private long keptMaxId = 0; // highest leading id among kept lines
+    private long stamp = -1;    // file stamp the rules were loaded from / written as
+
+    // What one materialize() run booked
+    public static class Result {
+        public int rules;          // rules with at least one occurrence
+        public long expenses;      // expenses added
+        public int batches;        // store writes
+        public final Set<Integer> months = new TreeSet<Integer>(); // year * 100 + month
+    }
+
+    public RecurringRepository(String filename) {
+        this.file = new File(filename);
+        this.lock = LedgerLock.forFile(new File(filename + ".lock"));
+    }
+
+    public synchronized List<RecurringRule> findAll() {
+        ensureFresh();
+        return new ArrayList<RecurringRule>(rules);
+    }
+
+    // Add a rule with the next free id; returns that id
+    public long add(RecurringRule r) {
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureFresh();
+                long id = Math.max(rules.isEmpty() ? 0 : rules.get(rules.size() - 1).getId(), keptMaxId) + 1;
+                r.setId(id);
+                rules.add(r);
+                writeAll();
+                return id;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Remove a rule; expenses it already booked stay in the ledger
+    public boolean delete(long id) {
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureFresh();
+                for (int i = 0; i < rules.size(); i++) {
+                    if (rules.get(i).getId() == id) {
+                        rules.remove(i);
+                        writeAll();
+                        return true;
+                    }
+                }
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Book all occurrences up to and including day `until`, batchSize expenses (or one rule) per write
+    public Result materialize(ExpenseRepository expenses, int until, int batchSize) {
+        long t = Metrics.start();
+        Result res = new Result();
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureFresh();
+                List<Expense> batch = new ArrayList<Expense>();
+                int covered = 0; // rules[0, covered) are in a written batch
+                for (int i = 0; i < rules.size(); i++) {
+                    RecurringRule r = rules.get(i);
+                    int from = r.getThrough() == Dates.INVALID ? r.getStart() : r.getThrough() + 1;
+                    int before = batch.size();
+                    for (int d = r.next(from, until); d != Dates.INVALID; d = r.next(d + 1, until)) {
+                        batch.add(r.occurrence(d));
+                        res.months.add(Dates.year(d) * 100 + Dates.month(d));
+                    }
+                    if (batch.size() > before) res.rules++;
+                    if (batch.size() >= batchSize) {
+                        flush(expenses, batch, covered, i + 1, until, res);
+                        covered = i + 1;
+                        batch = new ArrayList<Expense>();
+                    }
+                }
+                flush(expenses, batch, covered, rules.size(), until, res);
+            }
+        } finally {
+            lock.unlock();
+            Metrics.record("recurring.materialize", t);
+        }
+        return res;
+    }
+
+    // Write one batch, then record that rules[from, to) are booked through `until`
+    private void flush(ExpenseRepository expenses, List<Expense> batch, int from, int to, int until, Result res) {
+        if (!batch.isEmpty()) {
+            expenses.addAll(batch);
+            res.expenses += batch.size();
+            res.batches++;
+        }
+        boolean changed = false;
+        for (int i = from; i < to; i++) {
+            RecurringRule r = rules.get(i);
+            if (r.getThrough() == Dates.INVALID || r.getThrough() < until) {
+                r.setThrough(until);
+                changed = true;
+            }
+        }
+        if (changed) writeAll();
+    }
+
+    private static long stampOf(File f) {
+        return f.exists() ? f.lastModified() * 31L + f.length() : 0;
+    }
+
+    // ========== File ==========
+    // Reload the rules if the file changed since they were loaded or written
+    private void ensureFresh() {
+        long now = stampOf(file);
+        if (now == stamp) return;
+        load();
+        stamp = now;
+    }
+
+    private void load() {
+        rules = new ArrayList<RecurringRule>();
+        kept.clear();
+        keptMaxId = 0;
+        if (!file.exists()) return;
+        long t = Metrics.start();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                try {
+                    rules.add(RecurringRule.deserialize(line));
+                } catch (RuntimeException e) {
+                    System.err.println("Ignoring recurring rule (kept in " + file + "): " + e.getMessage());
+                    kept.add(line);
+                    keptMaxId = Math.max(keptMaxId, leadingId(line));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading recurring rules: " + e.getMessage());
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+        Metrics.rowsRead(rules.size());
+        Metrics.bytesRead(file.length());
+        Metrics.record("recurring.load", t);
+    }
+
+    // The id before the first '|', 0 if there is none
+    private static long leadingId(String line) {
+        int bar = line.indexOf('|');
+        try {
+            return Long.parseLong(bar < 0 ? line : line.substring(0, bar));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void writeAll() {
+        File tmp = AtomicFile.temp(file);
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(tmp, false), 1 << 16);
+            for (RecurringRule r : rules) {
+                writer.write(r.serialize());
+                writer.newLine();
+            }
+            for (String line : kept) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing recurring rules: " + e.getMessage());
+            tmp.delete();
+            stamp = -1;
+            return;
+        } finally {
+            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+        }
+        try {
+            AtomicFile.replace(tmp, file);
+        } catch (IOException e) {
+            System.err.println("Error writing recurring rules: " + e.getMessage());
+            stamp = -1;
+            return;
+        }
+        stamp = stampOf(file);
+        Metrics.rowsWritten(rules.size());
+        Metrics.bytesWritten(file.length());
+    }
+}
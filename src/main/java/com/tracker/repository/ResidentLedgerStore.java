@@ -0,0 +1,173 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Expense;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Long-lived in-memory view over another store.
+
+The ledger is loaded once into an id -> Expense map (kept in file order).
+Writes go to the backing store first and then to the map, so memory and disk
+stay in step. Before every operation the backing store's stamp (file size and
+mtime) is compared with the one seen after our last load/write; if another
+process changed the files the map is reloaded.
+
+Lists returned by loadAll() share the cached objects: treat them as read-only.
+find() hands out a copy so callers can edit it before calling update().
+*/
+public class ResidentLedgerStore extends LedgerStore {
+    private final LedgerStore backing;
+    private Map<Long, Expense> byId;
+    private long maxId;
+    private long seenStamp;
+
+    public ResidentLedgerStore(LedgerStore backing) {
+        this.backing = backing;
+    }
+
+    public LedgerStore getBacking() { return backing; }
+
+    @Override
+    public synchronized List<Expense> loadAll() {
+        ensureFresh();
+        return new ArrayList<Expense>(byId.values());
+    }
+
+    @Override
+    public synchronized long forEach(ExpenseVisitor visitor) {
+        ensureFresh();
+        for (Expense e : byId.values()) visitor.expense(e);
+        return byId.size();
+    }
+
+    @Override
+    public boolean idOrdered() {
+        return backing.idOrdered();
+    }
+
+    @Override
+    public boolean inIdOrder() {
+        return backing.inIdOrder();
+    }
+
+    @Override
+    public synchronized long maxId() {
+        ensureFresh();
+        return maxId;
+    }
+
+    @Override
+    public synchronized Expense find(long id) {
+        ensureFresh();
+        Expense e = byId.get(id);
+        return e == null ? null : e.copy();
+    }
+
+    @Override
+    public synchronized List<Expense> loadIds(PostingList ids) {
+        ensureFresh();
+        List<Expense> out = new ArrayList<Expense>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Expense e = byId.get(ids.get(i));
+            if (e != null) out.add(e);
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized void insert(Expense exp) {
+        ensureFresh();
+        Expense stored = exp.copy();
+        backing.insert(stored);
+        byId.put(stored.getId(), stored);
+        if (stored.getId() > maxId) maxId = stored.getId();
+        seenStamp = backing.stamp();
+    }
+
+    @Override
+    public synchronized void insertAll(List<Expense> list) {
+        ensureFresh();
+        List<Expense> stored = new ArrayList<Expense>(list.size());
+        for (Expense e : list) stored.add(e.copy());
+        backing.insertAll(stored);
+        for (Expense e : stored) {
+            byId.put(e.getId(), e);
+            if (e.getId() > maxId) maxId = e.getId();
+        }
+        seenStamp = backing.stamp();
+    }
+
+    @Override
+    public synchronized Expense update(Expense exp) {
+        ensureFresh();
+        Expense prev = byId.get(exp.getId());
+        if (prev == null) return null;
+        Expense stored = exp.copy();
+        backing.writeUpdate(stored);
+        byId.put(stored.getId(), stored);
+        seenStamp = backing.stamp();
+        return prev;
+    }
+
+    @Override
+    public synchronized Expense delete(long id) {
+        ensureFresh();
+        Expense prev = byId.get(id);
+        if (prev == null) return null;
+        backing.writeDelete(id);
+        byId.remove(id);
+        seenStamp = backing.stamp();
+        return prev;
+    }
+
+    @Override
+    public synchronized void recover() {
+        backing.recover();
+        invalidate();
+    }
+
+    @Override
+    public synchronized List<LedgerRecovery.Report> verify(boolean repair) {
+        List<LedgerRecovery.Report> out = backing.verify(repair);
+        if (repair) invalidate();
+        return out;
+    }
+
+    @Override
+    public synchronized long stamp() {
+        return backing.stamp();
+    }
+
+    @Override
+    public LedgerLock writeLock() {
+        return backing.writeLock();
+    }
+
+    @Override
+    protected File sidecar(String ext) {
+        return backing.sidecar(ext);
+    }
+
+    // Drop the cache; the next call reloads from the backing store
+    public synchronized void invalidate() {
+        byId = null;
+    }
+
+    private void ensureFresh() {
+        long now = backing.stamp();
+        if (byId != null && now == seenStamp) return;
+        Map<Long, Expense> fresh = new LinkedHashMap<Long, Expense>();
+        long max = 0;
+        for (Expense e : backing.loadAll()) {
+            fresh.put(e.getId(), e);
+            if (e.getId() > max) max = e.getId();
+        }
+        byId = fresh;
+        maxId = max;
+        seenStamp = now;
+    }
+}
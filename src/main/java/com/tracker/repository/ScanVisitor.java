@@ -0,0 +1,13 @@
+package main.java.com.tracker.repository;
+
+/*
+Receives one call per expense during a LedgerScanner pass.
+
+Only the fields aggregations need are passed, as primitives:
+- epochDay: see Dates, Dates.INVALID when the stored date is not YYYY-MM-DD
+- amount in cents
+- category: code from the scan's CategoryTable (CategoryTable.name(code) for the text)
+*/
+public interface ScanVisitor {
+    void row(int epochDay, long amount, int category);
+}
@@ -0,0 +1,492 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.metrics.Metrics;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/*
+Full-text index over expense descriptions and categories.
+
+- term -> sorted id posting list, terms are the lower-cased runs of letters and
+  digits in the description and the category; the terms are kept sorted so a
+  prefix ("cof*") is a range of the map
+- "=" + category (lower-cased) -> ids, for the exact category filter
+- id -> epoch day, for date filters and ranking by recency: two parallel arrays
+  sorted by id (appends go to the end), so any id fits and memory follows the
+  number of dated rows, not the largest id
+
+Query syntax: words are ANDed, "OR" (or "|") separates alternatives, and a word
+ending in '*' matches every term starting with it, e.g. "coffee OR tea*".
+search() answers from memory: posting list merges plus one pass over the
+matching ids that keeps the newest `limit` of them.
+
+The index is built on first use and then follows ExpenseRepository mutations as
+a LedgerListener (before that, mutations cost nothing). Files, e.g. "expenses.fts":
+- expenses.fts       binary snapshot: magic, ledger stamp, (long id, int day) pairs, term lists
+- expenses.fts.log   journal since the snapshot, one change per line:
+                     +|stamp|id|day|category|description  or  -|...
+As with SecondaryIndex the journal is folded into the snapshot past
+SecondaryIndex.JOURNAL_LIMIT bytes, and a ledger stamp mismatch rebuilds the index.
+*/
+public class SearchIndex implements LedgerListener {
+    private static final int MAGIC = 0x45584632; // "EXF2" (long ids in the day table)
+    private static final char CATEGORY_KEY = '=';
+
+    private final File file;
+    private final File journal;
+    private final ExpenseRepository repo;
+    private final TreeMap<String, PostingList> terms = new TreeMap<String, PostingList>();
+    private long[] datedIds = new long[0]; // ascending, datedCount in use
+    private int[] datedDays = new int[0];  // day of datedIds[i], Dates.INVALID once removed
+    private int datedCount = 0;
+    private long ledgerStamp;
+    private boolean loaded = false;
+
+    // Ids ranked newest first; total is the number of matches before the limit
+    public static class Result {
+        public final long[] ids;
+        public final int total;
+
+        Result(long[] ids, int total) {
+            this.ids = ids;
+            this.total = total;
+        }
+    }
+
+    public SearchIndex(String filename, ExpenseRepository repo) {
+        this.file = new File(filename);
+        this.journal = new File(filename + ".log");
+        this.repo = repo;
+        repo.addListener(this);
+    }
+
+    // Newest `limit` expenses matching the query, optionally within a category and [fromDay, toDay)
+    public synchronized Result search(String query, String category, int fromDay, int toDay, int limit) {
+        ensureFresh();
+        long t = Metrics.start();
+        PostingList matches = evaluate(query);
+        if (category != null) {
+            PostingList cat = terms.get(CATEGORY_KEY + SecondaryIndex.fold(category));
+            matches = cat == null ? new PostingList() : PostingList.intersect(matches, cat);
+        }
+        Result r = newest(matches, fromDay, toDay, limit);
+        Metrics.record("search.query", t);
+        return r;
+    }
+
+    // OR of AND groups; an empty query matches nothing
+    private PostingList evaluate(String query) {
+        PostingList result = new PostingList();
+        PostingList group = null;
+        boolean any = false;
+        for (String word : query.trim().split("\\s+")) {
+            if (word.isEmpty()) continue;
+            if ("OR".equals(word) || "|".equals(word)) {
+                if (group != null) result = PostingList.union(result, group);
+                group = null;
+                any = false;
+                continue;
+            }
+            boolean prefix = word.endsWith("*");
+            List<String> words = tokenize(prefix ? word.substring(0, word.length() - 1) : word);
+            for (int i = 0; i < words.size(); i++) {
+                // only the last token of a word like "wi-fi*" is a prefix
+                PostingList p = prefix && i == words.size() - 1 ? prefixList(words.get(i)) : exact(words.get(i));
+                group = any ? PostingList.intersect(group, p) : p;
+                any = true;
+            }
+        }
+        if (group != null) result = PostingList.union(result, group);
+        return result;
+    }
+
+    private PostingList exact(String term) {
+        PostingList p = terms.get(term);
+        return p == null ? new PostingList() : p;
+    }
+
+    // Union of every term starting with prefix: concatenate, sort once, drop duplicates
+    private PostingList prefixList(String prefix) {
+        SortedMap<String, PostingList> range = terms.subMap(prefix, prefix + Character.MAX_VALUE);
+        if (range.size() == 1) return range.values().iterator().next();
+        int n = 0;
+        for (PostingList p : range.values()) n += p.size();
+        long[] ids = new long[n];
+        int k = 0;
+        for (PostingList p : range.values()) {
+            for (int i = 0; i < p.size(); i++) ids[k++] = p.get(i);
+        }
+        Arrays.sort(ids);
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (size == 0 || ids[size - 1] != ids[i]) ids[size++] = ids[i];
+        }
+        return PostingList.of(ids, size);
+    }
+
+    // One pass over the matches keeping the newest `limit` (by date, then id) in a small sorted array
+    private Result newest(PostingList matches, int fromDay, int toDay, int limit) {
+        long[] topIds = new long[Math.max(limit, 0)];
+        int[] topDays = new int[topIds.length];
+        int kept = 0;
+        int total = 0;
+        int from = 0; // matches ascend too, so each lookup starts where the last one ended
+        for (int i = 0; i < matches.size(); i++) {
+            long id = matches.get(i);
+            int at = Arrays.binarySearch(datedIds, from, datedCount, id);
+            from = at < 0 ? -at - 1 : at;
+            int day = at < 0 ? Dates.INVALID : datedDays[at];
+            if (fromDay != Dates.INVALID && (day == Dates.INVALID || day < fromDay)) continue;
+            if (toDay != Dates.INVALID && (day == Dates.INVALID || day >= toDay)) continue;
+            total++;
+            if (topIds.length == 0) continue;
+            // ids ascend, so on equal days a later id is newer
+            if (kept == topIds.length && day < topDays[kept - 1]) continue;
+            int pos = kept == topIds.length ? kept - 1 : kept++;
+            while (pos > 0 && topDays[pos - 1] <= day) {
+                topDays[pos] = topDays[pos - 1];
+                topIds[pos] = topIds[pos - 1];
+                pos--;
+            }
+            topDays[pos] = day;
+            topIds[pos] = id;
+        }
+        return new Result(Arrays.copyOf(topIds, kept), total);
+    }
+
+    // Record the day of an id (Dates.INVALID to clear it), keeping datedIds sorted
+    private void setDay(long id, int day) {
+        int at = datedCount > 0 && datedIds[datedCount - 1] < id ? -datedCount - 1
+                : Arrays.binarySearch(datedIds, 0, datedCount, id);
+        if (at >= 0) {
+            datedDays[at] = day;
+            return;
+        }
+        if (day == Dates.INVALID) return;
+        at = -at - 1;
+        if (datedCount == datedIds.length) {
+            int n = Math.max(16, datedCount * 2);
+            datedIds = Arrays.copyOf(datedIds, n);
+            datedDays = Arrays.copyOf(datedDays, n);
+        }
+        System.arraycopy(datedIds, at, datedIds, at + 1, datedCount - at);
+        System.arraycopy(datedDays, at, datedDays, at + 1, datedCount - at);
+        datedIds[at] = id;
+        datedDays[at] = day;
+        datedCount++;
+    }
+
+    private void clearDays() {
+        datedIds = new long[0];
+        datedDays = new int[0];
+        datedCount = 0;
+    }
+
+    // Lower-cased runs of letters and digits
+    static List<String> tokenize(String text) {
+        List<String> out = new ArrayList<String>();
+        if (text == null) return out;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) start = i;
+            if (!word && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    // ========== Maintenance ==========
+    // Before the index is built mutations cost nothing; while it is on disk but not in memory
+    // (a one-shot CLI run) a change is only appended to the journal
+    @Override
+    public synchronized void onChange(Expense before, Expense after, long stampBefore, long stampAfter) {
+        if (!loaded && !file.exists()) return;
+        StringBuilder records = new StringBuilder();
+        if (before != null) record(records, '-', stampAfter, before);
+        if (after != null) record(records, '+', stampAfter, after);
+        if (!loaded) {
+            journalOnly(records.toString(), stampBefore);
+            return;
+        }
+        if (ledgerStamp != stampBefore) {
+            rebuild();
+            return;
+        }
+        if (before != null) remove(before);
+        if (after != null) put(after);
+        ledgerStamp = stampAfter;
+        appendJournal(records.toString());
+        if (journal.length() > SecondaryIndex.JOURNAL_LIMIT) writeSnapshot();
+    }
+
+    @Override
+    public synchronized void onAddAll(List<Expense> added, long stampBefore, long stampAfter) {
+        if (!loaded && !file.exists()) return;
+        StringBuilder records = new StringBuilder();
+        for (Expense e : added) {
+            if (records.length() > SecondaryIndex.JOURNAL_LIMIT) break;
+            record(records, '+', stampAfter, e);
+        }
+        boolean small = records.length() <= SecondaryIndex.JOURNAL_LIMIT;
+        if (!loaded && small) {
+            journalOnly(records.toString(), stampBefore);
+            return;
+        }
+        if (!loaded) load();
+        if (ledgerStamp != stampBefore) {
+            rebuild();
+            return;
+        }
+        for (Expense e : added) put(e);
+        ledgerStamp = stampAfter;
+        if (!small) writeSnapshot();
+        else appendJournal(records.toString());
+        if (journal.length() > SecondaryIndex.JOURNAL_LIMIT) writeSnapshot();
+    }
+
+    // Append without loading; a stale index on disk is dropped and rebuilt by the next search
+    private void journalOnly(String records, long stampBefore) {
+        if (persistedStamp() != stampBefore) {
+            file.delete();
+            journal.delete();
+            return;
+        }
+        appendJournal(records);
+        if (journal.length() > SecondaryIndex.JOURNAL_LIMIT) {
+            load();
+            writeSnapshot();
+        }
+    }
+
+    // Recompute from the ledger with one streaming pass
+    public synchronized void rebuild() {
+        long t = Metrics.start();
+        terms.clear();
+        clearDays();
+        long stamp = repo.stamp();
+        repo.forEach(new ExpenseVisitor() {
+            public void expense(Expense e) {
+                put(e);
+            }
+        });
+        ledgerStamp = stamp;
+        loaded = true;
+        writeSnapshot();
+        Metrics.record("search.rebuild", t);
+    }
+
+    private void ensureFresh() {
+        if (!loaded) load();
+        if (ledgerStamp != repo.stamp()) rebuild();
+    }
+
+    private void put(Expense e) {
+        put(e.getId(), e.getEpochDay(), e.getCategory(), e.getDescription());
+    }
+
+    private void put(long id, int day, String category, String description) {
+        setDay(id, day);
+        add(CATEGORY_KEY + SecondaryIndex.fold(category), id);
+        for (String term : tokenize(category)) add(term, id);
+        for (String term : tokenize(description)) add(term, id);
+    }
+
+    private void add(String term, long id) {
+        PostingList p = terms.get(term);
+        if (p == null) {
+            p = new PostingList();
+            terms.put(term, p);
+        }
+        p.add(id);
+    }
+
+    private void remove(Expense e) {
+        remove(e.getId(), e.getCategory(), e.getDescription());
+    }
+
+    private void remove(long id, String category, String description) {
+        setDay(id, Dates.INVALID);
+        drop(CATEGORY_KEY + SecondaryIndex.fold(category), id);
+        for (String term : tokenize(category)) drop(term, id);
+        for (String term : tokenize(description)) drop(term, id);
+    }
+
+    private void drop(String term, long id) {
+        PostingList p = terms.get(term);
+        if (p == null) return;
+        p.remove(id);
+        if (p.isEmpty()) terms.remove(term);
+    }
+
+    private static void record(StringBuilder sb, char op, long stamp, Expense e) {
+        sb.append(op).append('|').append(stamp).append('|').append(e.getId()).append('|')
+          .append(e.getEpochDay()).append('|')
+          .append(e.getCategory() == null ? "" : e.getCategory()).append('|')
+          .append(e.getDescription() == null ? "" : e.getDescription()).append('\n');
+    }
+
+    // ========== Persistence ==========
+    // Ledger stamp the files on disk describe: the journal's last record, else the snapshot header
+    private long persistedStamp() {
+        long stamp = Long.MIN_VALUE;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 16));
+            if (in.readInt() == MAGIC) stamp = in.readLong();
+        } catch (IOException e) {
+            return Long.MIN_VALUE;
+        } finally {
+            try { if (in != null) in.close(); } catch (IOException ignored) {}
+        }
+        if (!journal.exists()) return stamp;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(journal));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int a = line.indexOf('|');
+                int b = a < 0 ? -1 : line.indexOf('|', a + 1);
+                if (b > a) stamp = Long.parseLong(line.substring(a + 1, b));
+            }
+        } catch (IOException e) {
+            return Long.MIN_VALUE;
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+        return stamp;
+    }
+
+    private void load() {
+        loaded = true;
+        terms.clear();
+        clearDays();
+        ledgerStamp = Long.MIN_VALUE;
+        if (!file.exists()) return;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            if (in.readInt() != MAGIC) throw new IOException("not a search index file");
+            long stamp = in.readLong();
+            int dated = in.readInt();
+            if (dated < 0) throw new IOException("bad search index header");
+            // grown as pairs arrive, so a damaged count cannot allocate more than the file holds
+            for (int i = 0; i < dated; i++) {
+                long id = in.readLong();
+                setDay(id, in.readInt());
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String term = in.readUTF();
+                int size = in.readInt();
+                if (size < 0 || size > file.length() / 8) throw new IOException("bad search index posting list");
+                long[] ids = new long[size];
+                for (int k = 0; k < size; k++) ids[k] = in.readLong();
+                terms.put(term, PostingList.of(ids, size));
+            }
+            ledgerStamp = stamp;
+        } catch (IOException e) {
+            // missing pieces: the stamp mismatch forces a rebuild
+            ledgerStamp = Long.MIN_VALUE;
+            return;
+        } catch (RuntimeException e) {
+            ledgerStamp = Long.MIN_VALUE;
+            return;
+        } finally {
+            try { if (in != null) in.close(); } catch (IOException ignored) {}
+        }
+        replayJournal();
+    }
+
+    private void replayJournal() {
+        if (!journal.exists()) return;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(journal));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] p = line.split("\\|", 6);
+                long stamp = Long.parseLong(p[1]);
+                long id = Long.parseLong(p[2]);
+                if ("+".equals(p[0])) put(id, Integer.parseInt(p[3]), p[4], p[5]);
+                else remove(id, p[4], p[5]);
+                ledgerStamp = stamp;
+            }
+        } catch (IOException e) {
+            ledgerStamp = Long.MIN_VALUE;
+        } catch (RuntimeException e) {
+            // torn journal line
+            ledgerStamp = Long.MIN_VALUE;
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void writeSnapshot() {
+        File tmp = AtomicFile.temp(file);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp, false), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeLong(ledgerStamp);
+            int dated = 0;
+            for (int i = 0; i < datedCount; i++) if (datedDays[i] != Dates.INVALID) dated++;
+            out.writeInt(dated);
+            for (int i = 0; i < datedCount; i++) {
+                if (datedDays[i] == Dates.INVALID) continue;
+                out.writeLong(datedIds[i]);
+                out.writeInt(datedDays[i]);
+            }
+            out.writeInt(terms.size());
+            for (Map.Entry<String, PostingList> en : terms.entrySet()) {
+                out.writeUTF(en.getKey());
+                PostingList p = en.getValue();
+                out.writeInt(p.size());
+                for (int i = 0; i < p.size(); i++) out.writeLong(p.get(i));
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing search index: " + e.getMessage());
+            tmp.delete();
+            return;
+        } finally {
+            try { if (out != null) out.close(); } catch (IOException ignored) {}
+        }
+        try {
+            AtomicFile.replace(tmp, file);
+            if (journal.exists() && !journal.delete()) {
+                System.err.println("Warning: could not remove " + journal.getName());
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing search index: " + e.getMessage());
+        }
+    }
+
+    private void appendJournal(String records) {
+        if (!file.exists()) {
+            writeSnapshot();
+            return;
+        }
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(journal, true));
+            writer.write(records);
+        } catch (IOException e) {
+            System.err.println("Error writing search index journal: " + e.getMessage());
+        } finally {
+            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Categories;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/*
+Persistent secondary indexes over the ledger:
+- category (lower-cased) -> sorted id posting list
+- date (epoch day, sorted) -> ids, for range scans
+
+Filters such as category + month are answered by intersecting the two lists,
+without reading or re-parsing every row. The index follows ExpenseRepository
+mutations as a LedgerListener.
+
+Files (e.g. "expenses.idx"):
+- expenses.idx       binary snapshot: magic, ledger stamp, category lists, date lists
+- expenses.idx.log   journal of changes since the snapshot, one per line:
+                     +|stamp|id|day|category  or  -|stamp|id|day|category
+The journal is folded into the snapshot once it passes JOURNAL_LIMIT bytes.
+If the ledger stamp does not match (ledger changed elsewhere) the index is rebuilt.
+*/
+public class SecondaryIndex implements LedgerListener {
+    private static final int MAGIC = 0x45584958; // "EXIX"
+    static final long JOURNAL_LIMIT = 256L * 1024;
+
+    private final File file;
+    private final File journal;
+    private final ExpenseRepository repo;
+    private final TreeMap<String, PostingList> byCategory = new TreeMap<String, PostingList>();
+    private final TreeMap<Integer, PostingList> byDay = new TreeMap<Integer, PostingList>();
+    private long ledgerStamp;
+    private boolean loaded = false;
+
+    public SecondaryIndex(String filename, ExpenseRepository repo) {
+        this.file = new File(filename);
+        this.journal = new File(filename + ".log");
+        this.repo = repo;
+        repo.addListener(this);
+    }
+
+    // Ids whose category equals the given one (case-insensitive)
+    public synchronized PostingList byCategory(String category) {
+        ensureFresh();
+        PostingList p = byCategory.get(fold(category));
+        return p == null ? new PostingList() : PostingList.of(p.toArray(), p.size());
+    }
+
+    // Ids dated in [fromDay, toDay) (epoch days)
+    public synchronized PostingList byDateRange(int fromDay, int toDay) {
+        ensureFresh();
+        SortedMap<Integer, PostingList> range = byDay.subMap(fromDay, toDay);
+        int n = 0;
+        for (PostingList p : range.values()) n += p.size();
+        long[] ids = new long[n];
+        int k = 0;
+        for (PostingList p : range.values()) {
+            for (int i = 0; i < p.size(); i++) ids[k++] = p.get(i);
+        }
+        Arrays.sort(ids);
+        return PostingList.of(ids, n);
+    }
+
+    // Category and/or date range (pass null category or Dates.INVALID fromDay to skip a filter)
+    public synchronized PostingList query(String category, int fromDay, int toDay) {
+        PostingList cat = category == null ? null : byCategory(category);
+        PostingList dates = fromDay == Dates.INVALID ? null : byDateRange(fromDay, toDay);
+        if (cat == null && dates == null) return all();
+        if (cat == null) return dates;
+        if (dates == null) return cat;
+        return PostingList.intersect(cat, dates);
+    }
+
+    private PostingList all() {
+        PostingList out = new PostingList();
+        for (PostingList p : byCategory.values()) out = PostingList.union(out, p);
+        return out;
+    }
+
+    @Override
+    public synchronized void onChange(Expense before, Expense after, long stampBefore, long stampAfter) {
+        if (!loaded) load();
+        if (ledgerStamp != stampBefore) {
+            rebuild();
+            return;
+        }
+        StringBuilder records = new StringBuilder();
+        if (before != null) {
+            remove(before.getId(), before.getEpochDay(), fold(before));
+            record(records, '-', stampAfter, before);
+        }
+        if (after != null) {
+            put(after.getId(), after.getEpochDay(), fold(after));
+            record(records, '+', stampAfter, after);
+        }
+        ledgerStamp = stampAfter;
+        appendJournal(records.toString());
+        if (journal.length() > JOURNAL_LIMIT) writeSnapshot();
+    }
+
+    @Override
+    public synchronized void onAddAll(List<Expense> added, long stampBefore, long stampAfter) {
+        if (!loaded) load();
+        if (ledgerStamp != stampBefore) {
+            rebuild();
+            return;
+        }
+        // ids are new and ascending, so the posting lists grow at their tail
+        StringBuilder records = new StringBuilder();
+        for (Expense e : added) {
+            put(e.getId(), e.getEpochDay(), fold(e));
+            if (records.length() <= JOURNAL_LIMIT) record(records, '+', stampAfter, e);
+        }
+        ledgerStamp = stampAfter;
+        if (records.length() > JOURNAL_LIMIT) writeSnapshot();
+        else appendJournal(records.toString());
+        if (journal.length() > JOURNAL_LIMIT) writeSnapshot();
+    }
+
+    // Recompute from the ledger with one pass
+    public synchronized void rebuild() {
+        byCategory.clear();
+        byDay.clear();
+        long stamp = repo.stamp();
+        for (Expense e : repo.findAll()) {
+            put(e.getId(), e.getEpochDay(), fold(e));
+        }
+        ledgerStamp = stamp;
+        loaded = true;
+        writeSnapshot();
+    }
+
+    private void ensureFresh() {
+        if (!loaded) load();
+        if (ledgerStamp != repo.stamp()) rebuild();
+    }
+
+    // Lower-cased category from the dictionary, no per-row toLowerCase
+    static String fold(Expense e) {
+        return Categories.name(Categories.folded(e.getCategoryCode()));
+    }
+
+    static String fold(String category) {
+        return category == null ? "" : category.toLowerCase(Locale.ROOT);
+    }
+
+    private void put(long id, int day, String cat) {
+        PostingList p = byCategory.get(cat);
+        if (p == null) {
+            p = new PostingList();
+            byCategory.put(cat, p);
+        }
+        p.add(id);
+        PostingList d = byDay.get(day);
+        if (d == null) {
+            d = new PostingList();
+            byDay.put(day, d);
+        }
+        d.add(id);
+    }
+
+    private void remove(long id, int day, String cat) {
+        PostingList p = byCategory.get(cat);
+        if (p != null) {
+            p.remove(id);
+            if (p.isEmpty()) byCategory.remove(cat);
+        }
+        PostingList d = byDay.get(day);
+        if (d != null) {
+            d.remove(id);
+            if (d.isEmpty()) byDay.remove(day);
+        }
+    }
+
+    private static void record(StringBuilder sb, char op, long stamp, Expense e) {
+        sb.append(op).append('|').append(stamp).append('|').append(e.getId()).append('|')
+          .append(e.getEpochDay()).append('|').append(fold(e)).append('\n');
+    }
+
+    // ========== Persistence ==========
+    private void load() {
+        loaded = true;
+        byCategory.clear();
+        byDay.clear();
+        ledgerStamp = Long.MIN_VALUE;
+        if (!file.exists()) return;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            if (in.readInt() != MAGIC) throw new IOException("not an index file");
+            long stamp = in.readLong();
+            int cats = in.readInt();
+            for (int i = 0; i < cats; i++) {
+                String name = in.readUTF();
+                byCategory.put(name, readList(in));
+            }
+            int days = in.readInt();
+            for (int i = 0; i < days; i++) {
+                int day = in.readInt();
+                byDay.put(day, readList(in));
+            }
+            ledgerStamp = stamp;
+        } catch (IOException e) {
+            // missing pieces: the stamp mismatch forces a rebuild
+            ledgerStamp = Long.MIN_VALUE;
+            return;
+        } finally {
+            try { if (in != null) in.close(); } catch (IOException ignored) {}
+        }
+        replayJournal();
+    }
+
+    private void replayJournal() {
+        if (!journal.exists()) return;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(journal));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] p = line.split("\\|", 5);
+                long stamp = Long.parseLong(p[1]);
+                long id = Long.parseLong(p[2]);
+                int day = Integer.parseInt(p[3]);
+                if ("+".equals(p[0])) put(id, day, p[4]);
+                else remove(id, day, p[4]);
+                ledgerStamp = stamp;
+            }
+        } catch (IOException e) {
+            ledgerStamp = Long.MIN_VALUE;
+        } catch (RuntimeException e) {
+            // torn journal line
+            ledgerStamp = Long.MIN_VALUE;
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private static PostingList readList(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) ids[i] = in.readLong();
+        return PostingList.of(ids, n);
+    }
+
+    private static void writeList(DataOutputStream out, PostingList p) throws IOException {
+        out.writeInt(p.size());
+        for (int i = 0; i < p.size(); i++) out.writeLong(p.get(i));
+    }
+
+    private void writeSnapshot() {
+        File tmp = AtomicFile.temp(file);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp, false), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeLong(ledgerStamp);
+            out.writeInt(byCategory.size());
+            for (Map.Entry<String, PostingList> en : byCategory.entrySet()) {
+                out.writeUTF(en.getKey());
+                writeList(out, en.getValue());
+            }
+            out.writeInt(byDay.size());
+            for (Map.Entry<Integer, PostingList> en : byDay.entrySet()) {
+                out.writeInt(en.getKey());
+                writeList(out, en.getValue());
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing index: " + e.getMessage());
+            tmp.delete();
+            return;
+        } finally {
+            try { if (out != null) out.close(); } catch (IOException ignored) {}
+        }
+        try {
+            AtomicFile.replace(tmp, file);
+            if (journal.exists() && !journal.delete()) {
+                System.err.println("Warning: could not remove " + journal.getName());
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing index: " + e.getMessage());
+        }
+    }
+
+    private void appendJournal(String records) {
+        if (!file.exists()) {
+            // no snapshot to append to yet
+            writeSnapshot();
+            return;
+        }
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(journal, true));
+            writer.write(records);
+        } catch (IOException e) {
+            System.err.println("Error writing index journal: " + e.getMessage());
+        } finally {
+            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+        }
+    }
+}
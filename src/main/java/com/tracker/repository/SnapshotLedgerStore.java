@@ -0,0 +1,456 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.metrics.Metrics;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Text ledger read through a binary snapshot (see LedgerSnapshot).
+
+Opening maps expenses.txt.snap and checks it against expenses.txt; only the
+lines appended after the snapshot was taken are parsed. A missing or stale
+snapshot is rebuilt from one parse of the text file, and once more than
+REFRESH_BYTES were appended the snapshot is rewritten to include them.
+
+A grown text file is only trusted once its covered prefix was read and found to
+have the snapshot's CRC. expenses.txt.snap.checked (covered|size|mtime|key)
+remembers the file stamp that check (or one of our own appends, made under
+the write lock to a file in a checked state) left, so the next start with the
+same stamp skips the read. Any other change to the file changes its stamp.
+
+Inserts append to the text file. Updates and deletes rewrite it from the
+snapshot rows (no text parse) and write a new snapshot for the result.
+If no snapshot can be written, every call goes to the text store as before.
+*/
+public class SnapshotLedgerStore extends LedgerStore {
+    static final long REFRESH_BYTES = 1024 * 1024;
+
+    private final TextLedgerStore backing;
+    private final File snapshotFile;
+    private final File checkedFile;
+    private LedgerSnapshot snapshot;   // null: no snapshot, use the text store
+    private List<Expense> appended = new ArrayList<Expense>();
+    private long appendedMax;
+    private boolean ascending;        // every row so far has a larger id than the one before
+    private long lastId;
+    private boolean opened;
+    private long seenStamp;
+
+    public SnapshotLedgerStore(TextLedgerStore backing) {
+        this.backing = backing;
+        this.snapshotFile = backing.sidecar(".snap");
+        this.checkedFile = backing.sidecar(".snap.checked");
+    }
+
+    public TextLedgerStore getBacking() { return backing; }
+
+    @Override
+    public synchronized List<Expense> loadAll() {
+        if (!ensureFresh()) return backing.loadAll();
+        List<Expense> out = new ArrayList<Expense>(snapshot.size() + appended.size());
+        for (int i = 0; i < snapshot.size(); i++) out.add(snapshot.get(i));
+        out.addAll(appended);
+        return out;
+    }
+
+    @Override
+    public synchronized long forEach(ExpenseVisitor visitor) {
+        if (!ensureFresh()) return backing.forEach(visitor);
+        for (int i = 0; i < snapshot.size(); i++) visitor.expense(snapshot.get(i));
+        for (Expense e : appended) visitor.expense(e);
+        return snapshot.size() + appended.size();
+    }
+
+    // Rows are materialized as the cursor reaches them
+    @Override
+    public synchronized ExpenseCursor open() {
+        if (!ensureFresh()) return backing.open();
+        final LedgerSnapshot s = snapshot;
+        final List<Expense> tail = appended;
+        return new ExpenseCursor() {
+            int next = 0;
+            public Expense next() {
+                if (next < s.size()) return s.get(next++);
+                if (next < s.size() + tail.size()) return tail.get(next++ - s.size());
+                return null;
+            }
+            public void close() {
+                next = s.size() + tail.size();
+            }
+        };
+    }
+
+    @Override
+    public boolean idOrdered() {
+        return backing.idOrdered();
+    }
+
+    // The snapshot records whether its ids ascend; appended rows are checked as they are read
+    @Override
+    public synchronized boolean inIdOrder() {
+        return ensureFresh() && ascending;
+    }
+
+    @Override
+    public synchronized long maxId() {
+        if (!ensureFresh()) return backing.maxId();
+        return Math.max(snapshot.maxId(), appendedMax);
+    }
+
+    @Override
+    public synchronized Expense find(long id) {
+        if (!ensureFresh()) return backing.find(id);
+        int row = snapshot.rowOf(id);
+        if (row >= 0) return snapshot.get(row);
+        for (Expense e : appended) {
+            if (e.getId() == id) return e.copy();
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized List<Expense> loadIds(PostingList ids) {
+        if (!ensureFresh()) return backing.loadIds(ids);
+        List<Expense> out = new ArrayList<Expense>();
+        if (ids.isEmpty()) return out;
+        for (int row : snapshot.rowsOf(ids)) out.add(snapshot.get(row));
+        for (Expense e : appended) {
+            if (ids.contains(e.getId())) out.add(e);
+        }
+        return out;
+    }
+
+    // Rows come from the month index in the snapshot
+    @Override
+    public synchronized List<Expense> loadMonth(int year, int month) {
+        List<Expense> out = new ArrayList<Expense>();
+        if (month < 1 || month > 12) return out;
+        if (!ensureFresh()) return backing.loadMonth(year, month);
+        int[] range = snapshot.monthRange(year * 12 + month - 1);
+        for (int i = range[0]; i < range[1]; i++) out.add(snapshot.get(snapshot.monthRow(i)));
+        int from = Dates.epochDay(year, month, 1);
+        int to = from + Dates.daysInMonth(year, month);
+        for (Expense e : appended) {
+            if (e.getEpochDay() >= from && e.getEpochDay() < to) out.add(e);
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized long totalForMonth(int year, int month) {
+        if (month < 1 || month > 12) return 0;
+        if (!ensureFresh()) return backing.totalForMonth(year, month);
+        long total = 0;
+        int[] range = snapshot.monthRange(year * 12 + month - 1);
+        for (int i = range[0]; i < range[1]; i++) total += snapshot.amount(snapshot.monthRow(i));
+        int from = Dates.epochDay(year, month, 1);
+        int to = from + Dates.daysInMonth(year, month);
+        for (Expense e : appended) {
+            if (e.getEpochDay() >= from && e.getEpochDay() < to) total += e.getAmountCents();
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized long scan(CategoryTable categories, ScanVisitor visitor) {
+        if (!ensureFresh()) return backing.scan(categories, visitor);
+        snapshot.scan(categories, visitor);
+        for (Expense e : appended) {
+            visitor.row(e.getEpochDay(), e.getAmountCents(), categories.code(e.getCategory()));
+        }
+        return snapshot.size() + appended.size();
+    }
+
+    // Column copy of the ledger (for SummaryEngine)
+    public synchronized LedgerColumns columns() {
+        if (!ensureFresh()) return LedgerColumns.from(backing.loadAll());
+        LedgerColumns c = snapshot.toColumns(appended.size());
+        for (Expense e : appended) c.add(e);
+        return c;
+    }
+
+    // A single insert appends too, so the snapshot stays valid
+    @Override
+    public synchronized void insert(Expense exp) {
+        List<Expense> one = new ArrayList<Expense>(1);
+        one.add(exp);
+        insertAll(one);
+    }
+
+    @Override
+    public synchronized void insertAll(List<Expense> list) {
+        if (list.isEmpty()) return;
+        boolean fresh = ensureFresh();
+        backing.insertAll(list);
+        if (!fresh) return;
+        List<Expense> stored = new ArrayList<Expense>(list.size());
+        for (Expense e : list) stored.add(e.copy());
+        appended.addAll(stored);
+        track(stored);
+        seenStamp = backing.stamp();
+        // the file was in a checked state before the append (seenStamp held), so it still is
+        markChecked(snapshot.source().size);
+    }
+
+    @Override
+    public synchronized Expense update(Expense exp) {
+        if (!ensureFresh()) return backing.update(exp);
+        LedgerColumns c = columns();
+        int row = c.indexOf(exp.getId());
+        if (row < 0) return null;
+        Expense prev = c.get(row);
+        c.set(row, exp);
+        rewrite(c);
+        return prev;
+    }
+
+    @Override
+    public synchronized Expense delete(long id) {
+        if (!ensureFresh()) return backing.delete(id);
+        LedgerColumns c = columns();
+        int row = c.indexOf(id);
+        if (row < 0) return null;
+        Expense prev = c.get(row);
+        c.remove(row);
+        rewrite(c);
+        return prev;
+    }
+
+    @Override
+    public synchronized void recover() {
+        backing.recover();
+        opened = false;
+    }
+
+    @Override
+    public synchronized List<LedgerRecovery.Report> verify(boolean repair) {
+        List<LedgerRecovery.Report> out = backing.verify(repair);
+        if (repair) {
+            snapshotFile.delete();
+            opened = false;
+        }
+        return out;
+    }
+
+    @Override
+    public long stamp() {
+        return backing.stamp();
+    }
+
+    @Override
+    public LedgerLock writeLock() {
+        return backing.writeLock();
+    }
+
+    @Override
+    protected File sidecar(String ext) {
+        return backing.sidecar(ext);
+    }
+
+    // ========== Snapshot ==========
+    // True when snapshot + appended describe the text file; false means "use the text store"
+    private boolean ensureFresh() {
+        long now = backing.stamp();
+        if (opened && now == seenStamp) return snapshot != null;
+        opened = true;
+        seenStamp = now;
+        snapshot = null;
+        appended = new ArrayList<Expense>();
+        appendedMax = 0;
+        File text = backing.getFile();
+        if (!text.exists()) return false;
+        long t = Metrics.start();
+        try {
+            LedgerSnapshot.Source source = LedgerSnapshot.sourceOf(text);
+            long size = source.size;
+            LedgerSnapshot s = LedgerSnapshot.open(snapshotFile);
+            if (s != null && (checked(s, source) || s.matches(text, source))) {
+                long covered = s.source().size;
+                if (size - covered > REFRESH_BYTES && LedgerSnapshot.lineEnd(text, size) == size) {
+                    // fold the appended lines into a new snapshot
+                    LedgerColumns c = s.toColumns(0);
+                    parse(text, covered, size, into(c));
+                    LedgerSnapshot refreshed = store(c, source, text);
+                    if (refreshed != null) {
+                        s = refreshed;
+                        covered = size;
+                    }
+                }
+                if (size > covered) markChecked(covered);
+                snapshot = s;
+                setAppended(parse(text, covered, size));
+                Metrics.record("snapshot.open", t);
+                return true;
+            }
+            // no usable snapshot: parse the complete lines once and keep them
+            long end = LedgerSnapshot.lineEnd(text, size);
+            LedgerColumns c = new LedgerColumns((int) Math.min(end / 48, 1 << 24));
+            parse(text, 0, end, into(c));
+            source.size = end;
+            snapshot = store(c, source, text);
+            if (snapshot != null) setAppended(parse(text, end, size));
+            Metrics.record("snapshot.build", t);
+        } catch (IOException e) {
+            System.err.println("Error reading ledger snapshot: " + e.getMessage());
+            snapshot = null;
+        }
+        return snapshot != null;
+    }
+
+    private void setAppended(List<Expense> rows) {
+        appended = rows;
+        appendedMax = 0;
+        ascending = snapshot.idAscending();
+        lastId = snapshot.size() > 0 ? snapshot.id(snapshot.size() - 1) : Long.MIN_VALUE;
+        track(rows);
+    }
+
+    private void track(List<Expense> rows) {
+        for (Expense e : rows) {
+            if (e.getId() > appendedMax) appendedMax = e.getId();
+            if (e.getId() <= lastId) ascending = false;
+            lastId = e.getId();
+        }
+    }
+
+    // Write c as the snapshot of text[0, source.size) and map it
+    private LedgerSnapshot store(LedgerColumns c, LedgerSnapshot.Source source, File text) throws IOException {
+        source.crc = LedgerSnapshot.prefixCrc(text, source.size);
+        if (!LedgerSnapshot.write(snapshotFile, c, source)) return null;
+        return LedgerSnapshot.open(snapshotFile);
+    }
+
+    // ========== Checked stamp ==========
+    // True if the text file is exactly as it was after the last prefix check (or our own append) for s
+    private boolean checked(LedgerSnapshot s, LedgerSnapshot.Source now) {
+        if (!checkedFile.exists()) return false;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(checkedFile));
+            String line = reader.readLine();
+            if (line == null) return false;
+            String[] p = line.split("\\|", -1);
+            return p.length == 4 && Long.parseLong(p[0]) == s.source().size && s.source().key == now.key
+                    && Long.parseLong(p[1]) == now.size && Long.parseLong(p[2]) == now.mtime
+                    && Long.parseLong(p[3]) == now.key;
+        } catch (IOException e) {
+            return false;
+        } catch (RuntimeException e) {
+            return false;
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // Record that text[0, covered) is unchanged as of the text file's current stamp
+    private void markChecked(long covered) {
+        LedgerSnapshot.Source now = LedgerSnapshot.sourceOf(backing.getFile());
+        if (now.size < 0) return;
+        File tmp = AtomicFile.temp(checkedFile);
+        Writer w = null;
+        try {
+            w = new FileWriter(tmp, false);
+            w.write(covered + "|" + now.size + "|" + now.mtime + "|" + now.key);
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        } finally {
+            try { if (w != null) w.close(); } catch (IOException ignored) {}
+        }
+        try {
+            AtomicFile.replace(tmp, checkedFile);
+        } catch (IOException e) {
+            // without the record the next start reads the prefix again
+            checkedFile.delete();
+        }
+    }
+
+    // Text file rewritten from c (caller holds the write lock), then the snapshot for it
+    private void rewrite(LedgerColumns c) {
+        opened = false;
+        if (!backing.writeAll(c.toList())) return;
+        File text = backing.getFile();
+        LedgerSnapshot.Source source = LedgerSnapshot.sourceOf(text);
+        try {
+            store(c, source, text);
+        } catch (IOException e) {
+            System.err.println("Error writing ledger snapshot: " + e.getMessage());
+        }
+    }
+
+    private static List<Expense> parse(File text, long from, long to) throws IOException {
+        final List<Expense> out = new ArrayList<Expense>();
+        parse(text, from, to, new ExpenseVisitor() {
+            public void expense(Expense e) {
+                out.add(e);
+            }
+        });
+        return out;
+    }
+
+    // Rows go straight into the columns, so a build never holds every Expense at once
+    private static ExpenseVisitor into(final LedgerColumns c) {
+        return new ExpenseVisitor() {
+            public void expense(Expense e) {
+                c.add(e);
+            }
+        };
+    }
+
+    // Expense lines in text[from, to), read like TextLedgerStore.loadAll
+    private static void parse(File text, long from, long to, ExpenseVisitor visitor) throws IOException {
+        if (to <= from) return;
+        long rows = 0;
+        InputStream in = new FileInputStream(text);
+        BufferedReader reader = null;
+        try {
+            long skipped = 0;
+            while (skipped < from) {
+                long n = in.skip(from - skipped);
+                if (n <= 0) throw new EOFException("ledger shorter than its snapshot");
+                skipped += n;
+            }
+            reader = new BufferedReader(new InputStreamReader(new RangeStream(in, to - from)), 1 << 16);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                visitor.expense(Expense.deserialize(line));
+                rows++;
+            }
+        } finally {
+            try { if (reader != null) reader.close(); else in.close(); } catch (IOException ignored) {}
+        }
+        Metrics.rowsRead(rows);
+        Metrics.bytesRead(to - from);
+    }
+
+    // Reads at most `remaining` bytes, so a line still being appended past the range is not seen
+    private static class RangeStream extends FilterInputStream {
+        private long remaining;
+
+        RangeStream(InputStream in, long length) {
+            super(new BufferedInputStream(in, 1 << 16));
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+}
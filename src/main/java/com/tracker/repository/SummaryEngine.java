@@ -0,0 +1,157 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Dates;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+Parallel summary over the whole ledger on a ForkJoinPool.
+
+The ledger is split into chunks that are aggregated independently and then
+merged pairwise, always left before right, so the result (totals, category
+order, month buckets) is the same for any thread count.
+- text ledger: the file is cut into byte ranges and each range is scanned
+  with MappedTextScanner (parsing happens in parallel too)
+- snapshot store: the columns are copied out of the mapped snapshot
+- any other store: its rows are turned into LedgerColumns and the arrays are
+  split by row range
+*/
+public class SummaryEngine {
+    // Ranges smaller than this are not split further
+    static final int MIN_ROWS_PER_TASK = 64 * 1024;
+    static final long MIN_BYTES_PER_TASK = 4L * 1024 * 1024;
+
+    private final ForkJoinPool pool;
+    private final int threads;
+
+    public SummaryEngine(int threads) {
+        this.threads = Math.max(1, threads);
+        this.pool = new ForkJoinPool(this.threads);
+    }
+
+    public SummaryResult summarize(LedgerStore store) {
+        if (store instanceof TextLedgerStore) {
+            return summarize(((TextLedgerStore) store).getFile());
+        }
+        if (store instanceof ColumnarLedgerStore) {
+            return summarize(((ColumnarLedgerStore) store).readColumns());
+        }
+        if (store instanceof SnapshotLedgerStore) {
+            return summarize(((SnapshotLedgerStore) store).columns());
+        }
+        return summarize(LedgerColumns.from(store.loadAll()));
+    }
+
+    // Text ledger split into byte ranges
+    public SummaryResult summarize(File textFile) {
+        long size = textFile.length();
+        long chunk = Math.max(MIN_BYTES_PER_TASK, size / (threads * 4L) + 1);
+        return pool.invoke(new FileTask(textFile, 0, size, chunk));
+    }
+
+    // Column arrays split by row range
+    public SummaryResult summarize(LedgerColumns c) {
+        // dense category numbering, in order of first appearance
+        int[] dense = new int[c.dictionary.size()];
+        for (int i = 0; i < dense.length; i++) dense[i] = -1;
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < c.size; i++) {
+            int code = c.categories[i];
+            if (dense[code] < 0) {
+                dense[code] = names.size();
+                names.add(c.word(code));
+            }
+        }
+        int chunk = Math.max(MIN_ROWS_PER_TASK, c.size / (threads * 4) + 1);
+        return pool.invoke(new ColumnTask(c, dense, names, 0, c.size, chunk));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static class FileTask extends RecursiveTask<SummaryResult> {
+        private static final long serialVersionUID = 1L;
+        private final File file;
+        private final long from;
+        private final long to;
+        private final long chunk;
+
+        FileTask(File file, long from, long to, long chunk) {
+            this.file = file;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected SummaryResult compute() {
+            if (to - from <= chunk) {
+                final SummaryResult r = new SummaryResult();
+                CategoryTable table = new CategoryTable();
+                MappedTextScanner.scan(file, from, to, table, new ScanVisitor() {
+                    public void row(int epochDay, long amount, int category) {
+                        r.total += amount;
+                        r.count++;
+                        r.addCategory(category, amount);
+                        if (epochDay != Dates.INVALID) r.addMonth(Dates.monthIndex(epochDay), amount, 1);
+                    }
+                });
+                for (int i = 0; i < table.size(); i++) r.categories.add(table.name(i));
+                return r;
+            }
+            long mid = from + (to - from) / 2;
+            FileTask left = new FileTask(file, from, mid, chunk);
+            FileTask right = new FileTask(file, mid, to, chunk);
+            right.fork();
+            SummaryResult r = left.compute();
+            r.merge(right.join());
+            return r;
+        }
+    }
+
+    private static class ColumnTask extends RecursiveTask<SummaryResult> {
+        private static final long serialVersionUID = 1L;
+        private final LedgerColumns c;
+        private final int[] dense;
+        private final List<String> names;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        ColumnTask(LedgerColumns c, int[] dense, List<String> names, int from, int to, int chunk) {
+            this.c = c;
+            this.dense = dense;
+            this.names = names;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected SummaryResult compute() {
+            if (to - from <= chunk) {
+                SummaryResult r = new SummaryResult();
+                r.categories.addAll(names);
+                for (int i = from; i < to; i++) {
+                    long amount = c.amounts[i];
+                    r.total += amount;
+                    r.count++;
+                    r.addCategory(dense[c.categories[i]], amount);
+                    if (c.dates[i] != Dates.INVALID) r.addMonth(Dates.monthIndex(c.dates[i]), amount, 1);
+                }
+                return r;
+            }
+            int mid = (from + to) >>> 1;
+            ColumnTask left = new ColumnTask(c, dense, names, from, mid, chunk);
+            ColumnTask right = new ColumnTask(c, dense, names, mid, to, chunk);
+            right.fork();
+            SummaryResult r = left.compute();
+            r.merge(right.join());
+            return r;
+        }
+    }
+}
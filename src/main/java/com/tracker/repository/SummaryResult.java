@@ -0,0 +1,122 @@
+package main.java.com.tracker.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Totals produced by SummaryEngine: overall, per category and per month.
+
+All amounts are cents. Months are indexed as year * 12 + (month - 1).
+Partial results from different chunks are combined with merge(); merging in a
+fixed order keeps category order (first seen) and every total deterministic.
+*/
+public class SummaryResult {
+    long total;
+    long count;
+
+    final List<String> categories = new ArrayList<String>();
+    long[] categorySums = new long[16];
+    long[] categoryCounts = new long[16];
+
+    int firstMonth = -1;          // month index of slot 0, -1 while nothing dated was seen
+    long[] monthSums = new long[0];
+    long[] monthCounts = new long[0];
+
+    public long getTotal() { return total; }
+    public long getCount() { return count; }
+
+    // Category -> total, in first-seen order, empty category as "(uncategorized)"
+    public Map<String, Long> byCategory() {
+        Map<String, Long> out = new LinkedHashMap<String, Long>();
+        for (int c = 0; c < categories.size(); c++) {
+            if (c >= categoryCounts.length || categoryCounts[c] == 0) continue;
+            String name = categories.get(c);
+            if (name.isEmpty()) name = AggregateStore.UNCATEGORIZED;
+            Long prev = out.get(name);
+            out.put(name, prev == null ? categorySums[c] : prev + categorySums[c]);
+        }
+        return out;
+    }
+
+    public long monthTotal(int year, int month) {
+        int slot = year * 12 + month - 1 - firstMonth;
+        if (firstMonth < 0 || slot < 0 || slot >= monthSums.length) return 0;
+        return monthSums[slot];
+    }
+
+    public long monthCount(int year, int month) {
+        int slot = year * 12 + month - 1 - firstMonth;
+        if (firstMonth < 0 || slot < 0 || slot >= monthCounts.length) return 0;
+        return monthCounts[slot];
+    }
+
+    // ========== Accumulation ==========
+    void addCategory(int code, long amount) {
+        ensureCategory(code);
+        categorySums[code] += amount;
+        categoryCounts[code]++;
+    }
+
+    private void ensureCategory(int code) {
+        if (code >= categorySums.length) {
+            int n = Math.max(code + 1, categorySums.length * 2);
+            categorySums = Arrays.copyOf(categorySums, n);
+            categoryCounts = Arrays.copyOf(categoryCounts, n);
+        }
+    }
+
+    void addMonth(int monthIndex, long amount, long n) {
+        if (firstMonth < 0) {
+            firstMonth = monthIndex;
+            monthSums = new long[12];
+            monthCounts = new long[12];
+        } else if (monthIndex < firstMonth) {
+            int shift = firstMonth - monthIndex;
+            long[] s = new long[monthSums.length + shift];
+            long[] c = new long[monthCounts.length + shift];
+            System.arraycopy(monthSums, 0, s, shift, monthSums.length);
+            System.arraycopy(monthCounts, 0, c, shift, monthCounts.length);
+            monthSums = s;
+            monthCounts = c;
+            firstMonth = monthIndex;
+        }
+        int slot = monthIndex - firstMonth;
+        if (slot >= monthSums.length) {
+            int len = Math.max(slot + 1, monthSums.length * 2);
+            monthSums = Arrays.copyOf(monthSums, len);
+            monthCounts = Arrays.copyOf(monthCounts, len);
+        }
+        monthSums[slot] += amount;
+        monthCounts[slot] += n;
+    }
+
+    // Fold another partial result into this one (other's categories are matched by name)
+    void merge(SummaryResult other) {
+        total += other.total;
+        count += other.count;
+        Map<String, Integer> codes = new HashMap<String, Integer>();
+        for (int c = 0; c < categories.size(); c++) codes.put(categories.get(c), c);
+        for (int c = 0; c < other.categories.size(); c++) {
+            if (other.categoryCounts.length <= c || other.categoryCounts[c] == 0) continue;
+            String name = other.categories.get(c);
+            Integer mine = codes.get(name);
+            if (mine == null) {
+                mine = categories.size();
+                categories.add(name);
+                codes.put(name, mine);
+            }
+            ensureCategory(mine);
+            categorySums[mine] += other.categorySums[c];
+            categoryCounts[mine] += other.categoryCounts[c];
+        }
+        if (other.firstMonth >= 0) {
+            for (int i = 0; i < other.monthSums.length; i++) {
+                if (other.monthCounts[i] != 0) addMonth(other.firstMonth + i, other.monthSums[i], other.monthCounts[i]);
+            }
+        }
+    }
+}
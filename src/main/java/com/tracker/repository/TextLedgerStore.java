@@ -0,0 +1,326 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.metrics.Metrics;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Default store: one Expense.serialize() line per expense in a plain text file.
+Every mutation reads the whole file and writes it back (temp file + rename),
+except batch inserts (insertAll), which append to the end of the file in one write.
+recover() cuts a record torn by a crash during such an append (see LedgerRecovery).
+*/
+public class TextLedgerStore extends LedgerStore {
+    private final File file;
+
+    public TextLedgerStore(File file) {
+        this.file = file;
+    }
+
+    public File getFile() { return file; }
+
+    @Override
+    public List<Expense> loadAll() {
+        List<Expense> out = new ArrayList<Expense>();
+        if (!file.exists()) {
+            return out;
+        }
+        long t = Metrics.start();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                out.add(Expense.deserialize(line));
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading expenses: " + e.getMessage());
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+        Metrics.rowsRead(out.size());
+        Metrics.bytesRead(file.length());
+        Metrics.record("text.load", t);
+        return out;
+    }
+
+    // One line at a time, nothing kept in memory
+    @Override
+    public long forEach(ExpenseVisitor visitor) {
+        return forEach(file, visitor);
+    }
+
+    static long forEach(File f, ExpenseVisitor visitor) {
+        if (!f.exists()) return 0;
+        long t = Metrics.start();
+        long rows = 0;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(f), 1 << 16);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                visitor.expense(Expense.deserialize(line));
+                rows++;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading expenses: " + e.getMessage());
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+        Metrics.rowsRead(rows);
+        Metrics.bytesRead(f.length());
+        Metrics.record("text.stream", t);
+        return rows;
+    }
+
+    // Only the id field of each line is parsed; stops once every id was found
+    @Override
+    public List<Expense> loadIds(PostingList ids) {
+        List<Expense> out = new ArrayList<Expense>();
+        if (ids.isEmpty() || !file.exists()) return out;
+        long t = Metrics.start();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file), 1 << 16);
+            String line;
+            while (out.size() < ids.size() && (line = reader.readLine()) != null) {
+                long id = leadingId(line);
+                if (id >= 0 && ids.contains(id)) out.add(Expense.deserialize(line.trim()));
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading expenses: " + e.getMessage());
+        } finally {
+            try { if (reader != null) reader.close(); } catch (IOException ignored) {}
+        }
+        Metrics.rowsRead(out.size());
+        Metrics.record("text.loadIds", t);
+        return out;
+    }
+
+    // Digits before the first '|', or -1 if the line does not start with an id
+    private static long leadingId(String line) {
+        long id = 0;
+        int i = 0;
+        int n = line.length();
+        while (i < n && line.charAt(i) == ' ') i++;
+        int start = i;
+        while (i < n) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') break;
+            id = id * 10 + (c - '0');
+            i++;
+        }
+        return i > start && i < n && line.charAt(i) == '|' ? id : -1;
+    }
+
+    // Reads a line per next(), so the first rows come back without reading the rest
+    @Override
+    public ExpenseCursor open() {
+        if (!file.exists()) return new ListCursor(new ArrayList<Expense>());
+        try {
+            return new LineCursor(new BufferedReader(new FileReader(file), 1 << 16));
+        } catch (IOException e) {
+            System.err.println("Error reading expenses: " + e.getMessage());
+            return new ListCursor(new ArrayList<Expense>());
+        }
+    }
+
+    // Appends get increasing ids and rewrites keep every line in place
+    @Override
+    public boolean idOrdered() {
+        return true;
+    }
+
+    private static class LineCursor implements ExpenseCursor {
+        private BufferedReader reader;
+        private long rows = 0;
+
+        LineCursor(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        public Expense next() {
+            if (reader == null) return null;
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty()) continue;
+                    rows++;
+                    return Expense.deserialize(line);
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading expenses: " + e.getMessage());
+            }
+            close();
+            return null;
+        }
+
+        public void close() {
+            if (reader == null) return;
+            try { reader.close(); } catch (IOException ignored) {}
+            reader = null;
+            Metrics.rowsRead(rows);
+        }
+    }
+
+    @Override
+    public long maxId() {
+        long max = 0;
+        for (Expense e : loadAll()) {
+            if (e.getId() > max) max = e.getId();
+        }
+        return max;
+    }
+
+    @Override
+    public void insert(Expense exp) {
+        List<Expense> all = loadAll();
+        all.add(exp);
+        writeAll(all);
+    }
+
+    @Override
+    public void insertAll(List<Expense> list) {
+        if (list.isEmpty()) return;
+        appendAll(file, list);
+    }
+
+    @Override
+    public Expense update(Expense exp) {
+        List<Expense> all = loadAll();
+        for (int i = 0; i < all.size(); i++) {
+            if (all.get(i).getId() == exp.getId()) {
+                Expense prev = all.set(i, exp);
+                writeAll(all);
+                return prev;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Expense delete(long id) {
+        List<Expense> all = loadAll();
+        for (int i = 0; i < all.size(); i++) {
+            if (all.get(i).getId() == id) {
+                Expense removed = all.remove(i);
+                writeAll(all);
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    // Memory-mapped pass over the file, no Expense objects
+    @Override
+    public long scan(CategoryTable categories, ScanVisitor visitor) {
+        return MappedTextScanner.scan(file, categories, visitor);
+    }
+
+    @Override
+    public long totalForMonth(int year, int month) {
+        return new LedgerScanner(this).totalBetween(Dates.epochDay(year, month, 1),
+                Dates.epochDay(year, month, 1) + Dates.daysInMonth(year, month));
+    }
+
+    @Override
+    public void recover() {
+        recoverTail(file, false);
+    }
+
+    @Override
+    public List<LedgerRecovery.Report> verify(boolean repair) {
+        return verifyFiles(new File[] { file }, new boolean[] { false }, repair);
+    }
+
+    @Override
+    public long stamp() {
+        return fileStamp(file);
+    }
+
+    @Override
+    protected File sidecar(String ext) {
+        return new File(file.getPath() + ext);
+    }
+
+    // Append serialized lines in one buffered write, starting a new line if the file lacks a final newline
+    static void appendAll(File target, List<Expense> list) {
+        long t = Metrics.start();
+        long sizeBefore = target.length();
+        boolean needsNewline = endsWithoutNewline(target);
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(target, true), 1 << 16);
+            if (needsNewline) writer.newLine();
+            for (Expense e : list) {
+                writer.write(e.serialize());
+                writer.newLine();
+            }
+            writer.flush();
+            AtomicFile.sync(target);
+        } catch (IOException e) {
+            System.err.println("Error writing expenses: " + e.getMessage());
+        } finally {
+            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+        }
+        Metrics.rowsWritten(list.size());
+        Metrics.bytesWritten(target.length() - sizeBefore);
+        Metrics.record("text.append", t);
+    }
+
+    private static boolean endsWithoutNewline(File f) {
+        if (!f.exists() || f.length() == 0) return false;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(f, "r");
+            raf.seek(raf.length() - 1);
+            return raf.read() != '\n';
+        } catch (IOException e) {
+            return false;
+        } finally {
+            try { if (raf != null) raf.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // Write all expenses to file (overwrite through a temp file); false if the file was left as it was.
+    // A snapshot of the old content (see SnapshotLedgerStore) is deleted.
+    boolean writeAll(List<Expense> list) {
+        long t = Metrics.start();
+        File tmp = AtomicFile.temp(file);
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(tmp, false), 1 << 16);
+            for (Expense e : list) {
+                writer.write(e.serialize());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing expenses: " + e.getMessage());
+            tmp.delete();
+            return false;
+        } finally {
+            try { if (writer != null) writer.close(); } catch (IOException ignored) {}
+        }
+        long bytes = tmp.length();
+        try {
+            AtomicFile.replace(tmp, file);
+        } catch (IOException e) {
+            System.err.println("Error writing expenses: " + e.getMessage());
+            return false;
+        }
+        sidecar(".snap").delete();
+        sidecar(".snap.checked").delete();
+        Metrics.rowsWritten(list.size());
+        Metrics.bytesWritten(bytes);
+        Metrics.record("text.rewrite", t);
+        return true;
+    }
+}
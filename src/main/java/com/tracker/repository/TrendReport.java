@@ -0,0 +1,162 @@
+package main.java.com.tracker.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+Month x category totals over a range of months, filled by one LedgerScanner
+pass (see LedgerScanner.trend).
+
+Months are numbered like Dates.monthIndex (year * 12 + month - 1). The pass
+also covers `lead` months before the first reported month, so year-over-year
+changes and rolling averages at the start of the range do not need another
+scan. Slot s holds month first() - lead + s.
+
+Budgets are joined afterwards with setBudgets(); a month without a budget
+holds BudgetRepository.NONE.
+*/
+public class TrendReport {
+    // Longest range (and rolling window) a report accepts: 100 years
+    public static final int MAX_MONTHS = 1200;
+
+    private final int first;     // month index of the first reported month
+    private final int months;    // reported months
+    private final int lead;      // extra months scanned before first
+    final CategoryTable categories = new CategoryTable();
+    long[][] sums = new long[0][];    // [category][slot] cents
+    long[][] counts = new long[0][];  // [category][slot] rows
+    private long[] budgets;
+
+    TrendReport(int first, int months, int lead) {
+        if (months < 1 || months > MAX_MONTHS || lead < 0 || lead > MAX_MONTHS) {
+            throw new IllegalArgumentException("report range must be 1 to " + MAX_MONTHS + " months");
+        }
+        this.first = first;
+        this.months = months;
+        this.lead = lead;
+        this.budgets = new long[months];
+        Arrays.fill(budgets, BudgetRepository.NONE);
+    }
+
+    public int first() { return first; }
+    public int months() { return months; }
+    public int last() { return first + months - 1; }
+
+    // Month index of the first scanned month
+    int scanFirst() { return first - lead; }
+    int slots() { return lead + months; }
+
+    void add(int category, int monthIndex, long amount) {
+        if (category >= sums.length) {
+            int n = Math.max(category + 1, sums.length * 2);
+            int old = sums.length;
+            sums = Arrays.copyOf(sums, n);
+            counts = Arrays.copyOf(counts, n);
+            for (int c = old; c < n; c++) {
+                sums[c] = new long[slots()];
+                counts[c] = new long[slots()];
+            }
+        }
+        int s = monthIndex - scanFirst();
+        sums[category][s] += amount;
+        counts[category][s]++;
+    }
+
+    // ========== Categories ==========
+    // Category names with at least one row in the reported months, sorted; "" is the uncategorized bucket
+    public List<String> categoryNames() {
+        List<String> out = new ArrayList<String>();
+        for (int c = 0; c < categories.size() && c < sums.length; c++) {
+            for (int m = 0; m < months; m++) {
+                if (counts[c][lead + m] != 0) {
+                    out.add(categories.name(c));
+                    break;
+                }
+            }
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    private int code(String category) {
+        for (int c = 0; c < categories.size() && c < sums.length; c++) {
+            if (categories.name(c).equals(category)) return c;
+        }
+        return -1;
+    }
+
+    // ========== Cells ==========
+    // Cents spent in category during reported month m (0-based)
+    public long total(String category, int m) {
+        int c = code(category);
+        return c < 0 ? 0 : sums[c][lead + m];
+    }
+
+    public long count(String category, int m) {
+        int c = code(category);
+        return c < 0 ? 0 : counts[c][lead + m];
+    }
+
+    // Cents spent in all categories during reported month m (may be before the range, down to -lead)
+    public long total(int m) {
+        long t = 0;
+        for (int c = 0; c < sums.length; c++) t += sums[c][lead + m];
+        return t;
+    }
+
+    public long count(int m) {
+        long n = 0;
+        for (int c = 0; c < counts.length; c++) n += counts[c][lead + m];
+        return n;
+    }
+
+    // Mean monthly total over the window months ending with m, months without rows counting as 0
+    public long rollingAverage(int m, int window) {
+        int from = Math.max(m - window + 1, -lead);
+        long sum = 0;
+        for (int k = from; k <= m; k++) sum += total(k);
+        return Math.round(sum / (double) (m - from + 1));
+    }
+
+    // Same for one category
+    public long rollingAverage(String category, int m, int window) {
+        int c = code(category);
+        if (c < 0) return 0;
+        int from = Math.max(m - window + 1, -lead);
+        long sum = 0;
+        for (int k = from; k <= m; k++) sum += sums[c][lead + k];
+        return Math.round(sum / (double) (m - from + 1));
+    }
+
+    // Change against the same month a year earlier; false when that month was not scanned
+    public boolean hasYearOverYear() {
+        return lead >= 12;
+    }
+
+    public long yearOverYear(int m) {
+        return total(m) - total(m - 12);
+    }
+
+    public long yearOverYear(String category, int m) {
+        int c = code(category);
+        return c < 0 ? 0 : sums[c][lead + m] - sums[c][lead + m - 12];
+    }
+
+    // ========== Budgets ==========
+    // Budgets for the reported months (see BudgetRepository.amounts)
+    public void setBudgets(long[] budgets) {
+        this.budgets = budgets;
+    }
+
+    // Budget for reported month m in cents, or BudgetRepository.NONE
+    public long budget(int m) {
+        return budgets[m];
+    }
+
+    // Spending minus budget (positive means over budget); only meaningful when budget(m) != NONE
+    public long variance(int m) {
+        return total(m) - budgets[m];
+    }
+}
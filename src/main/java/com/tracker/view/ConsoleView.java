@@ -3,6 +3,13 @@ package main.java.com.tracker.view;
 
 
 import main.java.com.tracker.model.Expense;
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Money;
+import main.java.com.tracker.model.RecurringRule;
+import main.java.com.tracker.repository.ExpenseCursor;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.Map;
 
@@ -10,29 +17,104 @@ import java.util.Map;
 Simple console view that prints results.
 */
 public class ConsoleView {
+    private static final String NL = System.lineSeparator();
 
     public static void showExpenses(List<Expense> expenses) {
         if (expenses == null || expenses.size() == 0) {
             System.out.println("No expenses.");
             return;
         }
-        System.out.printf("%-6s %-10s %-10s %-12s %s%n", "ID", "Date", "Amount", "Category", "Description");
+        StringBuilder sb = new StringBuilder(128);
+        PrintWriter out = writer();
+        appendHeader(sb);
+        out.append(sb);
         for (Expense e : expenses) {
-            System.out.printf("%-6d %-10s %-10.2f %-12s %s%n",
-                    e.getId(),
-                    e.getDate(),
-                    e.getAmount(),
-                    e.getCategory(),
-                    e.getDescription());
+            sb.setLength(0);
+            appendRow(sb, e);
+            out.append(sb);
         }
+        out.flush();
     }
 
-    public static void showSummary(double total, int count, Map<String, Double> byCategory) {
-        System.out.println("Total: " + String.format("%.2f", total));
+    // Print up to max rows from the cursor (0: all) through one buffered writer; returns rows printed
+    public static int showExpenses(ExpenseCursor cursor, int max) {
+        StringBuilder sb = new StringBuilder(128);
+        PrintWriter out = writer();
+        int rows = 0;
+        Expense e;
+        while ((max == 0 || rows < max) && (e = cursor.next()) != null) {
+            sb.setLength(0);
+            if (rows == 0) appendHeader(sb);
+            appendRow(sb, e);
+            out.append(sb);
+            rows++;
+        }
+        if (rows == 0) out.println("No expenses.");
+        out.flush();
+        return rows;
+    }
+
+    // Writer over the current System.out (the daemon swaps it per request); flush, do not close
+    private static PrintWriter writer() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16), false);
+    }
+
+    private static void appendHeader(StringBuilder sb) {
+        pad(sb, "ID", 6).append(' ');
+        pad(sb, "Date", 10).append(' ');
+        pad(sb, "Amount", 10).append(' ');
+        pad(sb, "Category", 12).append(' ');
+        sb.append("Description").append(NL);
+    }
+
+    // Same columns as printf("%-6d %-10s %-10s %-12s %s%n")
+    private static void appendRow(StringBuilder sb, Expense e) {
+        int start = sb.length();
+        sb.append(e.getId());
+        padTo(sb, start + 6).append(' ');
+        start = sb.length();
+        e.appendDate(sb);
+        padTo(sb, start + 10).append(' ');
+        start = sb.length();
+        Money.appendTo(sb, e.getAmountCents());
+        padTo(sb, start + 10).append(' ');
+        pad(sb, e.getCategory(), 12).append(' ');
+        sb.append(e.getDescription()).append(NL);
+    }
+
+    private static StringBuilder pad(StringBuilder sb, String s, int width) {
+        int start = sb.length();
+        sb.append(s);
+        return padTo(sb, start + width);
+    }
+
+    private static StringBuilder padTo(StringBuilder sb, int length) {
+        while (sb.length() < length) sb.append(' ');
+        return sb;
+    }
+
+    // amounts in cents
+    public static void showSummary(long total, int count, Map<String, Long> byCategory) {
+        System.out.println("Total: " + Money.format(total));
         System.out.println("Count: " + count);
         System.out.println("By category:");
         for (String cat : byCategory.keySet()) {
-            System.out.printf("  %-12s %.2f%n", cat, byCategory.get(cat));
+            System.out.printf("  %-12s %s%n", cat, Money.format(byCategory.get(cat)));
+        }
+    }
+
+    public static void showRules(List<RecurringRule> rules) {
+        if (rules.isEmpty()) {
+            System.out.println("No recurring rules.");
+            return;
+        }
+        System.out.printf("%-4s %-18s %-10s %-10s %-10s %-10s %-12s %s%n",
+                "ID", "Schedule", "Start", "End", "Through", "Amount", "Category", "Description");
+        for (RecurringRule r : rules) {
+            System.out.printf("%-4d %-18s %-10s %-10s %-10s %-10s %-12s %s%n", r.getId(), r.toSpec(),
+                    Dates.format(r.getStart()), r.getEnd() == Dates.INVALID ? "-" : Dates.format(r.getEnd()),
+                    r.getThrough() == Dates.INVALID ? "-" : Dates.format(r.getThrough()),
+                    Money.format(r.getAmountCents()), r.getCategory(), r.getDescription());
         }
     }
 
@@ -0,0 +1,235 @@
+package main.java.com.tracker.view;
+
+import main.java.com.tracker.model.Money;
+import main.java.com.tracker.repository.AggregateStore;
+import main.java.com.tracker.repository.BudgetRepository;
+import main.java.com.tracker.repository.CsvExpenseWriter;
+import main.java.com.tracker.repository.TrendReport;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/*
+Writes a TrendReport as text, CSV or JSON.
+
+- text: one row per month (count, total, rolling average, change against the
+  same month a year earlier, budget and variance), then the categories of the
+  whole range
+- csv: one row per month and category, plus an "(all)" row per month that
+  also carries the budget and variance
+- json: an object per month with the same numbers and a category map
+
+Amounts are written with two decimals; variance is spending minus budget, so
+a positive number means the budget was exceeded.
+*/
+public class ReportView {
+    public static final String TEXT = "text";
+    public static final String CSV = "csv";
+    public static final String JSON = "json";
+
+    private static final String ALL = "(all)";
+    private static final String NL = System.lineSeparator();
+
+    public static boolean isFormat(String format) {
+        return TEXT.equals(format) || CSV.equals(format) || JSON.equals(format);
+    }
+
+    public static void write(Writer out, TrendReport r, int window, String format) throws IOException {
+        if (CSV.equals(format)) writeCsv(out, r, window);
+        else if (JSON.equals(format)) writeJson(out, r, window);
+        else writeText(out, r, window);
+        out.flush();
+    }
+
+    // ========== Text ==========
+    private static void writeText(Writer out, TrendReport r, int window) throws IOException {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("Report ").append(month(r.first())).append(" to ").append(month(r.last()))
+          .append(", rolling average over ").append(window).append(window == 1 ? " month" : " months").append(NL);
+        pad(sb, "Month", 8);
+        padLeft(sb, "Count", 8);
+        padLeft(sb, "Total", 13);
+        padLeft(sb, "Avg(" + window + ")", 13);
+        if (r.hasYearOverYear()) padLeft(sb, "YoY", 13);
+        padLeft(sb, "Budget", 13);
+        padLeft(sb, "Variance", 13);
+        sb.append(NL);
+        out.append(sb);
+        long count = 0;
+        long total = 0;
+        for (int m = 0; m < r.months(); m++) {
+            sb.setLength(0);
+            pad(sb, month(r.first() + m), 8);
+            padLeft(sb, String.valueOf(r.count(m)), 8);
+            padLeft(sb, Money.format(r.total(m)), 13);
+            padLeft(sb, Money.format(r.rollingAverage(m, window)), 13);
+            if (r.hasYearOverYear()) padLeft(sb, signed(r.yearOverYear(m)), 13);
+            if (r.budget(m) == BudgetRepository.NONE) {
+                padLeft(sb, "-", 13);
+                padLeft(sb, "-", 13);
+            } else {
+                padLeft(sb, Money.format(r.budget(m)), 13);
+                padLeft(sb, signed(r.variance(m)), 13);
+                if (r.variance(m) > 0) sb.append(" over");
+            }
+            sb.append(NL);
+            out.append(sb);
+            count += r.count(m);
+            total += r.total(m);
+        }
+        sb.setLength(0);
+        pad(sb, "All", 8);
+        padLeft(sb, String.valueOf(count), 8);
+        padLeft(sb, Money.format(total), 13);
+        sb.append(NL).append(NL);
+
+        List<String> names = r.categoryNames();
+        pad(sb, "Category", 16);
+        padLeft(sb, "Count", 8);
+        padLeft(sb, "Total", 13);
+        padLeft(sb, "Per month", 13);
+        padLeft(sb, "Share", 8);
+        sb.append(NL);
+        out.append(sb);
+        for (String name : names) {
+            long n = 0;
+            long sum = 0;
+            for (int m = 0; m < r.months(); m++) {
+                n += r.count(name, m);
+                sum += r.total(name, m);
+            }
+            sb.setLength(0);
+            pad(sb, label(name), 16);
+            padLeft(sb, String.valueOf(n), 8);
+            padLeft(sb, Money.format(sum), 13);
+            padLeft(sb, Money.format(Math.round(sum / (double) r.months())), 13);
+            padLeft(sb, total == 0 ? "-" : String.format(Locale.ROOT, "%.1f%%", sum * 100.0 / total), 8);
+            sb.append(NL);
+            out.append(sb);
+        }
+    }
+
+    // ========== CSV ==========
+    private static void writeCsv(Writer out, TrendReport r, int window) throws IOException {
+        out.write("month,category,count,total,rolling_avg,yoy_change,budget,variance\n");
+        List<String> names = r.categoryNames();
+        StringBuilder sb = new StringBuilder(128);
+        for (int m = 0; m < r.months(); m++) {
+            String month = month(r.first() + m);
+            sb.setLength(0);
+            sb.append(month).append(',').append(ALL).append(',').append(r.count(m)).append(',');
+            Money.appendTo(sb, r.total(m));
+            sb.append(',');
+            Money.appendTo(sb, r.rollingAverage(m, window));
+            sb.append(',');
+            if (r.hasYearOverYear()) Money.appendTo(sb, r.yearOverYear(m));
+            sb.append(',');
+            if (r.budget(m) != BudgetRepository.NONE) {
+                Money.appendTo(sb, r.budget(m));
+                sb.append(',');
+                Money.appendTo(sb, r.variance(m));
+            } else {
+                sb.append(',');
+            }
+            sb.append('\n');
+            for (String name : names) {
+                sb.append(month).append(',');
+                CsvExpenseWriter.appendField(sb, label(name));
+                sb.append(',').append(r.count(name, m)).append(',');
+                Money.appendTo(sb, r.total(name, m));
+                sb.append(',');
+                Money.appendTo(sb, r.rollingAverage(name, m, window));
+                sb.append(',');
+                if (r.hasYearOverYear()) Money.appendTo(sb, r.yearOverYear(name, m));
+                sb.append(",,\n");
+            }
+            out.append(sb);
+        }
+    }
+
+    // ========== JSON ==========
+    private static void writeJson(Writer out, TrendReport r, int window) throws IOException {
+        List<String> names = r.categoryNames();
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"from\":\"").append(month(r.first())).append("\",\"to\":\"").append(month(r.last()))
+          .append("\",\"window\":").append(window).append(",\"categories\":[");
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) sb.append(',');
+            string(sb, label(names.get(i)));
+        }
+        sb.append("],\"months\":[");
+        out.append(sb);
+        for (int m = 0; m < r.months(); m++) {
+            sb.setLength(0);
+            if (m > 0) sb.append(',');
+            sb.append("\n{\"month\":\"").append(month(r.first() + m)).append("\",\"count\":").append(r.count(m));
+            sb.append(",\"total\":");
+            Money.appendTo(sb, r.total(m));
+            sb.append(",\"rolling_avg\":");
+            Money.appendTo(sb, r.rollingAverage(m, window));
+            sb.append(",\"yoy_change\":");
+            if (r.hasYearOverYear()) Money.appendTo(sb, r.yearOverYear(m));
+            else sb.append("null");
+            sb.append(",\"budget\":");
+            if (r.budget(m) != BudgetRepository.NONE) Money.appendTo(sb, r.budget(m));
+            else sb.append("null");
+            sb.append(",\"variance\":");
+            if (r.budget(m) != BudgetRepository.NONE) Money.appendTo(sb, r.variance(m));
+            else sb.append("null");
+            sb.append(",\"categories\":{");
+            boolean firstName = true;
+            for (String name : names) {
+                if (r.count(name, m) == 0) continue;
+                if (!firstName) sb.append(',');
+                firstName = false;
+                string(sb, label(name));
+                sb.append(":{\"count\":").append(r.count(name, m)).append(",\"total\":");
+                Money.appendTo(sb, r.total(name, m));
+                sb.append(",\"rolling_avg\":");
+                Money.appendTo(sb, r.rollingAverage(name, m, window));
+                sb.append('}');
+            }
+            sb.append("}}");
+            out.append(sb);
+        }
+        out.write("\n]}\n");
+    }
+
+    private static void string(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    // ========== Helpers ==========
+    // "YYYY-MM" for a month index (year * 12 + month - 1)
+    private static String month(int index) {
+        int y = Math.floorDiv(index, 12);
+        int m = Math.floorMod(index, 12) + 1;
+        return y + (m < 10 ? "-0" : "-") + m;
+    }
+
+    private static String label(String category) {
+        return category.isEmpty() ? AggregateStore.UNCATEGORIZED : category;
+    }
+
+    private static String signed(long cents) {
+        return cents > 0 ? "+" + Money.format(cents) : Money.format(cents);
+    }
+
+    private static void pad(StringBuilder sb, String s, int width) {
+        sb.append(s);
+        for (int i = s.length(); i < width; i++) sb.append(' ');
+    }
+
+    private static void padLeft(StringBuilder sb, String s, int width) {
+        for (int i = s.length(); i < width; i++) sb.append(' ');
+        sb.append(s);
+    }
+}
@@ -0,0 +1,34 @@
+package main.java.com.tracker.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CategoryFilterTest {
+
+    @Test
+    public void matchesIgnoringCase() {
+        CategoryFilter f = new CategoryFilter("FOOD");
+        assertTrue(f.matches(Categories.code("food")));
+        assertTrue(f.matches(Categories.code("Food")));
+        assertFalse(f.matches(Categories.code("rent")));
+    }
+
+    @Test
+    public void nullMeansUncategorized() {
+        CategoryFilter f = new CategoryFilter(null);
+        assertTrue(f.matches(Categories.code("")));
+        assertFalse(f.matches(Categories.code("food")));
+    }
+
+    @Test
+    public void unknownNameMatchesNothingAndIsNotInterned() {
+        int food = Categories.code("food");
+        int empty = Categories.code("");
+        int known = Categories.size();
+        CategoryFilter f = new CategoryFilter("no-such-category");
+        assertFalse(f.matches(food));
+        assertFalse(f.matches(empty));
+        assertEquals(known, Categories.size());
+    }
+}
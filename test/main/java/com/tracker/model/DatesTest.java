@@ -0,0 +1,40 @@
+package main.java.com.tracker.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DatesTest {
+
+    @Test
+    public void roundTripsIsoDates() {
+        int day = Dates.toEpochDay("2024-02-29");
+        assertEquals(Dates.epochDay(2024, 2, 29), day);
+        assertEquals("2024-02-29", Dates.format(day));
+        assertEquals(20240229, Dates.toYmd(day));
+        assertEquals(0, Dates.toEpochDay("1970-01-01"));
+    }
+
+    @Test
+    public void rejectsInvalidDates() {
+        assertEquals(Dates.INVALID, Dates.toEpochDay("2023-02-29"));
+        assertEquals(Dates.INVALID, Dates.toEpochDay("2024-13-01"));
+        assertEquals(Dates.INVALID, Dates.toEpochDay("yesterday"));
+    }
+
+    @Test
+    public void monthIndexCountsMonthsFromYearZero() {
+        int day = Dates.epochDay(2024, 3, 15);
+        assertEquals(2024 * 12 + 2, Dates.monthIndex(day));
+        assertEquals(2024, Dates.year(day));
+        assertEquals(3, Dates.month(day));
+    }
+
+    @Test
+    public void knowsLeapYears() {
+        assertEquals(29, Dates.daysInMonth(2024, 2));
+        assertEquals(28, Dates.daysInMonth(1900, 2));
+        assertEquals(29, Dates.daysInMonth(2000, 2));
+        assertEquals(31, Dates.daysInMonth(2023, 12));
+    }
+}
@@ -0,0 +1,37 @@
+package main.java.com.tracker.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpenseTest {
+
+    @Test
+    public void serializeRoundTrips() {
+        Expense e = new Expense(42L, "2024-05-01", 1999, "coffee beans", "Groceries");
+        // the trailing field is the line checksum (LineChecksum)
+        assertTrue(e.serialize().startsWith("42|2024-05-01|19.99|coffee beans|Groceries|#"), e.serialize());
+        Expense back = Expense.deserialize(e.serialize());
+        assertEquals(42L, back.getId());
+        assertEquals("2024-05-01", back.getDate());
+        assertEquals(1999, back.getAmountCents());
+        assertEquals("coffee beans", back.getDescription());
+        assertEquals("Groceries", back.getCategory());
+    }
+
+    @Test
+    public void keepsEmptyCategory() {
+        Expense back = Expense.deserialize("7|2024-01-02|3.00|bus|");
+        assertEquals("", back.getCategory());
+        assertEquals("", Expense.deserialize(back.serialize()).getCategory());
+    }
+
+    @Test
+    public void rejectsLinesWithoutAmount() {
+        try {
+            Expense.deserialize("1|2024-01-02");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
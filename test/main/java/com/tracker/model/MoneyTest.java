@@ -0,0 +1,42 @@
+package main.java.com.tracker.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoneyTest {
+
+    @Test
+    public void parsesWhatUsersType() {
+        assertEquals(1250, Money.parse("12.5"));
+        assertEquals(1250, Money.parse("12.50"));
+        assertEquals(-300, Money.parse("-3"));
+        assertEquals(7, Money.parse(" .07 "));
+    }
+
+    @Test
+    public void roundsOldDoubleSpellings() {
+        assertEquals(5000, Money.parse("50.0"));
+        assertEquals(1000000000L, Money.parse("1.0E7"));
+        assertEquals(30, Money.parse("0.30000000000000004"));
+    }
+
+    @Test
+    public void rejectsGarbage() {
+        for (String s : new String[] { "12,50", "", "abc" }) {
+            try {
+                Money.parse(s);
+                fail("parsed " + s);
+            } catch (NumberFormatException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void formatsCents() {
+        assertEquals("12.50", Money.format(1250));
+        assertEquals("0.07", Money.format(7));
+        assertEquals("-3.00", Money.format(-300));
+        assertEquals("-92233720368547758.08", Money.format(Long.MIN_VALUE));
+    }
+}
@@ -0,0 +1,57 @@
+package main.java.com.tracker.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecurringRuleTest {
+
+    private static int day(String s) {
+        return Dates.toEpochDay(s);
+    }
+
+    @Test
+    public void monthlyFallsBackToLastDayOfShortMonths() {
+        RecurringRule r = new RecurringRule(1, "monthly", day("2024-01-31"), 1000, "rent", "rent");
+        int feb = r.next(day("2024-02-01"), day("2024-12-31"));
+        assertEquals("2024-02-29", Dates.format(feb));
+        assertEquals("2024-03-31", Dates.format(r.next(feb + 1, day("2024-12-31"))));
+    }
+
+    @Test
+    public void weeklyIntervalCountsFromStart() {
+        RecurringRule r = new RecurringRule(1, "weekly/2", day("2024-01-01"), 500, "gym", "fun");
+        assertEquals("2024-01-15", Dates.format(r.next(day("2024-01-02"), day("2024-12-31"))));
+        assertEquals(Dates.INVALID, r.next(day("2024-01-02"), day("2024-01-14")));
+    }
+
+    @Test
+    public void cronMatchesDayOfMonthOrWeekday() {
+        // 1st of the month or any Monday, January only
+        RecurringRule r = new RecurringRule(1, "cron:1 JAN MON", day("2024-01-01"), 100, "x", "misc");
+        assertEquals("2024-01-01", Dates.format(r.next(day("2024-01-01"), day("2024-12-31"))));
+        assertEquals("2024-01-08", Dates.format(r.next(day("2024-01-02"), day("2024-12-31"))));
+        assertEquals("2025-01-01", Dates.format(r.next(day("2024-02-01"), day("2025-12-31"))));
+        assertEquals("cron:1 1 1", r.toSpec());
+    }
+
+    @Test
+    public void rejectsBadSchedules() {
+        for (String spec : new String[] { "fortnightly", "daily/0", "cron:32 * *", "cron:1 *" }) {
+            try {
+                new RecurringRule(1, spec, day("2024-01-01"), 1, "x", "misc");
+                fail("accepted " + spec);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void serializeRoundTrips() {
+        RecurringRule r = new RecurringRule(3, "daily/3", day("2024-01-01"), 250, "coffee", "food");
+        r.setThrough(day("2024-02-01"));
+        RecurringRule back = RecurringRule.deserialize(r.serialize());
+        assertEquals(r.serialize(), back.serialize());
+        assertEquals("3|daily/3|2024-01-01||2024-02-01|2.50|coffee|food", back.serialize());
+    }
+}
@@ -0,0 +1,75 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AggregateStoreTest {
+    @TempDir
+    File dir;
+
+    private ExpenseRepository repo() {
+        return new ExpenseRepository(new File(dir, "expenses.txt").getPath());
+    }
+
+    @Test
+    public void totalsFollowAddsUpdatesAndDeletes() {
+        ExpenseRepository repo = repo();
+        AggregateStore agg = new AggregateStore(new File(dir, "aggregates.txt").getPath(), repo);
+        long a = repo.add(new Expense(0L, "2024-01-05", 1000, "lunch", "food"));
+        repo.add(new Expense(0L, "2024-02-01", 50000, "flat", "rent"));
+        repo.add(new Expense(0L, "2024-01-20", 250, "bus", ""));
+        assertEquals(1250, agg.totalForMonth(2024, 1));
+        assertEquals(2, agg.countForMonth(2024, 1));
+        repo.update(new Expense(a, "2024-02-05", 1500, "lunch", "food"));
+        assertEquals(250, agg.totalForMonth(2024, 1));
+        assertEquals(51500, agg.totalForMonth(2024, 2));
+        repo.delete(a);
+        assertEquals(50250, agg.total());
+        assertEquals(2, agg.count());
+        assertEquals(Long.valueOf(250), agg.categoryTotals().get(AggregateStore.UNCATEGORIZED));
+
+        // a fresh instance reads the saved totals
+        AggregateStore reopened = new AggregateStore(new File(dir, "aggregates.txt").getPath(), repo);
+        assertEquals(50250, reopened.total());
+    }
+
+    @Test
+    public void categoryKeepsItsPlaceWhenItsBucketEmpties() {
+        ExpenseRepository repo = repo();
+        AggregateStore agg = new AggregateStore(new File(dir, "aggregates.txt").getPath(), repo);
+        long food = repo.add(new Expense(0L, "2024-01-05", 1000, "lunch", "food"));
+        repo.add(new Expense(0L, "2024-01-06", 2000, "flat", "rent"));
+        repo.add(new Expense(0L, "2024-01-07", 300, "cinema", "fun"));
+        repo.update(new Expense(food, "2024-01-05", 1100, "lunch", "food"));
+        assertEquals(Arrays.asList("food", "rent", "fun"), new ArrayList<String>(agg.categoryTotals().keySet()));
+
+        Map<String, Long> before = agg.categoryTotals();
+        agg.rebuild();
+        assertEquals(new ArrayList<String>(before.keySet()), new ArrayList<String>(agg.categoryTotals().keySet()));
+        assertEquals(before, agg.categoryTotals());
+    }
+
+    @Test
+    public void rebuildsAfterOutsideChanges() {
+        ExpenseRepository repo = repo();
+        AggregateStore agg = new AggregateStore(new File(dir, "aggregates.txt").getPath(), repo);
+        repo.add(new Expense(0L, "2024-01-05", 1000, "lunch", "food"));
+        assertEquals(1000, agg.total());
+        // another repository on the same file is not seen by agg's listener
+        ExpenseRepository other = repo();
+        List<Expense> batch = new ArrayList<Expense>();
+        batch.add(new Expense(0L, "2024-01-06", 500, "snack", "food"));
+        other.addAll(batch);
+        repo.add(new Expense(0L, "2024-01-07", 100, "gum", "food"));
+        assertEquals(1600, agg.total());
+    }
+}
@@ -0,0 +1,63 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Budget;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BudgetRepositoryTest {
+    @TempDir
+    File dir;
+
+    @Test
+    public void upsertAndFind() {
+        BudgetRepository repo = new BudgetRepository(new File(dir, "budgets.txt").getPath());
+        repo.upsert(new Budget(2024, 3, 50000));
+        repo.upsert(new Budget(2023, 12, 1000));
+        repo.upsert(new Budget(2024, 3, 60000));
+        assertEquals(60000, repo.find(2024, 3).getAmountCents());
+        assertNull(repo.find(2024, 4));
+        List<Budget> all = new BudgetRepository(new File(dir, "budgets.txt").getPath()).findAll();
+        assertEquals(2, all.size());
+        assertEquals(2023, all.get(0).getYear());
+        long[] amounts = repo.amounts(2023 * 12 + 11, 4);
+        assertEquals(1000, amounts[0]);
+        assertEquals(BudgetRepository.NONE, amounts[1]);
+        assertEquals(60000, amounts[3]);
+    }
+
+    @Test
+    public void rejectsOutOfRangeMonthsAndYears() {
+        BudgetRepository repo = new BudgetRepository(new File(dir, "budgets.txt").getPath());
+        int[][] bad = { { 2024, 0 }, { 2024, 13 }, { 300000000, 1 }, { -1, 1 } };
+        for (int[] b : bad) {
+            try {
+                repo.upsert(new Budget(b[0], b[1], 100));
+                fail("accepted " + b[0] + "-" + b[1]);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assertTrue(repo.findAll().isEmpty());
+        assertNull(repo.find(2024, 13));
+    }
+
+    @Test
+    public void keepsInvalidLinesInsteadOfFoldingThem() throws IOException {
+        File file = new File(dir, "budgets.txt");
+        Files.write(file.toPath(), "2024|13|10.00\n2024|1|5.00\n".getBytes(StandardCharsets.UTF_8));
+        BudgetRepository repo = new BudgetRepository(file.getPath());
+        assertNull(repo.find(2025, 1));
+        assertEquals(1, repo.findAll().size());
+        repo.upsert(new Budget(2024, 2, 700));
+        String saved = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertTrue(saved.contains("2024|13|10.00"), saved);
+        assertTrue(saved.contains("2024|2|7.00"), saved);
+    }
+}
@@ -0,0 +1,55 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LedgerRecoveryTest {
+    @TempDir
+    File dir;
+
+    private File ledger(String tail) throws IOException {
+        File f = new File(dir, "expenses.txt");
+        String good = new Expense(1L, "2026-01-05", 100, "one", "food").serialize() + "\n"
+                + new Expense(2L, "2026-02-05", 200, "two", "food").serialize() + "\n";
+        Files.write(f.toPath(), (good + tail).getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    @Test
+    public void cleanFileIsLeftAlone() throws IOException {
+        assertEquals(-1, LedgerRecovery.tornTailOffset(ledger(""), false));
+    }
+
+    @Test
+    public void cutsHalfWrittenLastLine() throws IOException {
+        File f = ledger("3|2026-03-05|3.0");
+        long len = f.length();
+        assertEquals(len - 16, LedgerRecovery.tornTailOffset(f, false));
+        assertEquals(16, LedgerRecovery.repairTail(f, false));
+        assertEquals(len - 16, f.length());
+        assertTrue(LedgerRecovery.rejectedFile(f).exists());
+    }
+
+    @Test
+    public void cutsZeroBytes() throws IOException {
+        File f = ledger("\0\0\0\0\n");
+        assertEquals(f.length() - 5, LedgerRecovery.tornTailOffset(f, false));
+    }
+
+    @Test
+    public void keepsCompleteLineWithBadChecksum() throws IOException {
+        String edited = new Expense(3L, "2026-03-05", 300, "three", "food").serialize().replace("three", "THREE");
+        File f = ledger(edited + "\n");
+        assertEquals(-1, LedgerRecovery.tornTailOffset(f, false));
+        assertFalse(LedgerRecovery.tailDamaged(f, false));
+        assertEquals(1, LedgerRecovery.verify(f, false, false).bad);
+    }
+}
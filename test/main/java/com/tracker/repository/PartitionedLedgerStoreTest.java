@@ -0,0 +1,62 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartitionedLedgerStoreTest {
+    @TempDir
+    File dir;
+
+    private static void append(File f, String s) throws IOException {
+        Files.write(f.toPath(), s.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void monthQueriesReadOneSegment() {
+        PartitionedLedgerStore store = new PartitionedLedgerStore(new File(dir, "expenses.d"));
+        store.insert(new Expense(1L, "2026-01-05", 100, "one", "food"));
+        store.insert(new Expense(2L, "2026-02-05", 200, "two", "food"));
+        store.insert(new Expense(3L, "2026-02-06", 300, "three", "rent"));
+        assertEquals(2, store.loadMonth(2026, 2).size());
+        assertEquals(0, store.loadMonth(2026, 3).size());
+        assertEquals(3, store.maxId());
+        assertEquals("three", store.find(3).getDescription());
+        assertNotNull(store.delete(1));
+        assertEquals(2, new PartitionedLedgerStore(new File(dir, "expenses.d")).loadAll().size());
+    }
+
+    @Test
+    public void recoverChecksOnlySegmentsThatGrew() throws IOException {
+        File d = new File(dir, "expenses.d");
+        PartitionedLedgerStore store = new PartitionedLedgerStore(d);
+        store.insert(new Expense(1L, "2026-01-05", 100, "one", "food"));
+        store.insert(new Expense(2L, "2026-02-05", 200, "two", "food"));
+        File jan = new File(d, "2026-01.txt");
+        File feb = new File(d, "2026-02.txt");
+        long janLength = jan.length();
+
+        // feb: an append torn before the manifest write
+        append(feb, "3|2026-02-0");
+        new PartitionedLedgerStore(d).recover();
+        assertEquals(1, new PartitionedLedgerStore(d).loadMonth(2026, 2).size());
+        assertTrue(new File(d, "2026-02.txt.rejected").exists());
+
+        // jan: same damage, but the manifest already records the size, so recover does not read it
+        append(jan, "4|2026-01-0");
+        File manifest = new File(d, "manifest.txt");
+        String m = new String(Files.readAllBytes(manifest.toPath()), StandardCharsets.UTF_8);
+        m = m.replace("2026-01|1|1|1|" + janLength, "2026-01|1|1|1|" + jan.length());
+        Files.write(manifest.toPath(), m.getBytes(StandardCharsets.UTF_8));
+        new PartitionedLedgerStore(d).recover();
+        assertEquals(janLength + 11, jan.length());
+    }
+}
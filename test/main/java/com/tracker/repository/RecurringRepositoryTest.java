@@ -0,0 +1,40 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.RecurringRule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecurringRepositoryTest {
+    @TempDir
+    File dir;
+
+    private static RecurringRule rule(String schedule) {
+        return new RecurringRule(0, schedule, Dates.toEpochDay("2026-01-01"), 1000, "gym", "fun");
+    }
+
+    @Test
+    public void keepsUnparsableLinesAndTheirIds() throws IOException {
+        File file = new File(dir, "recurring.txt");
+        RecurringRepository repo = new RecurringRepository(file.getPath());
+        assertEquals(1, repo.add(rule("monthly")));
+        Files.write(file.toPath(), "1|monthly|2026-01-01|||10.00|gym|fun\n2|fortnightly|2026-01-01|||5.00|x|misc\n"
+                .getBytes(StandardCharsets.UTF_8));
+
+        repo = new RecurringRepository(file.getPath());
+        assertEquals(1, repo.findAll().size());
+        assertEquals(3, repo.add(rule("weekly")));
+        assertTrue(repo.delete(1));
+        assertFalse(repo.delete(2));
+        String saved = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertTrue(saved.contains("2|fortnightly|2026-01-01|||5.00|x|misc"), saved);
+        assertTrue(saved.startsWith("3|weekly|"), saved);
+    }
+}
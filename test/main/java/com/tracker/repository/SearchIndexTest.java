@@ -0,0 +1,53 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Dates;
+import main.java.com.tracker.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchIndexTest {
+    @TempDir
+    File dir;
+
+    @Test
+    public void findsWordsNewestFirst() {
+        ExpenseRepository repo = new ExpenseRepository(new File(dir, "expenses.txt").getPath());
+        SearchIndex index = new SearchIndex(new File(dir, "expenses.fts").getPath(), repo);
+        long old = repo.add(new Expense(0L, "2024-01-05", 1000, "Coffee beans", "food"));
+        long recent = repo.add(new Expense(0L, "2024-03-01", 400, "coffee to go", "food"));
+        repo.add(new Expense(0L, "2024-02-01", 2000, "train ticket", "transport"));
+
+        SearchIndex.Result r = index.search("coffee", null, Dates.INVALID, Dates.INVALID, 10);
+        assertEquals(2, r.total);
+        assertArrayEquals(new long[] { recent, old }, r.ids);
+        assertEquals(1, index.search("coff* beans", null, Dates.INVALID, Dates.INVALID, 10).total);
+        assertEquals(3, index.search("coffee OR train", null, Dates.INVALID, Dates.INVALID, 10).total);
+        assertEquals(0, index.search("coffee", "transport", Dates.INVALID, Dates.INVALID, 10).total);
+        r = index.search("coffee", null, Dates.toEpochDay("2024-01-01"), Dates.toEpochDay("2024-02-01"), 10);
+        assertArrayEquals(new long[] { old }, r.ids);
+
+        // reloaded from its file
+        SearchIndex reopened = new SearchIndex(new File(dir, "expenses.fts").getPath(), repo);
+        assertEquals(2, reopened.search("coffee", null, Dates.INVALID, Dates.INVALID, 10).total);
+    }
+
+    @Test
+    public void handlesHugeIds() throws IOException {
+        File text = new File(dir, "expenses.txt");
+        Files.write(text.toPath(), "1500000000|2024-01-05|1.00|huge id|misc\n".getBytes(StandardCharsets.UTF_8));
+        ExpenseRepository repo = new ExpenseRepository(text.getPath());
+        SearchIndex index = new SearchIndex(new File(dir, "expenses.fts").getPath(), repo);
+        SearchIndex.Result r = index.search("huge", null, Dates.toEpochDay("2024-01-01"), Dates.INVALID, 5);
+        assertArrayEquals(new long[] { 1500000000L }, r.ids);
+        r = new SearchIndex(new File(dir, "expenses.fts").getPath(), repo).search("huge", null, Dates.INVALID,
+                Dates.INVALID, 5);
+        assertEquals(1, r.total);
+    }
+}
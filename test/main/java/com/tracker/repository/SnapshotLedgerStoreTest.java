@@ -0,0 +1,80 @@
+package main.java.com.tracker.repository;
+
+import main.java.com.tracker.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotLedgerStoreTest {
+    @TempDir
+    File dir;
+
+    private File ledger(int rows) throws IOException {
+        File text = new File(dir, "expenses.txt");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= rows; i++) sb.append(i).append("|2024-01-02|2.00|item ").append(i).append("|food\n");
+        Files.write(text.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        return text;
+    }
+
+    private static void append(File text, String line) throws IOException {
+        Files.write(text.toPath(), (line + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private static long total(List<Expense> all) {
+        long sum = 0;
+        for (Expense e : all) sum += e.getAmountCents();
+        return sum;
+    }
+
+    @Test
+    public void appendedLinesAreReadAfterTheSnapshot() throws IOException {
+        File text = ledger(1000);
+        assertEquals(1000, new SnapshotLedgerStore(new TextLedgerStore(text)).loadAll().size());
+        assertTrue(new File(dir, "expenses.txt.snap").exists());
+        append(text, "1001|2024-02-03|5.00|late|rent");
+        SnapshotLedgerStore store = new SnapshotLedgerStore(new TextLedgerStore(text));
+        List<Expense> all = store.loadAll();
+        assertEquals(1001, all.size());
+        assertEquals(1000 * 200 + 500, total(all));
+        assertEquals("rent", store.find(1001).getCategory());
+    }
+
+    @Test
+    public void inPlaceEditPlusAppendRebuilds() throws IOException {
+        File text = ledger(3000);
+        new SnapshotLedgerStore(new TextLedgerStore(text)).loadAll();
+        // same length edit near the start, far outside the last block, then an append
+        RandomAccessFile raf = new RandomAccessFile(text, "rw");
+        try {
+            String first = raf.readLine();
+            raf.seek(first.indexOf("2.00"));
+            raf.write("9".getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            raf.close();
+        }
+        append(text, "3001|2024-02-03|1.00|late|food");
+        SnapshotLedgerStore store = new SnapshotLedgerStore(new TextLedgerStore(text));
+        assertEquals(900, store.find(1).getAmountCents());
+        assertEquals(3000 * 200 + 700 + 100, total(store.loadAll()));
+    }
+
+    @Test
+    public void ownAppendsKeepTheSnapshot() throws IOException {
+        File text = ledger(100);
+        SnapshotLedgerStore store = new SnapshotLedgerStore(new TextLedgerStore(text));
+        store.loadAll();
+        store.insert(new Expense(101L, "2024-03-04", 300, "added", "fun"));
+        assertTrue(new File(dir, "expenses.txt.snap.checked").exists());
+        List<Expense> all = new SnapshotLedgerStore(new TextLedgerStore(text)).loadAll();
+        assertEquals(101, all.size());
+        assertEquals(100 * 200 + 300, total(all));
+    }
+}